@@ -0,0 +1,34 @@
+package org.example.aidetectorbe.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual-thread execution for inference and Spring MVC async requests.
+ * Controllers return {@code CompletableFuture}s so Tomcat worker threads are released while the
+ * AI service is working; the blocking HTTP call itself runs on a cheap virtual thread.
+ */
+@Configuration
+public class AsyncConfig implements WebMvcConfigurer {
+
+    @Value("${app.async.request-timeout:60000}")
+    private long asyncRequestTimeoutMs;
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService inferenceExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("inference-", 0).factory());
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(asyncRequestTimeoutMs);
+        configurer.setTaskExecutor(new VirtualThreadTaskExecutor("mvc-async-"));
+    }
+}
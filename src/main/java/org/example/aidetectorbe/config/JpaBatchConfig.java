@@ -0,0 +1,25 @@
+package org.example.aidetectorbe.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Enables Hibernate JDBC batching, so {@code saveAll} of many rows (e.g. batch analysis results)
+ * is sent as a few batched statements instead of one round trip per row.
+ */
+@Configuration
+public class JpaBatchConfig {
+
+    @Value("${app.jpa.batch-size:50}")
+    private int batchSize;
+
+    @Bean
+    public HibernatePropertiesCustomizer jdbcBatchingCustomizer() {
+        return properties -> {
+            properties.putIfAbsent("hibernate.jdbc.batch_size", batchSize);
+            properties.putIfAbsent("hibernate.order_inserts", true);
+        };
+    }
+}
@@ -1,14 +1,107 @@
 package org.example.aidetectorbe.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.function.ToDoubleFunction;
+
+/**
+ * HTTP client used for outbound calls, most importantly to the AI model server.
+ * Connections are pooled and kept alive, and every call is bounded by connect,
+ * pool-acquire and read timeouts taken from {@code ai.service.*}.
+ */
 @Configuration
 public class RestTemplateConfig {
 
+    @Value("${ai.service.connect-timeout:2000}")
+    private int connectTimeoutMs;
+
+    @Value("${ai.service.read-timeout:${ai.service.timeout:30000}}")
+    private int readTimeoutMs;
+
+    @Value("${ai.service.pool.max-total:50}")
+    private int maxTotalConnections;
+
+    @Value("${ai.service.pool.max-per-route:20}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${ai.service.pool.acquire-timeout:1000}")
+    private int acquireTimeoutMs;
+
+    @Value("${ai.service.pool.idle-timeout:30000}")
+    private int idleTimeoutMs;
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager aiServiceConnectionManager() {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                .setMaxConnTotal(maxTotalConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient aiServiceHttpClient(PoolingHttpClientConnectionManager aiServiceConnectionManager) {
+        return HttpClients.custom()
+                .setConnectionManager(aiServiceConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(acquireTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(idleTimeoutMs))
+                .build();
+    }
+
+    @Bean
+    public RestTemplate restTemplate(CloseableHttpClient aiServiceHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(aiServiceHttpClient));
+    }
+
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public MeterBinder aiServiceConnectionPoolMetrics(PoolingHttpClientConnectionManager aiServiceConnectionManager) {
+        return registry -> {
+            registerPoolGauge(registry, aiServiceConnectionManager, "leased", PoolStats::getLeased,
+                    "Connections currently in use");
+            registerPoolGauge(registry, aiServiceConnectionManager, "available", PoolStats::getAvailable,
+                    "Idle connections kept alive in the pool");
+            registerPoolGauge(registry, aiServiceConnectionManager, "pending", PoolStats::getPending,
+                    "Requests waiting for a connection");
+            registerPoolGauge(registry, aiServiceConnectionManager, "max", PoolStats::getMax,
+                    "Maximum number of pooled connections");
+        };
+    }
+
+    private void registerPoolGauge(MeterRegistry registry,
+                                   PoolingHttpClientConnectionManager connectionManager,
+                                   String state,
+                                   ToDoubleFunction<PoolStats> value,
+                                   String description) {
+        Gauge.builder("ai.service.http.pool.connections", connectionManager,
+                        manager -> value.applyAsDouble(manager.getTotalStats()))
+                .tag("state", state)
+                .description(description)
+                .register(registry);
     }
-}
\ No newline at end of file
+}
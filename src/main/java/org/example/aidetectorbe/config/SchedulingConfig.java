@@ -0,0 +1,12 @@
+package org.example.aidetectorbe.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables {@code @Scheduled} background jobs such as AI service health probing.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -3,8 +3,11 @@ package org.example.aidetectorbe.controllers;
 import org.example.aidetectorbe.dto.AIModelResponse;
 import org.example.aidetectorbe.dto.ErrorResponse;
 import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.services.ArchiveAnalysisService;
+import org.example.aidetectorbe.services.BatchAnalysisService;
 import org.example.aidetectorbe.services.ModelAnalysisFlowService;
 import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -13,55 +16,160 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import jakarta.servlet.http.HttpServletRequest;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 @RestController
 @RequestMapping("/api")
 public class AIModelController {
 
     private final ModelAnalysisFlowService modelAnalysisFlowService;
+    private final BatchAnalysisService batchAnalysisService;
+    private final ArchiveAnalysisService archiveAnalysisService;
+    private final long batchTimeoutMs;
+    private final long archiveTimeoutMs;
 
-    public AIModelController(ModelAnalysisFlowService modelAnalysisFlowService) {
+    public AIModelController(ModelAnalysisFlowService modelAnalysisFlowService,
+                             BatchAnalysisService batchAnalysisService,
+                             ArchiveAnalysisService archiveAnalysisService,
+                             @Value("${app.batch.timeout:600000}") long batchTimeoutMs,
+                             @Value("${app.archive.timeout:1800000}") long archiveTimeoutMs) {
         this.modelAnalysisFlowService = modelAnalysisFlowService;
+        this.batchAnalysisService = batchAnalysisService;
+        this.archiveAnalysisService = archiveAnalysisService;
+        this.batchTimeoutMs = batchTimeoutMs;
+        this.archiveTimeoutMs = archiveTimeoutMs;
     }
 
     @PostMapping(value = {"/useModel", "/model/analyze"}, consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<?> useModel(@RequestParam("image") MultipartFile image, HttpServletRequest request) {
+    public CompletableFuture<ResponseEntity<?>> useModel(@RequestParam("image") MultipartFile image, HttpServletRequest request) {
         String authenticatedUser = (String) request.getAttribute("login");
         Log.info("Received request to analyze image with AI model from user: " + authenticatedUser);
         
         try {
-            AIModelResponse response = modelAnalysisFlowService.analyzeAndStore(image, authenticatedUser);
+            // The request thread is released here; the response is written once inference completes.
+            return modelAnalysisFlowService.analyzeAndStoreAsync(image, authenticatedUser)
+                .<ResponseEntity<?>>thenApply(response -> {
+                    Log.info("Image analysis completed successfully in " + response.getProcessingTimeMs() + "ms");
+                    return ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(response);
+                })
+                .exceptionally(this::toErrorResponse);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(toErrorResponse(e));
+        }
+    }
+
+    /**
+     * Analyzes several images from one upload and streams one JSON line per image as each finishes. The stream
+     * stays open for {@code app.batch.timeout} rather than the default async request timeout, which a full batch
+     * of large images can outlast. Results are saved only after every line has been sent, so a failed save is
+     * reported as a final error line.
+     */
+    @PostMapping(value = "/model/analyze/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> analyzeBatch(@RequestParam("images") List<MultipartFile> images,
+                                                            HttpServletRequest request) {
+        String authenticatedUser = (String) request.getAttribute("login");
+        Log.info("Received batch of " + images.size() + " images to analyze from user: " + authenticatedUser);
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(batchTimeoutMs);
+        try {
+            batchAnalysisService.analyzeBatch(images, authenticatedUser, item -> sendLine(emitter, item))
+                .whenComplete((stored, error) -> {
+                    if (error != null) {
+                        Log.error("Failed to store batch analysis results: " + error.getMessage());
+                        sendLine(emitter, new ErrorResponse("Internal Server Error", "Failed to store analysis results", 500));
+                    }
+                    emitter.complete();
+                });
+        } catch (Exception e) {
+            ResponseEntity<?> errorResponse = toErrorResponse(e);
+            sendLine(emitter, errorResponse.getBody());
+            emitter.complete();
+            return ResponseEntity.status(errorResponse.getStatusCode()).body(emitter);
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
 
-            Log.info("Image analysis completed successfully in " + response.getProcessingTimeMs() + "ms");
-            return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(response);
-        } catch (IllegalArgumentException e) {
+    /**
+     * Analyzes every image in a ZIP archive sent as the raw request body, streaming one JSON line per entry.
+     * The body is not a multipart upload, so it is not subject to the multipart size limits; the archive
+     * service enforces its own.
+     */
+    @PostMapping(value = "/model/analyze/archive", consumes = {"application/zip", MediaType.APPLICATION_OCTET_STREAM_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> analyzeArchive(HttpServletRequest request) {
+        String authenticatedUser = (String) request.getAttribute("login");
+        Log.info("Received archive to analyze from user: " + authenticatedUser);
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(archiveTimeoutMs);
+        if (authenticatedUser == null || authenticatedUser.isBlank()) {
+            sendLine(emitter, new ErrorResponse("Unauthorized", "Missing authenticated user", 401));
+            emitter.complete();
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(emitter);
+        }
+
+        try {
+            archiveAnalysisService.analyzeArchiveAsync(request.getInputStream(), authenticatedUser, item -> sendLine(emitter, item))
+                .whenComplete((stored, error) -> {
+                    if (error != null) {
+                        sendLine(emitter, toErrorResponse(error).getBody());
+                    }
+                    emitter.complete();
+                });
+        } catch (Exception e) {
+            ResponseEntity<?> errorResponse = toErrorResponse(e);
+            sendLine(emitter, errorResponse.getBody());
+            emitter.complete();
+            return ResponseEntity.status(errorResponse.getStatusCode()).body(emitter);
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
+
+    private void sendLine(ResponseBodyEmitter emitter, Object line) {
+        // Results arrive from several worker threads; keep each JSON document and its newline together
+        synchronized (emitter) {
+            try {
+                emitter.send(line, MediaType.APPLICATION_JSON);
+                emitter.send("\n", MediaType.TEXT_PLAIN);
+            } catch (IOException | IllegalStateException e) {
+                Log.warn("Could not stream batch analysis result: " + e.getMessage());
+            }
+        }
+    }
+
+    private ResponseEntity<?> toErrorResponse(Throwable error) {
+        Throwable e = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (e instanceof IllegalArgumentException) {
             Log.error("Invalid request for image analysis: " + e.getMessage());
             ErrorResponse errorResponse = new ErrorResponse("Bad Request", e.getMessage(), 400);
             return ResponseEntity
                 .status(HttpStatus.BAD_REQUEST)
                 .body(errorResponse);
-        } catch (SecurityException e) {
+        } else if (e instanceof SecurityException) {
             Log.error("Unauthorized image analysis request: " + e.getMessage());
             ErrorResponse errorResponse = new ErrorResponse("Unauthorized", e.getMessage(), 401);
             return ResponseEntity
                 .status(HttpStatus.UNAUTHORIZED)
                 .body(errorResponse);
-
-        } catch (AIServiceException e) {
+        } else if (e instanceof AIServiceException aiServiceException) {
             Log.error("AI service error: " + e.getMessage());
-            ErrorResponse errorResponse = new ErrorResponse("AI Service Error", e.getMessage(), e.getStatusCode());
-            return ResponseEntity
-                .status(HttpStatus.valueOf(e.getStatusCode()))
-                .body(errorResponse);
-        } catch (Exception e) {
-            Log.error("Unexpected error processing image: " + e.getMessage());
-            ErrorResponse errorResponse = new ErrorResponse("Internal Server Error", "Failed to process image", 500);
+            ErrorResponse errorResponse = new ErrorResponse("AI Service Error", e.getMessage(), aiServiceException.getStatusCode());
             return ResponseEntity
-                .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .status(HttpStatus.valueOf(aiServiceException.getStatusCode()))
                 .body(errorResponse);
         }
+        Log.error("Unexpected error processing image: " + e.getMessage());
+        ErrorResponse errorResponse = new ErrorResponse("Internal Server Error", "Failed to process image", 500);
+        return ResponseEntity
+            .status(HttpStatus.INTERNAL_SERVER_ERROR)
+            .body(errorResponse);
     }
 }
@@ -0,0 +1,92 @@
+package org.example.aidetectorbe.controllers;
+
+import org.example.aidetectorbe.dto.AnalysisJobDTO;
+import org.example.aidetectorbe.dto.ErrorResponse;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.services.AnalysisJobService;
+import org.example.aidetectorbe.services.AnalysisProgressNotifier;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.net.URI;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/model/jobs")
+public class AnalysisJobController {
+
+    private final AnalysisJobService analysisJobService;
+    private final AnalysisProgressNotifier progressNotifier;
+
+    public AnalysisJobController(AnalysisJobService analysisJobService, AnalysisProgressNotifier progressNotifier) {
+        this.analysisJobService = analysisJobService;
+        this.progressNotifier = progressNotifier;
+    }
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> submitJob(@RequestParam("image") MultipartFile image, HttpServletRequest request) {
+        String authenticatedUser = (String) request.getAttribute("login");
+        Log.info("Received analysis job from user: " + authenticatedUser);
+
+        try {
+            AnalysisJobDTO job = analysisJobService.submit(image, authenticatedUser);
+            return ResponseEntity
+                .accepted()
+                .location(URI.create("/api/model/jobs/" + job.getJobId()))
+                .body(job);
+        } catch (IllegalArgumentException e) {
+            Log.error("Invalid analysis job request: " + e.getMessage());
+            return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(new ErrorResponse("Bad Request", e.getMessage(), 400));
+        } catch (SecurityException e) {
+            Log.error("Unauthorized analysis job request: " + e.getMessage());
+            return ResponseEntity
+                .status(HttpStatus.UNAUTHORIZED)
+                .body(new ErrorResponse("Unauthorized", e.getMessage(), 401));
+        } catch (AIServiceException e) {
+            Log.error("Analysis job rejected: " + e.getMessage());
+            return ResponseEntity
+                .status(HttpStatus.valueOf(e.getStatusCode()))
+                .body(new ErrorResponse("Service Unavailable", e.getMessage(), e.getStatusCode()));
+        }
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<?> getJob(@PathVariable UUID jobId, HttpServletRequest request) {
+        String login = (String) request.getAttribute("login");
+        if (login == null) {
+            return ResponseEntity
+                .status(HttpStatus.UNAUTHORIZED)
+                .body(new ErrorResponse("Unauthorized", "Missing authenticated user", 401));
+        }
+
+        return analysisJobService.getJob(jobId, login)
+            .<ResponseEntity<?>>map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity
+                .status(HttpStatus.NOT_FOUND)
+                .body(new ErrorResponse("Not Found", "Analysis job not found", 404)));
+    }
+
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamEvents(HttpServletRequest request) {
+        String login = (String) request.getAttribute("login");
+        if (login == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        Log.info("Opening analysis event stream for user: " + login);
+        return ResponseEntity.ok(progressNotifier.subscribe(login));
+    }
+}
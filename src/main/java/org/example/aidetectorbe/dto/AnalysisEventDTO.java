@@ -0,0 +1,18 @@
+package org.example.aidetectorbe.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class AnalysisEventDTO {
+    private UUID jobId;
+    private String stage;
+    private Double certainty;
+    private UUID resultId;
+    private String error;
+    private Instant timestamp;
+}
@@ -0,0 +1,18 @@
+package org.example.aidetectorbe.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class AnalysisJobDTO {
+    private UUID jobId;
+    private String status;
+    private Instant createdAt;
+    private Instant updatedAt;
+    private HistoryEntryDTO result;
+    private ErrorResponse error;
+}
@@ -0,0 +1,15 @@
+package org.example.aidetectorbe.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class BatchItemResultDTO {
+    private Integer index;
+    private String filename;
+    private Double certainty;
+    private String modelUsed;
+    private Long processingTimeMs;
+    private ErrorResponse error;
+}
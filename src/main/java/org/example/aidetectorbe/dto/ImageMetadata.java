@@ -0,0 +1,12 @@
+package org.example.aidetectorbe.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ImageMetadata {
+    private String format;
+    private int width;
+    private int height;
+}
@@ -0,0 +1,82 @@
+package org.example.aidetectorbe.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "analysis_jobs")
+public class AnalysisJob {
+
+    public static final int MAX_ERROR_MESSAGE_LENGTH = 255;
+
+    public enum Status {
+        PENDING, RUNNING, SUCCEEDED, FAILED;
+
+        public boolean isTerminal() {
+            return this == SUCCEEDED || this == FAILED;
+        }
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "id")
+    private UUID jobId;
+
+    @Column(name = "user_id", nullable = false)
+    private UUID userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private Status status;
+
+    @Column(name = "result_id")
+    private UUID resultId;
+
+    @Column(name = "photo_id")
+    private UUID photoId;
+
+    @Column(name = "model", length = 50)
+    private String model;
+
+    @Column(name = "chance", precision = 4, scale = 2)
+    private BigDecimal chance;
+
+    @Column(name = "error_message", length = MAX_ERROR_MESSAGE_LENGTH)
+    private String errorMessage;
+
+    @Column(name = "error_status")
+    private Integer errorStatus;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    @PrePersist
+    void prePersist() {
+        if (createdAt == null) {
+            createdAt = Instant.now();
+        }
+        if (updatedAt == null) {
+            updatedAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.example.aidetectorbe.exceptions;
+
+/**
+ * An inference call the scheduler turned away for its caller's sake, because the caller's queue was full or it
+ * gave up waiting for a slot, rather than because the AI service failed. Requests that were sharing the call's
+ * result did nothing to cause it, so they retry on their own instead of inheriting it.
+ */
+public class SchedulingRejectedException extends AIServiceException {
+
+    public SchedulingRejectedException(String message, int statusCode) {
+        super(message, statusCode);
+    }
+
+    public SchedulingRejectedException(String message, Throwable cause, int statusCode) {
+        super(message, cause, statusCode);
+    }
+}
@@ -0,0 +1,14 @@
+package org.example.aidetectorbe.repository;
+
+import org.example.aidetectorbe.entities.AnalysisJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public interface AnalysisJobRepository extends JpaRepository<AnalysisJob, UUID> {
+
+    @Transactional
+    long deleteByUpdatedAtBefore(Instant cutoff);
+}
@@ -2,10 +2,34 @@ package org.example.aidetectorbe.services;
 
 import org.example.aidetectorbe.dto.AIModelResponse;
 import org.example.aidetectorbe.exceptions.AIServiceException;
-import org.springframework.web.multipart.MultipartFile;
+import org.example.aidetectorbe.utils.ImageBuffer;
+
+import java.util.concurrent.CompletableFuture;
 
 public interface AIModelService {
-    AIModelResponse processImage(MultipartFile image) throws AIServiceException;
+    AIModelResponse processImage(ImageBuffer image) throws AIServiceException;
+
+    /**
+     * Sends the image to one specific model server, outside the primary model's replica pool; used for the
+     * additional members of a model ensemble and for shadow traffic. Each {@code modelName} has its own
+     * circuit breaker, bulkhead and concurrency limit, so a failing or slow one only affects itself.
+     */
+    AIModelResponse processImage(ImageBuffer image, String modelName, String baseUrl) throws AIServiceException;
+
+    /**
+     * {@link #processImage(ImageBuffer, String, String)} for traffic no request is waiting on, such as shadow
+     * traffic; its preprocessing only takes a bounded share of the preprocessing pool.
+     */
+    AIModelResponse processBackgroundImage(ImageBuffer image, String modelName, String baseUrl) throws AIServiceException;
+
+    /**
+     * Non-blocking variant of {@link #processImage(ImageBuffer)}. Failures complete the future with an
+     * {@link AIServiceException}. The caller keeps ownership of the buffer and must not release it
+     * before the future completes.
+     */
+    CompletableFuture<AIModelResponse> processImageAsync(ImageBuffer image);
     
     boolean isServiceHealthy();
-}
\ No newline at end of file
+
+    String getModelName();
+}
@@ -2,61 +2,217 @@ package org.example.aidetectorbe.services;
 
 import org.example.aidetectorbe.dto.AIModelResponse;
 import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.example.aidetectorbe.utils.LimitedInputStream;
 import org.example.aidetectorbe.utils.logger.Log;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.*;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
-import org.springframework.web.multipart.MultipartFile;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
 @Service
-public class AIModelServiceImpl implements AIModelService {
-    
-    @Value("${ai.service.url:http://localhost:8000}")
-    private String aiServiceUrl;
+public class AIModelServiceImpl implements AIModelService, InferenceBatcher.BatchTarget {
     
     @Value("${ai.service.endpoint:/verify/image}")
     private String aiServiceEndpoint;
     
-    @Value("${ai.service.timeout:30000}")
-    private int timeoutMs;
-    
     @Value("${ai.service.model-name:AIDetector}")
     private String modelName;
 
     @Value("${ai.service.file-field:file}")
     private String aiServiceFileField;
+
+    @Value("${ai.service.batch-endpoint:/verify/images}")
+    private String aiServiceBatchEndpoint;
+
+    @Value("${ai.service.batch-file-field:files}")
+    private String aiServiceBatchFileField;
+
+    @Value("${ai.batching.max-wait:${ai.service.timeout:30000}}")
+    private long batchMaxWaitMs;
+
+    @Value("${ai.service.max-response-size:1MB}")
+    private DataSize maxResponseSize = DataSize.ofMegabytes(1);
     
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
+    private final ExecutorService inferenceExecutor;
+    private final InferenceBatcher inferenceBatcher;
+    private final AIServiceGuard aiServiceGuard;
+    private final ModelReplicaPool replicaPool;
+    private final RequestHedger requestHedger;
+    private final AIServiceHealthProber healthProber;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final ImagePreprocessor imagePreprocessor;
 
-    // Default constructor used by Spring in production
-    public AIModelServiceImpl() {
-        this(new RestTemplate(), new ObjectMapper());
-    }
-
-    // Constructor for tests to inject mockable RestTemplate/ObjectMapper
-    public AIModelServiceImpl(RestTemplate restTemplate, ObjectMapper objectMapper) {
+    // RestTemplate comes from RestTemplateConfig (pooled, timeout-bounded); tests pass a mockable one
+    public AIModelServiceImpl(RestTemplate restTemplate, ObjectMapper objectMapper, ExecutorService inferenceExecutor,
+                              InferenceBatcher inferenceBatcher, AIServiceGuard aiServiceGuard,
+                              ModelReplicaPool replicaPool, RequestHedger requestHedger,
+                              AIServiceHealthProber healthProber, AdaptiveConcurrencyLimiter concurrencyLimiter,
+                              ImagePreprocessor imagePreprocessor) {
         this.restTemplate = restTemplate;
         this.objectMapper = objectMapper;
+        this.inferenceExecutor = inferenceExecutor;
+        this.inferenceBatcher = inferenceBatcher;
+        this.aiServiceGuard = aiServiceGuard;
+        this.replicaPool = replicaPool;
+        this.requestHedger = requestHedger;
+        this.healthProber = healthProber;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.imagePreprocessor = imagePreprocessor;
     }
     
     @Override
-    public AIModelResponse processImage(MultipartFile image) throws AIServiceException {
+    public AIModelResponse processImage(ImageBuffer image) throws AIServiceException {
+        // Downscaled before taking a concurrency slot, so resizing never holds a model server permit
+        ImageBuffer prepared = imagePreprocessor.prepare(image);
+        try {
+            return concurrencyLimiter.execute(() -> {
+                if (inferenceBatcher.isEnabled()) {
+                    return processBatched(prepared);
+                }
+                return processSingleRequest(prepared);
+            });
+        } finally {
+            prepared.release();
+        }
+    }
+
+    @Override
+    public AIModelResponse processImage(ImageBuffer image, String memberModelName, String baseUrl) throws AIServiceException {
+        return processMemberImage(imagePreprocessor.prepare(image), memberModelName, baseUrl);
+    }
+
+    @Override
+    public AIModelResponse processBackgroundImage(ImageBuffer image, String memberModelName, String baseUrl) throws AIServiceException {
+        return processMemberImage(imagePreprocessor.prepareInBackground(image), memberModelName, baseUrl);
+    }
+
+    private AIModelResponse processMemberImage(ImageBuffer prepared, String memberModelName, String baseUrl) throws AIServiceException {
+        try {
+            return concurrencyLimiter.execute(memberModelName, () -> aiServiceGuard.execute(memberModelName,
+                    () -> sendSingleRequest(baseUrl, memberModelName, prepared)));
+        } finally {
+            prepared.release();
+        }
+    }
+
+    @Override
+    public Double processSingle(ImageBuffer image) throws AIServiceException {
+        return processSingleRequest(image).getCertainty();
+    }
+
+    /**
+     * Sends all images in one multipart request to the batch endpoint. The model server answers with
+     * the certainties in upload order, either as a bare JSON array or under {@code results}.
+     */
+    @Override
+    public List<Double> processBatch(List<ImageBuffer> images) throws AIServiceException {
+        return aiServiceGuard.execute(() -> replicaPool.execute(baseUrl -> sendBatchRequest(baseUrl, images)));
+    }
+
+    private List<Double> sendBatchRequest(String baseUrl, List<ImageBuffer> images) throws AIServiceException {
+        String fullUrl = baseUrl + aiServiceBatchEndpoint;
+        Log.info("Making batch POST request with " + images.size() + " images to: " + fullUrl);
+
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+
+            MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+            for (ImageBuffer image : images) {
+                body.add(aiServiceBatchFileField, filePart(aiServiceBatchFileField, image));
+            }
+            body.add("type", "image");
+
+            StreamedResponse<List<Double>> response = restTemplate.execute(
+                fullUrl,
+                HttpMethod.POST,
+                restTemplate.httpEntityCallback(new HttpEntity<>(body, headers)),
+                clientResponse -> readResponse(clientResponse, this::readCertainties)
+            );
+            if (response.status() != HttpStatus.OK.value()) {
+                throw new AIServiceException("AI service returned error status: " + response.status(), response.status());
+            }
+            return response.value();
+
+        } catch (HttpMessageNotReadableException e) {
+            Log.error("Failed to parse AI service batch response: " + e.getMessage());
+            throw new AIServiceException("Invalid batch response format from AI service", e, 502);
+        } catch (HttpClientErrorException e) {
+            throw new AIServiceException("Invalid batch request to AI service: " + e.getMessage(), e, e.getStatusCode().value());
+        } catch (HttpServerErrorException e) {
+            throw new AIServiceException("AI service is experiencing issues: " + e.getMessage(), e, e.getStatusCode().value());
+        } catch (ResourceAccessException e) {
+            throw new AIServiceException("Unable to connect to AI service. Please try again later.", e, 503);
+        }
+    }
+
+    private AIModelResponse processBatched(ImageBuffer image) throws AIServiceException {
+        long startTime = System.currentTimeMillis();
+        try {
+            Double certainty = inferenceBatcher.submit(image, this).get(batchMaxWaitMs, TimeUnit.MILLISECONDS);
+            return new AIModelResponse(certainty, modelName, System.currentTimeMillis() - startTime);
+        } catch (TimeoutException e) {
+            throw new AIServiceException("Timed out waiting for batched analysis", e, 504);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AIServiceException("Interrupted while waiting for batched analysis", e, 503);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AIServiceException cause) {
+                throw new AIServiceException(cause.getMessage(), cause, cause.getStatusCode());
+            }
+            throw new AIServiceException("Failed to process image with AI service: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private AIModelResponse processSingleRequest(ImageBuffer image) throws AIServiceException {
+        long startTime = System.currentTimeMillis();
+        // A hedged duplicate goes to a different replica than the original attempt
+        AtomicReference<String> primaryUrl = new AtomicReference<>();
+        AIModelResponse response = requestHedger.execute(hedge -> aiServiceGuard.execute(() -> replicaPool.execute(baseUrl -> {
+            if (!hedge) {
+                primaryUrl.set(baseUrl);
+            }
+            return sendSingleRequest(baseUrl, modelName, image);
+        }, hedge ? primaryUrl.get() : null)));
+        response.setProcessingTimeMs(System.currentTimeMillis() - startTime);
+        return response;
+    }
+
+    private AIModelResponse sendSingleRequest(String baseUrl, String respondingModel, ImageBuffer image) throws AIServiceException {
         long startTime = System.currentTimeMillis();
         
         Log.info("=== AI Service Call Debug ===");
-        Log.info("Target URL: " + aiServiceUrl + aiServiceEndpoint);
-        Log.info("Image filename: " + image.getOriginalFilename());
-        Log.info("Image size: " + image.getSize() + " bytes");
+        Log.info("Target URL: " + baseUrl + aiServiceEndpoint);
+        Log.info("Image filename: " + image.getFilename());
+        Log.info("Image size: " + image.size() + " bytes");
         Log.info("Image content type: " + image.getContentType());
         
         try {
@@ -64,49 +220,35 @@ public class AIModelServiceImpl implements AIModelService {
             headers.setContentType(MediaType.MULTIPART_FORM_DATA);
             
             MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-
-            ByteArrayResource imageResource = new ByteArrayResource(image.getBytes()) {
-                @Override
-                public String getFilename() {
-                    return image.getOriginalFilename();
-                }
-                @Override
-                public long contentLength() {
-                    return image.getSize();
-                }
-            };
-
-            HttpHeaders filePartHeaders = new HttpHeaders();
-            filePartHeaders.setContentDispositionFormData(aiServiceFileField, image.getOriginalFilename());
-            filePartHeaders.setContentType(MediaType.parseMediaType(image.getContentType() != null ? image.getContentType() : "application/octet-stream"));
-
-            HttpEntity<ByteArrayResource> filePart = new HttpEntity<>(imageResource, filePartHeaders);
-
-            body.add(aiServiceFileField, filePart);
+            body.add(aiServiceFileField, filePart(aiServiceFileField, image));
             body.add("type", "image");
 
             HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
             
-            String fullUrl = aiServiceUrl + aiServiceEndpoint;
+            String fullUrl = baseUrl + aiServiceEndpoint;
             Log.info("Making POST request to: " + fullUrl);
             
-            ResponseEntity<String> response = restTemplate.exchange(
+            StreamedResponse<Double> response = restTemplate.execute(
                 fullUrl,
                 HttpMethod.POST,
-                requestEntity,
-                String.class
+                restTemplate.httpEntityCallback(requestEntity),
+                clientResponse -> readResponse(clientResponse, this::readCertainty)
             );
             
-            Log.info("AI service response status: " + response.getStatusCode());
-            Log.info("AI service response body: " + response.getBody());
+            Log.info("AI service response status: " + response.status() + ", certainty: " + response.value());
             
-            if (response.getStatusCode() == HttpStatus.OK) {
-                return parseSuccessfulResponse(response.getBody(), startTime);
+            if (response.status() == HttpStatus.OK.value()) {
+                long processingTime = System.currentTimeMillis() - startTime;
+                Log.info("AI service response parsed successfully in " + processingTime + "ms");
+                return new AIModelResponse(response.value(), respondingModel, processingTime);
             } else {
-                throw new AIServiceException("AI service returned error status: " + response.getStatusCode(), 
-                    response.getStatusCode().value());
+                throw new AIServiceException("AI service returned error status: " + response.status(), 
+                    response.status());
             }
             
+        } catch (HttpMessageNotReadableException e) {
+            Log.error("Failed to parse AI service response: " + e.getMessage());
+            throw new AIServiceException("Invalid response format from AI service", e, 502);
         } catch (HttpClientErrorException e) {
             Log.error("Client error from AI service: " + e.getMessage());
             throw new AIServiceException("Invalid request to AI service: " + e.getMessage(), e, e.getStatusCode().value());
@@ -125,38 +267,140 @@ public class AIModelServiceImpl implements AIModelService {
     }
     
     @Override
-    public boolean isServiceHealthy() {
+    public CompletableFuture<AIModelResponse> processImageAsync(ImageBuffer image) {
+        CompletableFuture<AIModelResponse> result = new CompletableFuture<>();
         try {
-            String healthUrl = aiServiceUrl + "/health";
-            ResponseEntity<String> response = restTemplate.getForEntity(healthUrl, String.class);
-            return response.getStatusCode() == HttpStatus.OK;
-        } catch (Exception e) {
-            Log.warn("AI service health check failed: " + e.getMessage());
-            return false;
+            inferenceExecutor.execute(() -> {
+                try {
+                    result.complete(processImage(image));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new AIServiceException("AI service client is shutting down", e, 503));
         }
+        return result;
+    }
+
+    @Override
+    public boolean isServiceHealthy() {
+        // Cached by the background prober; never blocks on the network
+        return healthProber.isAnyHealthy();
     }
     
-    private AIModelResponse parseSuccessfulResponse(String responseBody, long startTime) throws AIServiceException {
-        try {
-            JsonNode jsonResponse = objectMapper.readTree(responseBody);
-            
-            Double certainty = jsonResponse.has("certainty") ?
-                jsonResponse.get("certainty").asDouble() :
-                null;
+    @Override
+    public String getModelName() {
+        return modelName;
+    }
 
-            long processingTime = System.currentTimeMillis() - startTime;
-            
-            Log.info("AI service response parsed successfully in " + processingTime + "ms");
-            
-            return new AIModelResponse(
-                certainty,
-                modelName,
-                processingTime
-            );
-            
-        } catch (Exception e) {
-            Log.error("Failed to parse AI service response: " + e.getMessage());
-            throw new AIServiceException("Invalid response format from AI service", e, 502);
+    private HttpEntity<Resource> filePart(String fieldName, ImageBuffer image) {
+        // Stream the part from the shared image buffer instead of copying it into a byte[];
+        // the pooled client sends it with chunked encoding.
+        Resource imageResource = image.asResource();
+
+        HttpHeaders filePartHeaders = new HttpHeaders();
+        filePartHeaders.setContentDispositionFormData(fieldName, image.getFilename());
+        filePartHeaders.setContentType(MediaType.parseMediaType(image.getContentType() != null ? image.getContentType() : "application/octet-stream"));
+
+        return new HttpEntity<>(imageResource, filePartHeaders);
+    }
+
+    /**
+     * Streams the body through Jackson's parser under the configured size limit instead of buffering it
+     * into a String or tree; only the fields we need are materialised. Non-200 bodies are not read.
+     */
+    private <T> StreamedResponse<T> readResponse(ClientHttpResponse response, JsonReader<T> reader) throws IOException {
+        int status = response.getStatusCode().value();
+        if (status != HttpStatus.OK.value()) {
+            return new StreamedResponse<>(status, null);
+        }
+
+        long maxBytes = maxResponseSize.toBytes();
+        long declaredLength = response.getHeaders().getContentLength();
+        if (declaredLength > maxBytes) {
+            throw new HttpMessageNotReadableException("AI service response of " + declaredLength
+                    + " bytes exceeds the limit of " + maxBytes + " bytes", response);
+        }
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(new LimitedInputStream(response.getBody(), maxBytes))) {
+            return new StreamedResponse<>(status, reader.read(parser));
+        } catch (JsonProcessingException | LimitedInputStream.LimitExceededException e) {
+            throw new HttpMessageNotReadableException(e.getMessage(), e, response);
+        }
+    }
+
+    private Double readCertainty(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a JSON object");
+        }
+        return readCertaintyField(parser);
+    }
+
+    /**
+     * Reads the certainties of a batch response in upload order: either a bare JSON array or an object
+     * with a {@code results} array, whose elements are numbers or objects with a {@code certainty} field.
+     */
+    private List<Double> readCertainties(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+            return readResults(parser);
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a JSON array or object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            if (parser.nextToken() == JsonToken.START_ARRAY && "results".equals(field)) {
+                return readResults(parser);
+            }
+            parser.skipChildren();
+        }
+        throw new JsonParseException(parser, "Missing results array");
+    }
+
+    private List<Double> readResults(JsonParser parser) throws IOException {
+        List<Double> certainties = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new JsonParseException(parser, "Unexpected end of results array");
+            }
+            if (token.isNumeric()) {
+                certainties.add(parser.getDoubleValue());
+            } else if (token == JsonToken.START_OBJECT) {
+                certainties.add(readCertaintyField(parser));
+            } else {
+                parser.skipChildren();
+                certainties.add(null);
+            }
         }
+        return certainties;
+    }
+
+    // Consumes the rest of the current object and returns its numeric "certainty" field, if any
+    private Double readCertaintyField(JsonParser parser) throws IOException {
+        Double certainty = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("certainty".equals(field) && value != null && value.isNumeric()) {
+                certainty = parser.getDoubleValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (parser.currentToken() != JsonToken.END_OBJECT) {
+            throw new JsonParseException(parser, "Unexpected end of JSON object");
+        }
+        return certainty;
+    }
+
+    @FunctionalInterface
+    private interface JsonReader<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+
+    private record StreamedResponse<T>(int status, T value) {
     }
-}
\ No newline at end of file
+}
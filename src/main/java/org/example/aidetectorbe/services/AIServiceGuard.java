@@ -0,0 +1,162 @@
+package org.example.aidetectorbe.services;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.channels.ClosedByInterruptException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker and semaphore bulkhead around calls to the model server.
+ * The bulkhead caps concurrent inference calls so a slow model server cannot tie up every request thread. It
+ * defaults to the connection pool's {@code ai.service.pool.max-per-route}: calls beyond that would only wait for
+ * a pooled connection and fail as unreachable, which the breaker would count against the model server.
+ * The breaker opens on a high failure or slow-call rate, after which callers fail fast with a 503
+ * {@link AIServiceException} until a few trial calls succeed again.
+ * Client errors (4xx) from the model server are not counted as failures, and neither are calls cancelled by
+ * interrupting their thread (a hedged attempt that lost, for example).
+ * <p>
+ * Ensemble members are separate model servers, so {@link #execute(String, GuardedCall)} guards each one with
+ * its own breaker and bulkhead of the same configuration, named after the member; one failing member then
+ * fails fast on its own without opening the breaker of the primary model.
+ */
+@Service
+public class AIServiceGuard {
+
+    public static final String NAME = "aiService";
+    private static final String MEMBER_PREFIX = "ensemble-";
+
+    @FunctionalInterface
+    public interface GuardedCall<T> {
+        T call() throws AIServiceException;
+    }
+
+    private final CircuitBreakerRegistry breakerRegistry;
+    private final BulkheadRegistry bulkheadRegistry;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+
+    public AIServiceGuard(
+            @Value("${ai.service.circuit-breaker.failure-rate-threshold:50}") float failureRateThreshold,
+            @Value("${ai.service.circuit-breaker.slow-call-rate-threshold:80}") float slowCallRateThreshold,
+            @Value("${ai.service.circuit-breaker.slow-call-duration:10s}") Duration slowCallDuration,
+            @Value("${ai.service.circuit-breaker.sliding-window-size:20}") int slidingWindowSize,
+            @Value("${ai.service.circuit-breaker.minimum-calls:10}") int minimumCalls,
+            @Value("${ai.service.circuit-breaker.wait-in-open-state:30s}") Duration waitInOpenState,
+            @Value("${ai.service.circuit-breaker.half-open-calls:3}") int halfOpenCalls,
+            @Value("${ai.service.bulkhead.max-concurrent-calls:${ai.service.pool.max-per-route:20}}") int maxConcurrentCalls,
+            @Value("${ai.service.bulkhead.max-wait:100ms}") Duration bulkheadMaxWait,
+            MeterRegistry meterRegistry) {
+        CircuitBreakerConfig breakerConfig = CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallRateThreshold(slowCallRateThreshold)
+                .slowCallDurationThreshold(slowCallDuration)
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumCalls)
+                .waitDurationInOpenState(waitInOpenState)
+                .permittedNumberOfCallsInHalfOpenState(halfOpenCalls)
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .recordException(AIServiceGuard::isServerFailure)
+                .build();
+        BulkheadConfig bulkheadConfig = BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .maxWaitDuration(bulkheadMaxWait)
+                .build();
+
+        this.breakerRegistry = CircuitBreakerRegistry.of(breakerConfig);
+        this.bulkheadRegistry = BulkheadRegistry.of(bulkheadConfig);
+        breakerRegistry.getEventPublisher().onEntryAdded(added -> {
+            CircuitBreaker breaker = added.getAddedEntry();
+            breaker.getEventPublisher().onStateTransition(event ->
+                    Log.warn("AI service circuit breaker " + breaker.getName() + " " + event.getStateTransition()));
+        });
+        // Bound before the breakers exist, so breakers added later for ensemble members are reported as well
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(breakerRegistry).bindTo(meterRegistry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(meterRegistry);
+        this.circuitBreaker = breakerRegistry.circuitBreaker(NAME);
+        this.bulkhead = bulkheadRegistry.bulkhead(NAME);
+    }
+
+    public <T> T execute(GuardedCall<T> call) throws AIServiceException {
+        return execute(circuitBreaker, bulkhead, call);
+    }
+
+    /**
+     * Runs {@code call} behind the breaker and bulkhead of ensemble member {@code member}, created on first use.
+     */
+    public <T> T execute(String member, GuardedCall<T> call) throws AIServiceException {
+        return execute(getCircuitBreaker(member), bulkheadRegistry.bulkhead(MEMBER_PREFIX + member), call);
+    }
+
+    private static <T> T execute(CircuitBreaker circuitBreaker, Bulkhead bulkhead, GuardedCall<T> call)
+            throws AIServiceException {
+        if (!bulkhead.tryAcquirePermission()) {
+            throw new AIServiceException("AI service is at capacity. Please try again later.", 503);
+        }
+        try {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                throw new AIServiceException("AI service is temporarily unavailable. Please try again later.", 503);
+            }
+            long start = System.nanoTime();
+            try {
+                T result = call.call();
+                circuitBreaker.onResult(System.nanoTime() - start, TimeUnit.NANOSECONDS, result);
+                return result;
+            } catch (AIServiceException | RuntimeException e) {
+                if (isCancellation(e)) {
+                    circuitBreaker.releasePermission();
+                } else {
+                    circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+                }
+                throw e;
+            }
+        } finally {
+            bulkhead.onComplete();
+        }
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public CircuitBreaker getCircuitBreaker(String member) {
+        return breakerRegistry.circuitBreaker(MEMBER_PREFIX + member);
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * Whether a call failed only because its thread was interrupted. Interrupting a virtual thread blocked on a
+     * socket closes the socket, which surfaces as an I/O error while the interrupt status stays set.
+     */
+    static boolean isCancellation(Throwable e) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException || cause instanceof ClosedByInterruptException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isServerFailure(Throwable e) {
+        return !(e instanceof AIServiceException aiServiceException) || aiServiceException.getStatusCode() >= 500;
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.aidetectorbe.services;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the AI service circuit breaker, bulkhead and cached per-endpoint probe results under
+ * {@code /actuator/health} as {@code aiService}.
+ * The indicator always reports UP: Actuator maps DOWN and OUT_OF_SERVICE to HTTP 503, which would fail the whole
+ * application's health check during a model server outage even though the backend keeps serving everything but
+ * image analysis. Whether analysis is currently accepted is reported in the {@code analysisAvailable} detail.
+ */
+@Component("aiServiceHealthIndicator")
+public class AIServiceHealthIndicator implements HealthIndicator {
+
+    private final AIServiceGuard aiServiceGuard;
+    private final AIServiceHealthProber healthProber;
+
+    public AIServiceHealthIndicator(AIServiceGuard aiServiceGuard, AIServiceHealthProber healthProber) {
+        this.aiServiceGuard = aiServiceGuard;
+        this.healthProber = healthProber;
+    }
+
+    @Override
+    public Health health() {
+        CircuitBreaker circuitBreaker = aiServiceGuard.getCircuitBreaker();
+        CircuitBreaker.Metrics breakerMetrics = circuitBreaker.getMetrics();
+        Bulkhead.Metrics bulkheadMetrics = aiServiceGuard.getBulkhead().getMetrics();
+
+        boolean analysisAvailable = switch (circuitBreaker.getState()) {
+            case OPEN, FORCED_OPEN -> false;
+            default -> healthProber.isAnyHealthy();
+        };
+        return Health.up()
+                .withDetail("analysisAvailable", analysisAvailable)
+                .withDetail("circuitBreakerState", circuitBreaker.getState().name())
+                .withDetail("failureRate", breakerMetrics.getFailureRate())
+                .withDetail("slowCallRate", breakerMetrics.getSlowCallRate())
+                .withDetail("bufferedCalls", breakerMetrics.getNumberOfBufferedCalls())
+                .withDetail("notPermittedCalls", breakerMetrics.getNumberOfNotPermittedCalls())
+                .withDetail("bulkheadAvailableCalls", bulkheadMetrics.getAvailableConcurrentCalls())
+                .withDetail("bulkheadMaxCalls", bulkheadMetrics.getMaxAllowedConcurrentCalls())
+                .withDetail("endpoints", healthProber.getEndpoints())
+                .build();
+    }
+}
@@ -0,0 +1,165 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background health probing of every model server endpoint.
+ * A scheduled job calls {@code /health} on each replica in parallel, bounded by {@code ai.service.health.timeout},
+ * and publishes an immutable snapshot of the results; readers such as {@link AIModelService#isServiceHealthy()}
+ * only read that snapshot and never block on the network.
+ * When every endpoint is unhealthy the application reports REFUSING_TRAFFIC readiness (if
+ * {@code ai.service.health.affects-readiness} is set) so load balancers shed traffic before requests start failing.
+ */
+@Service
+public class AIServiceHealthProber {
+
+    public record EndpointHealth(String url, boolean healthy, long lastLatencyMs, int consecutiveFailures,
+                                 Instant lastChange, Instant lastChecked) {
+    }
+
+    private final ModelReplicaPool replicaPool;
+    private final RestTemplate restTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final long timeoutMs;
+    private final int unhealthyThreshold;
+    private final boolean affectsReadiness;
+    private final ExecutorService probeExecutor;
+
+    private volatile Map<String, EndpointHealth> snapshot;
+    private volatile boolean anyHealthy = true;
+
+    public AIServiceHealthProber(
+            ModelReplicaPool replicaPool,
+            RestTemplate restTemplate,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${ai.service.health.timeout:2s}") Duration timeout,
+            @Value("${ai.service.health.unhealthy-threshold:2}") int unhealthyThreshold,
+            @Value("${ai.service.health.affects-readiness:true}") boolean affectsReadiness,
+            MeterRegistry meterRegistry) {
+        this.replicaPool = replicaPool;
+        this.restTemplate = restTemplate;
+        this.eventPublisher = eventPublisher;
+        this.timeoutMs = timeout.toMillis();
+        this.unhealthyThreshold = Math.max(1, unhealthyThreshold);
+        this.affectsReadiness = affectsReadiness;
+        this.probeExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ai-health-probe-", 0).factory());
+
+        // Optimistic until the first probe completes, so startup does not flap readiness
+        Instant now = Instant.now();
+        Map<String, EndpointHealth> initial = new LinkedHashMap<>();
+        for (String url : replicaPool.getUrls()) {
+            initial.put(url, new EndpointHealth(url, true, -1, 0, now, null));
+            Gauge.builder("ai.service.health.up", this, prober -> prober.snapshot.get(url).healthy() ? 1 : 0)
+                    .tag("replica", url)
+                    .register(meterRegistry);
+        }
+        this.snapshot = Collections.unmodifiableMap(initial);
+    }
+
+    public boolean isAnyHealthy() {
+        return anyHealthy;
+    }
+
+    public List<EndpointHealth> getEndpoints() {
+        return List.copyOf(snapshot.values());
+    }
+
+    @Scheduled(fixedDelayString = "${ai.service.health.probe-interval:5000}")
+    public void probeAll() {
+        Map<String, Future<Long>> probes = new LinkedHashMap<>();
+        for (String url : snapshot.keySet()) {
+            probes.put(url, probeExecutor.submit(() -> probe(url)));
+        }
+
+        Instant now = Instant.now();
+        Map<String, EndpointHealth> next = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<Long>> entry : probes.entrySet()) {
+            EndpointHealth previous = snapshot.get(entry.getKey());
+            next.put(entry.getKey(), update(previous, await(entry.getValue()), now));
+        }
+        snapshot = Collections.unmodifiableMap(next);
+        publishAvailability(next.values().stream().anyMatch(EndpointHealth::healthy));
+    }
+
+    /**
+     * Returns the probe latency in milliseconds, or -1 if the endpoint did not answer 200.
+     */
+    private long probe(String url) {
+        long start = System.nanoTime();
+        try {
+            ResponseEntity<String> response = restTemplate.getForEntity(url + "/health", String.class);
+            if (response.getStatusCode() == HttpStatus.OK) {
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            }
+        } catch (Exception e) {
+            Log.warn("AI service health check of " + url + " failed: " + e.getMessage());
+        }
+        return -1;
+    }
+
+    private long await(Future<Long> probe) {
+        try {
+            return probe.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (Exception e) {
+            // Interrupting the virtual thread closes the probe's socket
+            probe.cancel(true);
+            return -1;
+        }
+    }
+
+    private EndpointHealth update(EndpointHealth previous, long latencyMs, Instant now) {
+        boolean success = latencyMs >= 0;
+        int failures = success ? 0 : previous.consecutiveFailures() + 1;
+        boolean healthy = success || (previous.healthy() && failures < unhealthyThreshold);
+        Instant lastChange = healthy == previous.healthy() ? previous.lastChange() : now;
+
+        if (healthy != previous.healthy()) {
+            Log.warn("AI service endpoint " + previous.url() + " is now " + (healthy ? "healthy" : "unhealthy"));
+        }
+        replicaPool.onProbeResult(previous.url(), healthy);
+        return new EndpointHealth(previous.url(), healthy, success ? latencyMs : previous.lastLatencyMs(),
+                failures, lastChange, now);
+    }
+
+    private void publishAvailability(boolean healthy) {
+        if (healthy == anyHealthy) {
+            return;
+        }
+        anyHealthy = healthy;
+        if (affectsReadiness) {
+            AvailabilityChangeEvent.publish(eventPublisher, this,
+                    healthy ? ReadinessState.ACCEPTING_TRAFFIC : ReadinessState.REFUSING_TRAFFIC);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        probeExecutor.shutdownNow();
+    }
+}
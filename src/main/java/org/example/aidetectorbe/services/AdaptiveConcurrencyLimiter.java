@@ -0,0 +1,174 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive concurrency limit for outbound inference, driven by observed round-trip time (AIMD).
+ * The limit grows by one while calls complete close to the best recently seen RTT and the limit is actually
+ * being used, and shrinks multiplicatively when RTT rises past {@code ai.concurrency.rtt-tolerance} times that
+ * baseline or a call fails with a server error, so it settles near the model server's saturation point.
+ * Calls beyond the current limit are rejected immediately with a 429 {@link AIServiceException}.
+ * <p>
+ * Every ensemble member has its own model server, so each one gets its own limit with the same settings,
+ * created on first use and reported under {@code ai.ensemble.concurrency.*} tagged with the member's name.
+ */
+@Service
+public class AdaptiveConcurrencyLimiter {
+
+    @FunctionalInterface
+    public interface LimitedCall<T> {
+        T call() throws AIServiceException;
+    }
+
+    private final boolean enabled;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double rttTolerance;
+    private final int baselineResetSamples;
+    private final MeterRegistry meterRegistry;
+
+    private final Limit primary;
+    private final Map<String, Limit> members = new ConcurrentHashMap<>();
+
+    public AdaptiveConcurrencyLimiter(
+            @Value("${ai.concurrency.enabled:true}") boolean enabled,
+            @Value("${ai.concurrency.initial-limit:20}") int initialLimit,
+            @Value("${ai.concurrency.min-limit:1}") int minLimit,
+            @Value("${ai.concurrency.max-limit:200}") int maxLimit,
+            @Value("${ai.concurrency.backoff-ratio:0.9}") double backoffRatio,
+            @Value("${ai.concurrency.rtt-tolerance:2.0}") double rttTolerance,
+            @Value("${ai.concurrency.baseline-reset-samples:500}") int baselineResetSamples,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.initialLimit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.backoffRatio = backoffRatio;
+        this.rttTolerance = rttTolerance;
+        this.baselineResetSamples = Math.max(1, baselineResetSamples);
+        this.meterRegistry = meterRegistry;
+        this.primary = new Limit("Inference", "ai.concurrency", Tags.empty());
+    }
+
+    public <T> T execute(LimitedCall<T> call) throws AIServiceException {
+        return primary.execute(call);
+    }
+
+    /**
+     * Runs {@code call} against ensemble member {@code member}'s own limit.
+     */
+    public <T> T execute(String member, LimitedCall<T> call) throws AIServiceException {
+        return members.computeIfAbsent(member, name ->
+                new Limit("Ensemble member " + name, "ai.ensemble.concurrency", Tags.of("model", name))).execute(call);
+    }
+
+    public int getLimit() {
+        return primary.limit;
+    }
+
+    public int getInFlight() {
+        return primary.inFlight.get();
+    }
+
+    private final class Limit {
+        private final String description;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Counter rejections;
+        private volatile int limit = initialLimit;
+        private long minRttNanos = Long.MAX_VALUE;
+        private int samplesSinceBaselineReset;
+
+        private Limit(String description, String metricPrefix, Tags tags) {
+            this.description = description;
+            Gauge.builder(metricPrefix + ".limit", this, current -> current.limit)
+                    .description("Current adaptive concurrency limit for inference calls")
+                    .tags(tags)
+                    .register(meterRegistry);
+            Gauge.builder(metricPrefix + ".in.flight", inFlight, AtomicInteger::get)
+                    .description("Inference calls currently admitted by the limiter")
+                    .tags(tags)
+                    .register(meterRegistry);
+            this.rejections = meterRegistry.counter(metricPrefix + ".rejections", tags);
+        }
+
+        private <T> T execute(LimitedCall<T> call) throws AIServiceException {
+            if (!enabled) {
+                return call.call();
+            }
+            if (!tryAcquire()) {
+                rejections.increment();
+                throw new AIServiceException("Too many images are being analyzed right now. Please retry shortly.", 429);
+            }
+
+            long start = System.nanoTime();
+            try {
+                T result = call.call();
+                onSample(System.nanoTime() - start, false);
+                return result;
+            } catch (AIServiceException e) {
+                // A cancelled call says nothing about the model server's load
+                if (!AIServiceGuard.isCancellation(e)) {
+                    onSample(System.nanoTime() - start, e.getStatusCode() >= 500);
+                }
+                throw e;
+            } catch (RuntimeException e) {
+                if (!AIServiceGuard.isCancellation(e)) {
+                    onSample(System.nanoTime() - start, true);
+                }
+                throw e;
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        private boolean tryAcquire() {
+            while (true) {
+                int current = inFlight.get();
+                if (current >= limit) {
+                    return false;
+                }
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private synchronized void onSample(long rttNanos, boolean dropped) {
+            // Periodically forget the baseline so it can follow a model server that got permanently slower
+            if (++samplesSinceBaselineReset >= baselineResetSamples) {
+                samplesSinceBaselineReset = 0;
+                minRttNanos = Long.MAX_VALUE;
+            }
+            if (!dropped && rttNanos < minRttNanos) {
+                minRttNanos = rttNanos;
+            }
+
+            int current = limit;
+            int next = current;
+            if (dropped || rttNanos > minRttNanos * rttTolerance) {
+                next = Math.max(minLimit, (int) (current * backoffRatio));
+            } else if (inFlight.get() * 2 >= current) {
+                next = Math.min(maxLimit, current + 1);
+            }
+            if (next != current) {
+                limit = next;
+                if (next < current) {
+                    Log.info(description + " concurrency limit lowered from " + current + " to " + next);
+                }
+            }
+        }
+    }
+}
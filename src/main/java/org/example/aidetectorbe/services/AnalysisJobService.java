@@ -0,0 +1,280 @@
+package org.example.aidetectorbe.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.example.aidetectorbe.dto.AnalysisEventDTO;
+import org.example.aidetectorbe.dto.AnalysisJobDTO;
+import org.example.aidetectorbe.dto.ErrorResponse;
+import org.example.aidetectorbe.dto.HistoryEntryDTO;
+import org.example.aidetectorbe.entities.AnalysisJob;
+import org.example.aidetectorbe.entities.ModelResult;
+import org.example.aidetectorbe.entities.User;
+import org.example.aidetectorbe.services.AnalysisProgressNotifier.Stage;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.repository.AnalysisJobRepository;
+import org.example.aidetectorbe.repository.UserRepository;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous analysis jobs: the upload is validated and acknowledged with a job id right away, inference runs
+ * on a bounded worker pool, and clients poll {@link #getJob} until the result is stored, or follow each stage
+ * change on the event stream of {@link AnalysisProgressNotifier}.
+ * Job state lives in a bounded Caffeine cache for cheap polling and is written through to the
+ * {@code analysis_jobs} table, so finished jobs can still be read after eviction or a restart. Uploads are not
+ * persisted, so a job that was still pending or running when its instance stopped is reported as failed once
+ * it has not been updated for {@code app.jobs.stale-after}.
+ * <p>
+ * Every accepted job holds its upload in memory until it has run, so admission is bounded by the total size of
+ * the uploads held ({@code app.jobs.max-queued-size}) as well as by the number of queued jobs; beyond either,
+ * submissions are rejected with a 503.
+ */
+@Service
+public class AnalysisJobService {
+
+    private final ModelAnalysisFlowService modelAnalysisFlowService;
+    private final AnalysisJobRepository analysisJobRepository;
+    private final UserRepository userRepository;
+    private final AnalysisProgressNotifier progressNotifier;
+    private final Duration staleAfter;
+    private final Duration retention;
+    private final ThreadPoolExecutor workers;
+    private final long maxHeldBytes;
+    private final AtomicLong heldBytes = new AtomicLong();
+    private final Cache<UUID, JobSnapshot> jobs;
+
+    private final Counter succeeded;
+    private final Counter failed;
+    private final Counter rejected;
+
+    public AnalysisJobService(
+            ModelAnalysisFlowService modelAnalysisFlowService,
+            AnalysisJobRepository analysisJobRepository,
+            UserRepository userRepository,
+            AnalysisProgressNotifier progressNotifier,
+            @Value("${app.jobs.workers:16}") int workerCount,
+            @Value("${app.jobs.queue-capacity:500}") int queueCapacity,
+            @Value("${app.jobs.max-queued-size:256MB}") DataSize maxQueuedSize,
+            @Value("${app.jobs.cache-size:10000}") long cacheSize,
+            @Value("${app.jobs.cache-ttl:1h}") Duration cacheTtl,
+            @Value("${app.jobs.stale-after:10m}") Duration staleAfter,
+            @Value("${app.jobs.retention:7d}") Duration retention,
+            MeterRegistry meterRegistry) {
+        this.modelAnalysisFlowService = modelAnalysisFlowService;
+        this.analysisJobRepository = analysisJobRepository;
+        this.userRepository = userRepository;
+        this.progressNotifier = progressNotifier;
+        this.staleAfter = staleAfter;
+        this.retention = retention;
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), Thread.ofVirtual().name("analysis-job-", 0).factory());
+        this.maxHeldBytes = maxQueuedSize.toBytes();
+        this.jobs = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtl)
+                .build();
+
+        this.succeeded = meterRegistry.counter("app.jobs.completed", "status", "succeeded");
+        this.failed = meterRegistry.counter("app.jobs.completed", "status", "failed");
+        this.rejected = meterRegistry.counter("app.jobs.rejected");
+        Gauge.builder("app.jobs.queued", workers, executor -> executor.getQueue().size())
+                .description("Analysis jobs waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("app.jobs.held.bytes", heldBytes, AtomicLong::get)
+                .description("Upload bytes held by queued and running analysis jobs")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public AnalysisJobDTO submit(MultipartFile image, String authenticatedUser) throws AIServiceException {
+        ImageBuffer buffer = modelAnalysisFlowService.acceptUpload(image, authenticatedUser);
+        if (!reserve(buffer.size())) {
+            buffer.release();
+            rejected.increment();
+            throw new AIServiceException("Too many analysis jobs are queued. Please retry shortly.", 503);
+        }
+        try {
+            User user = userRepository.findByLogin(authenticatedUser)
+                    .orElseThrow(() -> new SecurityException("Authenticated user not found"));
+
+            AnalysisJob job = new AnalysisJob();
+            job.setUserId(user.getId());
+            job.setStatus(AnalysisJob.Status.PENDING);
+            save(job, authenticatedUser);
+            AnalysisJobDTO accepted = toDto(job);
+            progressNotifier.publish(authenticatedUser, job.getJobId(), Stage.VALIDATED);
+            // Published before handing off, so subscribers never see QUEUED after INFERRING
+            progressNotifier.publish(authenticatedUser, job.getJobId(), Stage.QUEUED);
+
+            try {
+                workers.execute(() -> run(job, buffer, authenticatedUser));
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                jobs.invalidate(job.getJobId());
+                analysisJobRepository.delete(job);
+                progressNotifier.publish(authenticatedUser, new AnalysisEventDTO(job.getJobId(), Stage.FAILED.name(),
+                        null, null, "Too many analysis jobs are queued", Instant.now()));
+                throw new AIServiceException("Too many analysis jobs are queued. Please retry shortly.", e, 503);
+            }
+            Log.info("Accepted analysis job " + job.getJobId() + " for user " + authenticatedUser);
+            return accepted;
+        } catch (RuntimeException | AIServiceException e) {
+            unreserve(buffer);
+            throw e;
+        }
+    }
+
+    /**
+     * Admits {@code bytes} more upload data unless that would exceed the limit; a single upload is always
+     * admitted when nothing else is held, so uploads larger than the limit are not rejected forever.
+     */
+    private boolean reserve(long bytes) {
+        while (true) {
+            long current = heldBytes.get();
+            if (current > 0 && current + bytes > maxHeldBytes) {
+                return false;
+            }
+            if (heldBytes.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    private void unreserve(ImageBuffer buffer) {
+        heldBytes.addAndGet(-buffer.size());
+        buffer.release();
+    }
+
+    /**
+     * Returns the job if it exists and belongs to {@code authenticatedUser}.
+     */
+    public Optional<AnalysisJobDTO> getJob(UUID jobId, String authenticatedUser) {
+        JobSnapshot snapshot = jobs.getIfPresent(jobId);
+        if (snapshot != null) {
+            return snapshot.login().equals(authenticatedUser) ? Optional.of(snapshot.view()) : Optional.empty();
+        }
+
+        Optional<AnalysisJob> stored = analysisJobRepository.findById(jobId);
+        Optional<User> user = userRepository.findByLogin(authenticatedUser);
+        if (stored.isEmpty() || user.isEmpty() || !stored.get().getUserId().equals(user.get().getId())) {
+            return Optional.empty();
+        }
+
+        AnalysisJob job = stored.get();
+        if (!job.getStatus().isTerminal() && job.getUpdatedAt().isBefore(Instant.now().minus(staleAfter))) {
+            fail(job, authenticatedUser, "Analysis was interrupted. Please resubmit the image.", 503);
+        }
+        if (job.getStatus().isTerminal()) {
+            jobs.put(jobId, new JobSnapshot(authenticatedUser, toDto(job)));
+        }
+        return Optional.of(toDto(job));
+    }
+
+    @Scheduled(fixedDelayString = "${app.jobs.cleanup-interval:3600000}")
+    public void purgeExpiredJobs() {
+        long removed = analysisJobRepository.deleteByUpdatedAtBefore(Instant.now().minus(retention));
+        if (removed > 0) {
+            Log.info("Purged " + removed + " analysis jobs older than " + retention);
+        }
+    }
+
+    private void run(AnalysisJob job, ImageBuffer buffer, String authenticatedUser) {
+        try {
+            job.setStatus(AnalysisJob.Status.RUNNING);
+            save(job, authenticatedUser);
+            progressNotifier.publish(authenticatedUser, job.getJobId(), Stage.INFERRING);
+
+            ModelAnalysisFlowService.StoredAnalysis stored =
+                    modelAnalysisFlowService.analyzeAndStoreValidated(buffer, authenticatedUser);
+            ModelResult result = stored.result();
+            Double certainty = stored.response().getCertainty();
+            progressNotifier.publish(authenticatedUser, new AnalysisEventDTO(job.getJobId(), Stage.STORED.name(),
+                    certainty, result.getResultId(), null, Instant.now()));
+
+            job.setStatus(AnalysisJob.Status.SUCCEEDED);
+            job.setResultId(result.getResultId());
+            job.setPhotoId(result.getPhotoId());
+            // With an ensemble the job reports the combined verdict rather than the first model's answer
+            job.setModel(stored.response().getModelUsed());
+            job.setChance(ModelAnalysisFlowService.toChance(certainty));
+            save(job, authenticatedUser);
+            succeeded.increment();
+            progressNotifier.publish(authenticatedUser, new AnalysisEventDTO(job.getJobId(), Stage.DONE.name(),
+                    certainty, result.getResultId(), null, Instant.now()));
+        } catch (AIServiceException e) {
+            fail(job, authenticatedUser, e.getMessage(), e.getStatusCode());
+        } catch (IllegalArgumentException e) {
+            fail(job, authenticatedUser, e.getMessage(), 400);
+        } catch (SecurityException e) {
+            fail(job, authenticatedUser, e.getMessage(), 401);
+        } catch (Exception e) {
+            Log.error("Unexpected error in analysis job " + job.getJobId() + ": " + e.getMessage());
+            fail(job, authenticatedUser, "Failed to process image", 500);
+        } finally {
+            unreserve(buffer);
+        }
+    }
+
+    private void fail(AnalysisJob job, String authenticatedUser, String message, int status) {
+        job.setStatus(AnalysisJob.Status.FAILED);
+        // Upstream messages can be arbitrarily long; an oversized one must not keep the failure from being saved
+        job.setErrorMessage(message != null && message.length() > AnalysisJob.MAX_ERROR_MESSAGE_LENGTH
+                ? message.substring(0, AnalysisJob.MAX_ERROR_MESSAGE_LENGTH) : message);
+        job.setErrorStatus(status);
+        job.setUpdatedAt(Instant.now());
+        try {
+            analysisJobRepository.save(job);
+        } catch (Exception e) {
+            Log.error("Failed to persist state of analysis job " + job.getJobId() + ": " + e.getMessage());
+        }
+        jobs.put(job.getJobId(), new JobSnapshot(authenticatedUser, toDto(job)));
+        failed.increment();
+        progressNotifier.publish(authenticatedUser, new AnalysisEventDTO(job.getJobId(), Stage.FAILED.name(),
+                null, null, message, Instant.now()));
+        Log.warn("Analysis job " + job.getJobId() + " failed: " + message);
+    }
+
+    private void save(AnalysisJob job, String authenticatedUser) {
+        job.setUpdatedAt(Instant.now());
+        analysisJobRepository.save(job);
+        // Snapshots are immutable, so pollers never observe a job half-way through an update
+        jobs.put(job.getJobId(), new JobSnapshot(authenticatedUser, toDto(job)));
+    }
+
+    private AnalysisJobDTO toDto(AnalysisJob job) {
+        HistoryEntryDTO result = job.getStatus() == AnalysisJob.Status.SUCCEEDED
+                ? new HistoryEntryDTO(job.getResultId(), job.getPhotoId(), job.getModel(), job.getChance(), job.getUpdatedAt())
+                : null;
+        ErrorResponse error = job.getStatus() == AnalysisJob.Status.FAILED
+                ? new ErrorResponse("Analysis Failed", job.getErrorMessage(), job.getErrorStatus())
+                : null;
+        return new AnalysisJobDTO(job.getJobId(), job.getStatus().name(), job.getCreatedAt(), job.getUpdatedAt(), result, error);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private record JobSnapshot(String login, AnalysisJobDTO view) {
+    }
+}
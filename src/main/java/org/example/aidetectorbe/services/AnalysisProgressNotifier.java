@@ -0,0 +1,177 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.example.aidetectorbe.dto.AnalysisEventDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-Sent Events fan-out of analysis job progress to the job owner's open connections.
+ * Publishing never blocks on a client: each connection has a bounded buffer that drops its oldest event when
+ * full, and a virtual thread is only started to drain a buffer while it has something to send, so idle
+ * subscribers cost an emitter and an empty queue. Heartbeat comments keep proxies from closing idle streams
+ * and detect dead connections.
+ */
+@Service
+public class AnalysisProgressNotifier {
+
+    public enum Stage {
+        VALIDATED, QUEUED, INFERRING, STORED, DONE, FAILED
+    }
+
+    private final long emitterTimeoutMs;
+    private final int bufferSize;
+    private final Map<String, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ExecutorService senders;
+    private final Counter dropped;
+
+    public AnalysisProgressNotifier(
+            @Value("${app.events.emitter-timeout:30m}") Duration emitterTimeout,
+            @Value("${app.events.buffer-size:16}") int bufferSize,
+            MeterRegistry meterRegistry) {
+        this.emitterTimeoutMs = emitterTimeout.toMillis();
+        this.bufferSize = Math.max(1, bufferSize);
+        this.senders = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sse-sender-", 0).factory());
+
+        this.dropped = meterRegistry.counter("app.events.dropped");
+        Gauge.builder("app.events.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open analysis progress event streams")
+                .register(meterRegistry);
+    }
+
+    public SseEmitter subscribe(String login) {
+        return register(login, new SseEmitter(emitterTimeoutMs));
+    }
+
+    SseEmitter register(String login, SseEmitter emitter) {
+        Subscription subscription = new Subscription(login, emitter);
+        subscriptions.computeIfAbsent(login, key -> ConcurrentHashMap.newKeySet()).add(subscription);
+        subscriberCount.incrementAndGet();
+
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(error -> subscription.close());
+        return emitter;
+    }
+
+    public void publish(String login, UUID jobId, Stage stage) {
+        publish(login, new AnalysisEventDTO(jobId, stage.name(), null, null, null, Instant.now()));
+    }
+
+    public void publish(String login, AnalysisEventDTO event) {
+        Set<Subscription> targets = subscriptions.get(login);
+        if (targets == null) {
+            return;
+        }
+        for (Subscription subscription : targets) {
+            subscription.offer(SseEmitter.event()
+                    .id(event.getJobId() + ":" + event.getStage())
+                    .name("analysis")
+                    .data(event));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.events.heartbeat-interval:15000}")
+    public void sendHeartbeats() {
+        for (Set<Subscription> targets : subscriptions.values()) {
+            for (Subscription subscription : targets) {
+                subscription.offer(SseEmitter.event().comment("heartbeat"));
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscriptions.values().forEach(targets -> targets.forEach(subscription -> subscription.emitter.complete()));
+        senders.shutdownNow();
+    }
+
+    private final class Subscription {
+        private final String login;
+        private final SseEmitter emitter;
+        private final ArrayBlockingQueue<SseEmitter.SseEventBuilder> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Subscription(String login, SseEmitter emitter) {
+            this.login = login;
+            this.emitter = emitter;
+        }
+
+        private void offer(SseEmitter.SseEventBuilder event) {
+            if (closed.get()) {
+                return;
+            }
+            while (!buffer.offer(event)) {
+                if (buffer.poll() != null) {
+                    dropped.increment();
+                }
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                SseEmitter.SseEventBuilder event;
+                while (!closed.get() && (event = buffer.poll()) != null) {
+                    emitter.send(event);
+                }
+            } catch (Exception e) {
+                // The client went away; completing the emitter releases the async request
+                emitter.completeWithError(e);
+                close();
+            } finally {
+                draining.set(false);
+                // An event offered after our last poll but before the flag was cleared still gets sent
+                if (!closed.get() && !buffer.isEmpty()) {
+                    scheduleDrain();
+                }
+            }
+        }
+
+        private void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            buffer.clear();
+            subscriberCount.decrementAndGet();
+            subscriptions.computeIfPresent(login, (key, targets) -> {
+                targets.remove(this);
+                return targets.isEmpty() ? null : targets;
+            });
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package org.example.aidetectorbe.services;
+
+import org.example.aidetectorbe.dto.BatchItemResultDTO;
+import org.example.aidetectorbe.dto.ErrorResponse;
+import org.example.aidetectorbe.entities.ModelResult;
+import org.example.aidetectorbe.entities.User;
+import org.example.aidetectorbe.repository.ModelResultRepository;
+import org.example.aidetectorbe.repository.UserRepository;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.example.aidetectorbe.utils.LimitedInputStream;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Streaming analysis of a ZIP archive of images. Entries are decompressed one at a time straight from the
+ * request body and handed to the bulk analysis pipeline; at most {@code app.archive.max-in-flight} entries are
+ * held in memory, and reading pauses while they are all busy, so memory use does not grow with the archive.
+ * Results are persisted in chunks of {@code app.jpa.batch-size} rows. A chunk that fails to save does not
+ * fail the entry that happened to fill it; the loss is reported once for the whole archive at the end.
+ * <p>
+ * Decompression bombs are refused: an entry larger than {@code app.archive.max-entry-size} or expanding more
+ * than {@code app.archive.max-compression-ratio} times aborts the archive, as does exceeding
+ * {@code app.archive.max-entries} or {@code app.archive.max-size} of compressed input. Nested archives are
+ * reported as failed entries and never opened.
+ */
+@Service
+public class ArchiveAnalysisService {
+
+    private static final long RATIO_CHECK_MIN_BYTES = 64 * 1024;
+
+    private final BatchAnalysisService batchAnalysisService;
+    private final UserRepository userRepository;
+    private final ModelResultRepository modelResultRepository;
+    private final ExecutorService inferenceExecutor;
+    private final long maxArchiveBytes;
+    private final long maxEntryBytes;
+    private final int maxEntries;
+    private final int maxCompressionRatio;
+    private final int maxInFlight;
+    private final int flushSize;
+
+    public ArchiveAnalysisService(
+            BatchAnalysisService batchAnalysisService,
+            UserRepository userRepository,
+            ModelResultRepository modelResultRepository,
+            ExecutorService inferenceExecutor,
+            @Value("${app.archive.max-size:2GB}") DataSize maxArchiveSize,
+            @Value("${app.archive.max-entry-size:${spring.servlet.multipart.max-file-size:10MB}}") DataSize maxEntrySize,
+            @Value("${app.archive.max-entries:1000}") int maxEntries,
+            @Value("${app.archive.max-compression-ratio:100}") int maxCompressionRatio,
+            @Value("${app.archive.max-in-flight:8}") int maxInFlight,
+            @Value("${app.jpa.batch-size:50}") int flushSize) {
+        this.batchAnalysisService = batchAnalysisService;
+        this.userRepository = userRepository;
+        this.modelResultRepository = modelResultRepository;
+        this.inferenceExecutor = inferenceExecutor;
+        this.maxArchiveBytes = maxArchiveSize.toBytes();
+        this.maxEntryBytes = maxEntrySize.toBytes();
+        this.maxEntries = maxEntries;
+        this.maxCompressionRatio = maxCompressionRatio;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.flushSize = Math.max(1, flushSize);
+    }
+
+    /**
+     * Runs {@link #analyzeArchive} on the inference executor, so the request thread is not held while the
+     * archive is read.
+     */
+    public CompletableFuture<Integer> analyzeArchiveAsync(InputStream archive, String authenticatedUser,
+                                                          Consumer<BatchItemResultDTO> onResult) {
+        return CompletableFuture.supplyAsync(() -> analyzeArchive(archive, authenticatedUser, onResult), inferenceExecutor);
+    }
+
+    /**
+     * Reads the archive on the calling thread and blocks until every entry has been analyzed and stored.
+     * {@code onResult} is called once per file entry, from worker threads, in completion order; an archive-level
+     * failure is reported as a final item without an index, as are results that could not be saved. Returns the
+     * number of stored results.
+     */
+    public int analyzeArchive(InputStream archive, String authenticatedUser, Consumer<BatchItemResultDTO> onResult) {
+        if (authenticatedUser == null || authenticatedUser.isBlank()) {
+            throw new SecurityException("Missing authenticated user");
+        }
+        User user = userRepository.findByLogin(authenticatedUser)
+                .orElseThrow(() -> new SecurityException("Authenticated user not found"));
+
+        LimitedInputStream compressed = new LimitedInputStream(archive, maxArchiveBytes);
+        ResultWriter writer = new ResultWriter();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        // Registered parties are the reader plus every entry still being analyzed
+        Phaser pending = new Phaser(1);
+        int index = 0;
+
+        try (ZipInputStream zip = new ZipInputStream(compressed)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (index >= maxEntries) {
+                    throw new ArchiveRejectedException("Archive has more than " + maxEntries + " files");
+                }
+
+                int entryIndex = index++;
+                String name = entry.getName();
+                long compressedBefore = compressed.getCount();
+                byte[] content = readEntry(zip, name);
+                checkCompressionRatio(name, content.length, compressed.getCount() - compressedBefore);
+
+                if (isNestedArchive(name, content)) {
+                    onResult.accept(BatchAnalysisService.failure(entryIndex, name,
+                            new ErrorResponse("Bad Request", "Nested archives are not supported", 400)));
+                    continue;
+                }
+
+                ImageBuffer buffer = ImageBuffer.wrap(content, name, URLConnection.guessContentTypeFromName(name));
+                inFlight.acquireUninterruptibly();
+                pending.register();
+                try {
+                    inferenceExecutor.execute(() -> {
+                        try {
+                            onResult.accept(batchAnalysisService.analyzeItem(entryIndex, name, buffer,
+                                    authenticatedUser, user, writer::add));
+                        } finally {
+                            inFlight.release();
+                            pending.arriveAndDeregister();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    buffer.release();
+                    inFlight.release();
+                    pending.arriveAndDeregister();
+                    throw new ArchiveRejectedException("Server is shutting down");
+                }
+            }
+            if (index == 0) {
+                // ZipInputStream reports a non-ZIP body as an archive without entries
+                throw new ArchiveRejectedException("Archive contains no files");
+            }
+        } catch (ArchiveRejectedException e) {
+            onResult.accept(archiveFailure(e.getMessage()));
+        } catch (LimitedInputStream.LimitExceededException e) {
+            onResult.accept(archiveFailure("Archive exceeds the maximum size of " + DataSize.ofBytes(maxArchiveBytes)));
+        } catch (ZipException e) {
+            onResult.accept(archiveFailure("Invalid ZIP archive"));
+        } catch (IOException e) {
+            Log.error("Failed to read archive upload: " + e.getMessage());
+            onResult.accept(archiveFailure("Failed to read archive"));
+        } finally {
+            // Entries already handed off still finish and get stored, even if the rest of the archive was refused
+            pending.arriveAndAwaitAdvance();
+        }
+
+        int stored = writer.flush();
+        int unsaved = writer.getFailed();
+        if (unsaved > 0) {
+            onResult.accept(new BatchItemResultDTO(null, null, null, null, null, new ErrorResponse(
+                    "Internal Server Error", "Failed to store " + unsaved + " analysis results", 500)));
+        }
+        Log.info("Stored " + stored + " archive analysis results for user " + authenticatedUser);
+        return stored;
+    }
+
+    private byte[] readEntry(ZipInputStream zip, String name) throws IOException {
+        LimitedInputStream entry = new LimitedInputStream(new UnclosableInputStream(zip), maxEntryBytes);
+        try {
+            return entry.readAllBytes();
+        } catch (LimitedInputStream.LimitExceededException e) {
+            if (entry.getCount() <= maxEntryBytes) {
+                // the limit on the whole archive was hit, not the one on this entry
+                throw e;
+            }
+            throw new ArchiveRejectedException("Entry " + name + " exceeds the maximum size of " + DataSize.ofBytes(maxEntryBytes));
+        }
+    }
+
+    private void checkCompressionRatio(String name, long uncompressedBytes, long compressedBytes) {
+        // Small entries are exempt: the inflater reads ahead, so their compressed size is not measured precisely
+        if (uncompressedBytes >= RATIO_CHECK_MIN_BYTES
+                && uncompressedBytes > Math.max(1, compressedBytes) * maxCompressionRatio) {
+            throw new ArchiveRejectedException("Entry " + name + " expands more than " + maxCompressionRatio + " times");
+        }
+    }
+
+    private static boolean isNestedArchive(String name, byte[] content) {
+        String lower = name.toLowerCase();
+        if (lower.endsWith(".zip") || lower.endsWith(".gz") || lower.endsWith(".tar") || lower.endsWith(".7z")
+                || lower.endsWith(".rar") || lower.endsWith(".jar")) {
+            return true;
+        }
+        return startsWith(content, 0x50, 0x4B, 0x03, 0x04)
+                || startsWith(content, 0x1F, 0x8B)
+                || startsWith(content, 0x37, 0x7A, 0xBC, 0xAF)
+                || startsWith(content, 0x52, 0x61, 0x72, 0x21);
+    }
+
+    private static boolean startsWith(byte[] content, int... magic) {
+        if (content.length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((content[i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static BatchItemResultDTO archiveFailure(String message) {
+        return new BatchItemResultDTO(null, null, null, null, null, new ErrorResponse("Bad Request", message, 400));
+    }
+
+    /**
+     * Buffers analyzed results and saves them in batches, so memory stays bounded for large archives.
+     */
+    private final class ResultWriter {
+        private final List<ModelResult> buffered = new ArrayList<>();
+        private int stored;
+        private int failed;
+
+        private void add(ModelResult result) {
+            List<ModelResult> batch = null;
+            synchronized (this) {
+                buffered.add(result);
+                if (buffered.size() >= flushSize) {
+                    batch = new ArrayList<>(buffered);
+                    buffered.clear();
+                }
+            }
+            if (batch != null) {
+                save(batch);
+            }
+        }
+
+        private int flush() {
+            List<ModelResult> batch;
+            synchronized (this) {
+                batch = new ArrayList<>(buffered);
+                buffered.clear();
+            }
+            if (!batch.isEmpty()) {
+                save(batch);
+            }
+            synchronized (this) {
+                return stored;
+            }
+        }
+
+        private synchronized int getFailed() {
+            return failed;
+        }
+
+        private void save(List<ModelResult> batch) {
+            try {
+                modelResultRepository.saveAll(batch);
+            } catch (RuntimeException e) {
+                // Runs on whichever worker filled the chunk; its own entry was analyzed fine
+                Log.error("Failed to store " + batch.size() + " archive analysis results: " + e.getMessage());
+                synchronized (this) {
+                    failed += batch.size();
+                }
+                return;
+            }
+            synchronized (this) {
+                stored += batch.size();
+            }
+        }
+    }
+
+    private static final class ArchiveRejectedException extends RuntimeException {
+        private ArchiveRejectedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Keeps a per-entry reader from closing the shared {@link ZipInputStream}.
+     */
+    private static final class UnclosableInputStream extends FilterInputStream {
+        private UnclosableInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // the archive stream is closed by its owner
+        }
+    }
+}
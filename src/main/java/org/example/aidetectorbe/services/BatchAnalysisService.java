@@ -0,0 +1,151 @@
+package org.example.aidetectorbe.services;
+
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.dto.BatchItemResultDTO;
+import org.example.aidetectorbe.dto.ErrorResponse;
+import org.example.aidetectorbe.entities.ModelResult;
+import org.example.aidetectorbe.entities.User;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.repository.ModelResultRepository;
+import org.example.aidetectorbe.repository.UserRepository;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Analysis of many images from one request. The user is resolved once, images are validated and inferred
+ * in parallel (at most {@code app.batch.concurrency} at a time per request) through the same pipeline as
+ * single uploads, each result is handed to the caller as soon as it is ready, and all {@link ModelResult}
+ * rows are written with a single {@code saveAll} so Hibernate can send them as one JDBC batch.
+ */
+@Service
+public class BatchAnalysisService {
+
+    private final ModelAnalysisFlowService modelAnalysisFlowService;
+    private final UserRepository userRepository;
+    private final ModelResultRepository modelResultRepository;
+    private final ExecutorService inferenceExecutor;
+    private final int maxImages;
+    private final int concurrency;
+
+    public BatchAnalysisService(
+            ModelAnalysisFlowService modelAnalysisFlowService,
+            UserRepository userRepository,
+            ModelResultRepository modelResultRepository,
+            ExecutorService inferenceExecutor,
+            @Value("${app.batch.max-images:50}") int maxImages,
+            @Value("${app.batch.concurrency:8}") int concurrency) {
+        this.modelAnalysisFlowService = modelAnalysisFlowService;
+        this.userRepository = userRepository;
+        this.modelResultRepository = modelResultRepository;
+        this.inferenceExecutor = inferenceExecutor;
+        this.maxImages = maxImages;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Validates the request synchronously and starts the analysis. {@code onResult} is called once per image,
+     * from worker threads, in completion order. The returned future completes with the number of stored
+     * results once they have been persisted, or exceptionally if saving them failed after every item was
+     * already reported.
+     */
+    public CompletableFuture<Integer> analyzeBatch(List<MultipartFile> images, String authenticatedUser,
+                                                   Consumer<BatchItemResultDTO> onResult) {
+        if (authenticatedUser == null || authenticatedUser.isBlank()) {
+            throw new SecurityException("Missing authenticated user");
+        }
+        if (images == null || images.isEmpty()) {
+            throw new IllegalArgumentException("No images provided");
+        }
+        if (images.size() > maxImages) {
+            throw new IllegalArgumentException("Too many images. Maximum allowed per batch is " + maxImages);
+        }
+        User user = userRepository.findByLogin(authenticatedUser)
+                .orElseThrow(() -> new SecurityException("Authenticated user not found"));
+
+        // Uploads are copied on the request thread; the multipart parts are not guaranteed to outlive it
+        List<ImageBuffer> buffers = new ArrayList<>(images.size());
+        List<String> readErrors = new ArrayList<>(images.size());
+        for (MultipartFile image : images) {
+            try {
+                buffers.add(modelAnalysisFlowService.readUpload(image));
+                readErrors.add(null);
+            } catch (IllegalArgumentException e) {
+                buffers.add(null);
+                readErrors.add(e.getMessage());
+            }
+        }
+
+        Semaphore permits = new Semaphore(concurrency);
+        List<ModelResult> results = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> items = new ArrayList<>(images.size());
+        for (int i = 0; i < images.size(); i++) {
+            int index = i;
+            String filename = images.get(i) == null ? null : images.get(i).getOriginalFilename();
+            ImageBuffer buffer = buffers.get(i);
+            String readError = readErrors.get(i);
+            if (buffer == null) {
+                onResult.accept(failure(index, filename, new ErrorResponse("Bad Request", readError, 400)));
+                continue;
+            }
+            items.add(CompletableFuture.runAsync(() -> {
+                permits.acquireUninterruptibly();
+                try {
+                    onResult.accept(analyzeItem(index, filename, buffer, authenticatedUser, user, results::add));
+                } finally {
+                    permits.release();
+                }
+            }, inferenceExecutor));
+        }
+
+        return CompletableFuture.allOf(items.toArray(CompletableFuture[]::new))
+                .thenApply(done -> {
+                    modelResultRepository.saveAll(results);
+                    Log.info("Stored " + results.size() + " of " + images.size() + " batch analysis results for user " + authenticatedUser);
+                    return results.size();
+                });
+    }
+
+    /**
+     * Validates and analyzes one image, always releasing {@code buffer}. Failures become an error item rather
+     * than an exception, so one bad image never fails the rest of a bulk request.
+     */
+    BatchItemResultDTO analyzeItem(int index, String filename, ImageBuffer buffer, String authenticatedUser,
+                                   User user, Consumer<ModelResult> onAnalyzed) {
+        if (buffer == null) {
+            return failure(index, filename, new ErrorResponse("Bad Request", "Failed to read image", 400));
+        }
+        try {
+            modelAnalysisFlowService.validateUpload(buffer);
+            ModelAnalysisFlowService.StoredAnalysis analysis =
+                    modelAnalysisFlowService.analyzeValidated(buffer, authenticatedUser, user);
+            analysis.results().forEach(onAnalyzed);
+            AIModelResponse response = analysis.response();
+            return new BatchItemResultDTO(index, filename, response.getCertainty(), response.getModelUsed(),
+                    response.getProcessingTimeMs(), null);
+        } catch (IllegalArgumentException e) {
+            return failure(index, filename, new ErrorResponse("Bad Request", e.getMessage(), 400));
+        } catch (AIServiceException e) {
+            return failure(index, filename, new ErrorResponse("AI Service Error", e.getMessage(), e.getStatusCode()));
+        } catch (Exception e) {
+            Log.error("Unexpected error processing batch image " + index + ": " + e.getMessage());
+            return failure(index, filename, new ErrorResponse("Internal Server Error", "Failed to process image", 500));
+        } finally {
+            buffer.release();
+        }
+    }
+
+    static BatchItemResultDTO failure(int index, String filename, ErrorResponse error) {
+        return new BatchItemResultDTO(index, filename, null, null, null, error);
+    }
+}
@@ -0,0 +1,231 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Fan-out of one image to an ensemble of detector models. Besides the primary model
+ * ({@code ai.service.model-name}), every entry of {@code ai.ensemble.models} ({@code name=baseUrl}) is asked
+ * concurrently, and the certainties are combined by {@code ai.ensemble.aggregation} into one verdict reported as
+ * {@code ai.ensemble.name}.
+ * <p>
+ * Early termination keeps the ensemble from always costing its slowest member: as soon as
+ * {@code ai.ensemble.quorum} models have answered and all of them are confident in the same direction (every
+ * certainty at least {@code ai.ensemble.agreement-threshold}, or every one at most one minus it), the verdict is
+ * returned without the others. Additional members are cancelled: one still waiting for an inference slot is
+ * skipped, one already sending has its virtual thread interrupted, which closes its socket. The primary model is
+ * never cancelled, since it may be the coalescing leader other requests for the same image are waiting on and its
+ * answer fills the cache; a slow primary is detached instead and keeps running in the background. Members that
+ * failed or were stopped are left out of the verdict; the analysis only fails when no member answers.
+ */
+@Service
+public class EnsembleInferenceService {
+
+    public record Member(String name, String baseUrl) {
+        public boolean isPrimary() {
+            return baseUrl == null;
+        }
+    }
+
+    @FunctionalInterface
+    public interface MemberCall {
+        AIModelResponse call(Member member) throws AIServiceException;
+    }
+
+    /**
+     * The combined verdict and the answer of every member that finished, each reporting its own model name.
+     */
+    public record Verdict(AIModelResponse response, List<AIModelResponse> memberResponses) {
+    }
+
+    private static final int MAX_MODEL_NAME_LENGTH = 50;
+
+    private final String primaryModelName;
+    private final List<Member> additionalMembers;
+    private final String ensembleName;
+    private final TiledInferenceService.Aggregation aggregation;
+    private final double agreementThreshold;
+    private final int quorum;
+    private final ExecutorService inferenceExecutor;
+    private final MeterRegistry meterRegistry;
+    private final Counter completed;
+    private final Counter stoppedEarly;
+    private final Counter cancelledMembers;
+    private final Counter detachedPrimaries;
+
+    public EnsembleInferenceService(
+            @Value("${ai.ensemble.enabled:false}") boolean enabled,
+            @Value("${ai.ensemble.models:}") List<String> models,
+            @Value("${ai.service.model-name:AIDetector}") String primaryModelName,
+            @Value("${ai.ensemble.name:ensemble}") String ensembleName,
+            @Value("${ai.ensemble.aggregation:MEAN}") TiledInferenceService.Aggregation aggregation,
+            @Value("${ai.ensemble.agreement-threshold:0.9}") double agreementThreshold,
+            @Value("${ai.ensemble.quorum:2}") int quorum,
+            ExecutorService inferenceExecutor,
+            MeterRegistry meterRegistry) {
+        this.primaryModelName = primaryModelName;
+        this.additionalMembers = enabled ? parseMembers(models, primaryModelName) : List.of();
+        // The verdict's model name is stored with analysis jobs, in a column of the same width
+        if (ensembleName.length() > MAX_MODEL_NAME_LENGTH) {
+            throw new IllegalArgumentException("Ensemble name is longer than " + MAX_MODEL_NAME_LENGTH + " characters: " + ensembleName);
+        }
+        this.ensembleName = ensembleName;
+        this.aggregation = aggregation;
+        this.agreementThreshold = agreementThreshold;
+        this.quorum = Math.max(1, quorum);
+        this.inferenceExecutor = inferenceExecutor;
+        this.meterRegistry = meterRegistry;
+        this.completed = meterRegistry.counter("ai.ensemble.requests", "outcome", "complete");
+        this.stoppedEarly = meterRegistry.counter("ai.ensemble.requests", "outcome", "early_stop");
+        this.cancelledMembers = meterRegistry.counter("ai.ensemble.members.cancelled");
+        this.detachedPrimaries = meterRegistry.counter("ai.ensemble.primary.detached");
+    }
+
+    public boolean isEnabled() {
+        return !additionalMembers.isEmpty();
+    }
+
+    /**
+     * Asks the primary model and every additional member through {@code call}, which must run the member's
+     * inference; it is invoked concurrently from inference executor threads.
+     */
+    public Verdict infer(MemberCall call) throws AIServiceException {
+        long startTime = System.currentTimeMillis();
+        List<Member> members = new ArrayList<>(additionalMembers.size() + 1);
+        members.add(new Member(primaryModelName, null));
+        members.addAll(additionalMembers);
+
+        CompletionService<AIModelResponse> completion = new ExecutorCompletionService<>(inferenceExecutor);
+        Map<Future<AIModelResponse>, Member> pending = new HashMap<>();
+        List<AIModelResponse> answers = new ArrayList<>(members.size());
+        AIServiceException firstFailure = null;
+        boolean agreedEarly = false;
+        try {
+            for (Member member : members) {
+                pending.put(completion.submit(() -> call.call(member)), member);
+            }
+            while (!pending.isEmpty()) {
+                Future<AIModelResponse> done = completion.take();
+                Member member = pending.remove(done);
+                if (member == null) {
+                    continue;
+                }
+                try {
+                    answers.add(done.get());
+                } catch (ExecutionException e) {
+                    firstFailure = firstFailure != null ? firstFailure : asServiceException(e.getCause());
+                    meterRegistry.counter("ai.ensemble.member.failures", "model", member.name()).increment();
+                    Log.warn("Ensemble member " + member.name() + " failed: " + e.getCause().getMessage());
+                }
+                if (!pending.isEmpty() && confidentlyAgree(answers)) {
+                    agreedEarly = true;
+                    Log.info("Ensemble agreed after " + answers.size() + " of " + members.size() + " models, stopping the rest");
+                    detachPrimary(pending);
+                    cancelAdditional(pending);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AIServiceException("Interrupted while waiting for ensemble models", e, 503);
+        } finally {
+            // A primary still running is left to finish, so the requests coalesced onto it still get its answer
+            cancelAdditional(pending);
+        }
+
+        if (answers.isEmpty()) {
+            throw firstFailure;
+        }
+        (agreedEarly ? stoppedEarly : completed).increment();
+        AIModelResponse verdict = ImagePartInference.aggregate(answers, aggregation, System.currentTimeMillis() - startTime);
+        verdict.setModelUsed(ensembleName);
+        return new Verdict(verdict, List.copyOf(answers));
+    }
+
+    private void detachPrimary(Map<Future<AIModelResponse>, Member> pending) {
+        // Left running rather than cancelled: its answer still reaches the cache and any coalesced followers
+        if (pending.values().removeIf(Member::isPrimary)) {
+            detachedPrimaries.increment();
+        }
+    }
+
+    private void cancelAdditional(Map<Future<AIModelResponse>, Member> pending) {
+        Iterator<Map.Entry<Future<AIModelResponse>, Member>> entries = pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Future<AIModelResponse>, Member> entry = entries.next();
+            if (!entry.getValue().isPrimary()) {
+                entry.getKey().cancel(true);
+                entries.remove();
+                cancelledMembers.increment();
+            }
+        }
+    }
+
+    private boolean confidentlyAgree(List<AIModelResponse> answers) {
+        if (answers.size() < quorum) {
+            return false;
+        }
+        boolean allGenerated = true;
+        boolean allAuthentic = true;
+        for (AIModelResponse answer : answers) {
+            Double certainty = answer.getCertainty();
+            if (certainty == null) {
+                return false;
+            }
+            allGenerated &= certainty >= agreementThreshold;
+            allAuthentic &= certainty <= 1.0 - agreementThreshold;
+        }
+        return allGenerated || allAuthentic;
+    }
+
+    private static AIServiceException asServiceException(Throwable error) {
+        if (error instanceof AIServiceException aiServiceException) {
+            return aiServiceException;
+        }
+        return new AIServiceException("Failed to process image with ensemble model: " + error.getMessage(), error);
+    }
+
+    private static List<Member> parseMembers(List<String> models, String primaryModelName) {
+        List<Member> members = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        names.add(primaryModelName);
+        for (String entry : models) {
+            if (entry == null || entry.isBlank()) {
+                continue;
+            }
+            int separator = entry.indexOf('=');
+            String name = separator < 0 ? "" : entry.substring(0, separator).trim();
+            String baseUrl = separator < 0 ? "" : entry.substring(separator + 1).trim();
+            if (name.isEmpty() || baseUrl.isEmpty()) {
+                throw new IllegalArgumentException("Ensemble models must be configured as name=baseUrl, got: " + entry);
+            }
+            // Each member's answer is stored as a ModelResult, whose model column holds 50 characters
+            if (name.length() > MAX_MODEL_NAME_LENGTH) {
+                throw new IllegalArgumentException("Ensemble model name is longer than " + MAX_MODEL_NAME_LENGTH + " characters: " + name);
+            }
+            // Members are told apart in stored results and metrics by name only
+            if (!names.add(name)) {
+                throw new IllegalArgumentException("Ensemble model name is used more than once, or by the primary model: " + name);
+            }
+            members.add(new Member(name, baseUrl));
+        }
+        return List.copyOf(members);
+    }
+}
@@ -0,0 +1,271 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.example.aidetectorbe.entities.Role;
+import org.example.aidetectorbe.entities.User;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.exceptions.SchedulingRejectedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.example.aidetectorbe.utils.Constants.ADMIN_USER_ROLE;
+import static org.example.aidetectorbe.utils.Constants.DEFAULT_USER_ROLE;
+
+/**
+ * Per-user weighted fair queuing of AI service calls.
+ * Every authenticated login gets its own FIFO queue; when an inference slot frees up the queued call with the
+ * smallest virtual start tag is admitted (start-time fair queuing), so a user with weight {@code w} gets about
+ * {@code w} times the share of a weight-1 user while both are backlogged, and one client flooding uploads
+ * only lengthens its own queue.
+ * Slots are capped by {@code ai.scheduling.max-concurrent} and by the adaptive concurrency limit, so excess
+ * work waits fairly here instead of being rejected downstream.
+ * <p>
+ * The calls of one image (its frames and tiles, and every ensemble member) belong to one {@link Analysis}.
+ * {@code ai.scheduling.max-queue-depth} limits how many analyses of a login may have calls waiting, not how many
+ * calls: a batch analyzing several images at once only counts each image once, however many parts it has.
+ */
+@Service
+public class FairInferenceScheduler {
+
+    @FunctionalInterface
+    public interface ScheduledCall<T> {
+        T call() throws AIServiceException;
+    }
+
+    /**
+     * One image's analysis on behalf of a login, with the role and queue weight resolved for it. Every call made
+     * for the image is scheduled with the same instance.
+     */
+    public static final class Analysis {
+        private final String login;
+        private final String role;
+        private final int weight;
+
+        Analysis(String login, String role, int weight) {
+            this.login = login;
+            this.role = role;
+            this.weight = weight;
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+    }
+
+    private final boolean enabled;
+    private final int maxConcurrent;
+    private final int maxQueueDepth;
+    private final long maxWaitMs;
+    private final int adminWeight;
+    private final int userWeight;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    private final Object lock = new Object();
+    private final Map<String, UserQueue> queues = new HashMap<>();
+    private int running;
+    private int queued;
+    private double virtualTime;
+
+    private final Timer adminWaitTimer;
+    private final Timer userWaitTimer;
+    private final Counter queueFullRejections;
+    private final Counter timeoutRejections;
+
+    public FairInferenceScheduler(
+            @Value("${ai.scheduling.enabled:true}") boolean enabled,
+            @Value("${ai.scheduling.max-concurrent:${ai.service.bulkhead.max-concurrent-calls:${ai.service.pool.max-per-route:20}}}") int maxConcurrent,
+            @Value("${ai.scheduling.max-queue-depth:20}") int maxQueueDepth,
+            @Value("${ai.scheduling.max-wait:${ai.service.timeout:30000}}") long maxWaitMs,
+            @Value("${ai.scheduling.weights.admin:4}") int adminWeight,
+            @Value("${ai.scheduling.weights.user:1}") int userWeight,
+            AdaptiveConcurrencyLimiter concurrencyLimiter,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueueDepth = Math.max(1, maxQueueDepth);
+        this.maxWaitMs = maxWaitMs;
+        this.adminWeight = Math.max(1, adminWeight);
+        this.userWeight = Math.max(1, userWeight);
+        this.concurrencyLimiter = concurrencyLimiter;
+
+        this.adminWaitTimer = Timer.builder("ai.scheduling.queue.wait")
+                .tag("role", ADMIN_USER_ROLE)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.userWaitTimer = Timer.builder("ai.scheduling.queue.wait")
+                .tag("role", DEFAULT_USER_ROLE)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.queueFullRejections = meterRegistry.counter("ai.scheduling.rejections", "reason", "queue_full");
+        this.timeoutRejections = meterRegistry.counter("ai.scheduling.rejections", "reason", "timeout");
+        Gauge.builder("ai.scheduling.queued", this, FairInferenceScheduler::getQueued)
+                .description("Inference calls waiting for a slot across all user queues")
+                .register(meterRegistry);
+        Gauge.builder("ai.scheduling.active.queues", this, FairInferenceScheduler::getActiveQueues)
+                .description("Users with at least one inference call waiting")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts an analysis for {@code login}. ADMIN users are queued with {@code ai.scheduling.weights.admin},
+     * everyone else with {@code ai.scheduling.weights.user}.
+     */
+    public Analysis analysisFor(String login, User user) {
+        if (user != null && user.getRoles() != null) {
+            for (Role role : user.getRoles()) {
+                if (ADMIN_USER_ROLE.equals(role.getName())) {
+                    return new Analysis(login, ADMIN_USER_ROLE, adminWeight);
+                }
+            }
+        }
+        return new Analysis(login, DEFAULT_USER_ROLE, userWeight);
+    }
+
+    public <T> T execute(Analysis analysis, ScheduledCall<T> call) throws AIServiceException {
+        if (!enabled) {
+            return call.call();
+        }
+
+        Ticket ticket = enqueue(analysis);
+        awaitTurn(ticket);
+        try {
+            return call.call();
+        } finally {
+            release();
+        }
+    }
+
+    public int getQueued() {
+        synchronized (lock) {
+            return queued;
+        }
+    }
+
+    public int getActiveQueues() {
+        synchronized (lock) {
+            return queues.size();
+        }
+    }
+
+    private Ticket enqueue(Analysis analysis) throws AIServiceException {
+        synchronized (lock) {
+            UserQueue queue = queues.computeIfAbsent(analysis.login, key -> new UserQueue());
+            if (!queue.waitingAnalyses.containsKey(analysis) && queue.waitingAnalyses.size() >= maxQueueDepth) {
+                queueFullRejections.increment();
+                throw new SchedulingRejectedException("Too many pending analyses for this user. Please retry shortly.", 429);
+            }
+            double startTag = Math.max(virtualTime, queue.lastFinishTag);
+            queue.lastFinishTag = startTag + 1.0 / analysis.weight;
+            Ticket ticket = new Ticket(analysis, startTag);
+            queue.tickets.addLast(ticket);
+            queue.waitingAnalyses.merge(analysis, 1, Integer::sum);
+            queued++;
+            dispatchLocked();
+            return ticket;
+        }
+    }
+
+    private void awaitTurn(Ticket ticket) throws AIServiceException {
+        try {
+            ticket.turn.get(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (!cancel(ticket)) {
+                // Admitted at the same moment we gave up: hand the slot straight back
+                release();
+            }
+            timeoutRejections.increment();
+            throw new SchedulingRejectedException("Timed out waiting for an analysis slot", e, 503);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        (ADMIN_USER_ROLE.equals(ticket.analysis.role) ? adminWaitTimer : userWaitTimer).record(System.nanoTime() - ticket.enqueuedAt, TimeUnit.NANOSECONDS);
+    }
+
+    private boolean cancel(Ticket ticket) {
+        synchronized (lock) {
+            UserQueue queue = queues.get(ticket.analysis.login);
+            if (queue == null || !queue.tickets.remove(ticket)) {
+                return false;
+            }
+            queue.leave(ticket);
+            queued--;
+            if (queue.tickets.isEmpty()) {
+                queues.remove(ticket.analysis.login);
+            }
+            return true;
+        }
+    }
+
+    private void release() {
+        synchronized (lock) {
+            running--;
+            dispatchLocked();
+        }
+    }
+
+    private void dispatchLocked() {
+        int slots = Math.min(maxConcurrent, concurrencyLimiter.getLimit());
+        while (running < slots && queued > 0) {
+            String nextLogin = null;
+            UserQueue nextQueue = null;
+            for (Map.Entry<String, UserQueue> entry : queues.entrySet()) {
+                Ticket head = entry.getValue().tickets.peekFirst();
+                if (head != null && (nextQueue == null || head.startTag < nextQueue.tickets.peekFirst().startTag)) {
+                    nextLogin = entry.getKey();
+                    nextQueue = entry.getValue();
+                }
+            }
+
+            Ticket ticket = nextQueue.tickets.pollFirst();
+            nextQueue.leave(ticket);
+            if (nextQueue.tickets.isEmpty()) {
+                queues.remove(nextLogin);
+            }
+            queued--;
+            running++;
+            virtualTime = Math.max(virtualTime, ticket.startTag);
+            ticket.turn.complete(null);
+        }
+    }
+
+    private static final class UserQueue {
+        private final ArrayDeque<Ticket> tickets = new ArrayDeque<>();
+        // Waiting calls per analysis; analyses are compared by identity
+        private final Map<Analysis, Integer> waitingAnalyses = new HashMap<>();
+        private double lastFinishTag;
+
+        private void leave(Ticket ticket) {
+            waitingAnalyses.computeIfPresent(ticket.analysis, (analysis, waiting) -> waiting > 1 ? waiting - 1 : null);
+        }
+    }
+
+    private static final class Ticket {
+        private final Analysis analysis;
+        private final double startTag;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<Void> turn = new CompletableFuture<>();
+
+        private Ticket(Analysis analysis, double startTag) {
+            this.analysis = analysis;
+            this.startTag = startTag;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Optional multi-frame analysis mode for animated GIFs, enabled with {@code ai.frames.enabled}. The model only
+ * sees one still image per call, so instead of the first frame, up to {@code ai.frames.max-frames} frames spread
+ * evenly over the animation (at least {@code ai.frames.interval} frames apart) are analyzed in parallel and
+ * combined by {@code ai.frames.aggregation} into one response. Like tiling it is off by default, since every
+ * sampled frame is a model call of its own and with {@code MAX} aggregation one frame decides the verdict.
+ * <p>
+ * Frames are read one at a time with {@link ImageReader#read(int)} and composited onto a single canvas following
+ * each frame's disposal method, since later GIF frames usually only hold the pixels that changed. Memory is
+ * bounded by that canvas plus at most {@code ai.frames.max-concurrent} encoded samples, however long the
+ * animation is; frames past {@code ai.frames.max-decoded-frames} are not read at all. Every frame's header is
+ * checked by {@link ImageValidationService#validateFrame} before it is read, since upload validation only saw
+ * the first one.
+ */
+@Service
+public class FrameSamplingService {
+
+    private static final String GIF_IMAGE_METADATA = "javax_imageio_gif_image_1.0";
+    private static final String GIF_STREAM_METADATA = "javax_imageio_gif_stream_1.0";
+    // A logical screen larger than the first frame is only trusted up to this size (16MB as ARGB)
+    private static final long MAX_CANVAS_PIXELS = 4_000_000L;
+
+    private final boolean enabled;
+    private final int maxFrames;
+    private final int minInterval;
+    private final int maxDecodedFrames;
+    private final int maxConcurrent;
+    private final TiledInferenceService.Aggregation aggregation;
+    private final ImageValidationService imageValidationService;
+    private final ExecutorService inferenceExecutor;
+    private final Counter animatedImages;
+    private final Counter sampledFrames;
+
+    public FrameSamplingService(
+            @Value("${ai.frames.enabled:false}") boolean enabled,
+            @Value("${ai.frames.max-frames:8}") int maxFrames,
+            @Value("${ai.frames.interval:1}") int minInterval,
+            @Value("${ai.frames.max-decoded-frames:1000}") int maxDecodedFrames,
+            @Value("${ai.frames.max-concurrent:4}") int maxConcurrent,
+            @Value("${ai.frames.aggregation:MAX}") TiledInferenceService.Aggregation aggregation,
+            ImageValidationService imageValidationService,
+            ExecutorService inferenceExecutor,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxFrames = Math.max(1, maxFrames);
+        this.minInterval = Math.max(1, minInterval);
+        this.maxDecodedFrames = Math.max(1, maxDecodedFrames);
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.aggregation = aggregation;
+        this.imageValidationService = imageValidationService;
+        this.inferenceExecutor = inferenceExecutor;
+        this.animatedImages = meterRegistry.counter("ai.frames.images");
+        this.sampledFrames = meterRegistry.counter("ai.frames.sampled");
+    }
+
+    /**
+     * Runs {@code call} on the whole image, or once per sampled frame when it is an animation. The caller keeps
+     * ownership of {@code image}.
+     */
+    public AIModelResponse infer(ImageBuffer image, TiledInferenceService.TileCall call) throws AIServiceException {
+        boolean gif = enabled && "gif".equals(ImageValidationService.detectFormat(image.asByteBuffer()));
+        Iterator<ImageReader> readers = gif ? ImageIO.getImageReadersByFormatName("gif") : null;
+        if (readers == null || !readers.hasNext()) {
+            return call.call(image);
+        }
+
+        ImageReader reader = readers.next();
+        try (ImageInputStream input = new MemoryCacheImageInputStream(image.newInputStream())) {
+            // Frame metadata is needed for offsets and disposal, and counting frames needs to search the stream
+            reader.setInput(input, false, false);
+            int frameCount = reader.getNumImages(true);
+            if (frameCount <= 1) {
+                return call.call(image);
+            }
+            return inferFrames(reader, image.getFilename(), frameCount, call);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to decode image");
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private AIModelResponse inferFrames(ImageReader reader, String filename, int frameCount, TiledInferenceService.TileCall call)
+            throws AIServiceException, IOException {
+        long startTime = System.currentTimeMillis();
+        int readable = Math.min(frameCount, maxDecodedFrames);
+        int interval = Math.max(minInterval, (readable + maxFrames - 1) / maxFrames);
+        GifCanvas canvas = new GifCanvas(reader, imageValidationService);
+        int[] nextFrame = {0};
+
+        List<AIModelResponse> responses = ImagePartInference.run(() -> {
+            while (nextFrame[0] < readable) {
+                int index = nextFrame[0]++;
+                canvas.draw(index);
+                if (index % interval == 0) {
+                    return canvas.encode(filename + "#frame" + index + ".png");
+                }
+            }
+            return null;
+        }, maxConcurrent, inferenceExecutor, call);
+
+        animatedImages.increment();
+        sampledFrames.increment(responses.size());
+        Log.info("Analyzed " + responses.size() + " of " + frameCount + " frames of animated image " + filename);
+        return ImagePartInference.aggregate(responses, aggregation, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * The visible animation state, rebuilt frame by frame as a GIF decoder would display it.
+     */
+    private static final class GifCanvas {
+        private final ImageReader reader;
+        private final ImageValidationService imageValidationService;
+        private final BufferedImage canvas;
+        private Rectangle previousArea;
+        private String previousDisposal;
+        private BufferedImage previousContent;
+
+        private GifCanvas(ImageReader reader, ImageValidationService imageValidationService) throws IOException {
+            this.reader = reader;
+            this.imageValidationService = imageValidationService;
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            Node screen = child(reader.getStreamMetadata(), GIF_STREAM_METADATA, "LogicalScreenDescriptor");
+            int screenWidth = intAttribute(screen, "logicalScreenWidth", 0);
+            int screenHeight = intAttribute(screen, "logicalScreenHeight", 0);
+            long screenPixels = (long) screenWidth * screenHeight;
+            if (screenPixels > 0 && screenPixels <= Math.max((long) width * height, MAX_CANVAS_PIXELS)) {
+                width = screenWidth;
+                height = screenHeight;
+            }
+            this.canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        private void draw(int index) throws IOException {
+            imageValidationService.validateFrame(reader, index, canvas.getWidth(), canvas.getHeight());
+            BufferedImage frame = reader.read(index);
+            IIOMetadata metadata = reader.getImageMetadata(index);
+            Node descriptor = child(metadata, GIF_IMAGE_METADATA, "ImageDescriptor");
+            Node control = child(metadata, GIF_IMAGE_METADATA, "GraphicControlExtension");
+            Rectangle area = new Rectangle(intAttribute(descriptor, "imageLeftPosition", 0),
+                    intAttribute(descriptor, "imageTopPosition", 0), frame.getWidth(), frame.getHeight())
+                    .intersection(new Rectangle(canvas.getWidth(), canvas.getHeight()));
+            String disposal = control == null ? "none" : stringAttribute(control, "disposalMethod", "none");
+
+            Graphics2D graphics = canvas.createGraphics();
+            try {
+                disposePrevious(graphics);
+                previousContent = "restoreToPrevious".equals(disposal) && !area.isEmpty() ? copy(area) : null;
+                graphics.drawImage(frame, area.x, area.y, null);
+            } finally {
+                graphics.dispose();
+            }
+            previousArea = area;
+            previousDisposal = disposal;
+        }
+
+        private void disposePrevious(Graphics2D graphics) {
+            if (previousArea == null || previousArea.isEmpty()) {
+                return;
+            }
+            if ("restoreToBackgroundColor".equals(previousDisposal)) {
+                graphics.setComposite(AlphaComposite.Clear);
+                graphics.fillRect(previousArea.x, previousArea.y, previousArea.width, previousArea.height);
+            } else if ("restoreToPrevious".equals(previousDisposal) && previousContent != null) {
+                graphics.setComposite(AlphaComposite.Src);
+                graphics.drawImage(previousContent, previousArea.x, previousArea.y, null);
+            }
+            graphics.setComposite(AlphaComposite.SrcOver);
+        }
+
+        private BufferedImage copy(Rectangle area) {
+            BufferedImage copy = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = copy.createGraphics();
+            try {
+                graphics.setComposite(AlphaComposite.Src);
+                graphics.drawImage(canvas.getSubimage(area.x, area.y, area.width, area.height), 0, 0, null);
+            } finally {
+                graphics.dispose();
+            }
+            return copy;
+        }
+
+        private ImageBuffer encode(String filename) throws IOException {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            if (!ImageIO.write(canvas, "png", encoded)) {
+                throw new IOException("No PNG encoder available");
+            }
+            return ImageBuffer.wrap(encoded.toByteArray(), filename, "image/png");
+        }
+    }
+
+    private static Node child(IIOMetadata metadata, String format, String name) {
+        if (metadata == null) {
+            return null;
+        }
+        for (Node node = metadata.getAsTree(format).getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (name.equals(node.getNodeName())) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private static int intAttribute(Node node, String name, int fallback) {
+        String value = stringAttribute(node, name, null);
+        try {
+            return value == null ? fallback : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static String stringAttribute(Node node, String name, String fallback) {
+        NamedNodeMap attributes = node == null ? null : node.getAttributes();
+        Node attribute = attributes == null ? null : attributes.getNamedItem(name);
+        return attribute == null ? fallback : attribute.getNodeValue();
+    }
+}
@@ -0,0 +1,131 @@
+package org.example.aidetectorbe.services;
+
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.utils.ImageBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bounded parallel inference over the parts of one image, such as tiles or animation frames. Parts are decoded
+ * one at a time on the calling thread and analyzed on the inference executor; at most {@code maxConcurrent}
+ * parts are held or in flight at once, and no further parts are decoded after the first failure.
+ */
+final class ImagePartInference {
+
+    @FunctionalInterface
+    interface PartReader {
+        /**
+         * Decodes the next part, or returns {@code null} when there are none left.
+         */
+        ImageBuffer next() throws IOException;
+    }
+
+    private ImagePartInference() {
+    }
+
+    /**
+     * Returns the responses in the order the parts were read. Every part handed off has finished, and its
+     * buffer has been released, by the time this returns or throws.
+     */
+    static List<AIModelResponse> run(PartReader parts, int maxConcurrent, ExecutorService executor,
+                                     TiledInferenceService.TileCall call) throws AIServiceException, IOException {
+        Semaphore permits = new Semaphore(maxConcurrent);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<CompletableFuture<AIModelResponse>> results = new ArrayList<>();
+
+        try {
+            while (true) {
+                permits.acquireUninterruptibly();
+                if (failed.get()) {
+                    // One failed part fails the image, so the remaining parts are not worth decoding
+                    permits.release();
+                    break;
+                }
+                ImageBuffer part;
+                try {
+                    part = parts.next();
+                } catch (IOException | RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+                if (part == null) {
+                    permits.release();
+                    break;
+                }
+                try {
+                    results.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return call.call(part);
+                        } catch (AIServiceException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, executor).whenComplete((response, error) -> {
+                        part.release();
+                        if (error != null) {
+                            failed.set(true);
+                        }
+                        permits.release();
+                    }));
+                } catch (RejectedExecutionException e) {
+                    part.release();
+                    permits.release();
+                    throw e;
+                }
+            }
+        } finally {
+            // Parts already handed off finish before the caller disposes its reader and moves on
+            awaitQuietly(results);
+        }
+
+        List<AIModelResponse> responses = new ArrayList<>(results.size());
+        try {
+            for (CompletableFuture<AIModelResponse> result : results) {
+                responses.add(result.join());
+            }
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof AIServiceException aiServiceException) {
+                throw aiServiceException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new AIServiceException("Failed to analyze image parts", cause);
+        }
+        return responses;
+    }
+
+    static AIModelResponse aggregate(List<AIModelResponse> responses, TiledInferenceService.Aggregation aggregation,
+                                     long processingTimeMs) {
+        double max = 0.0;
+        double sum = 0.0;
+        String modelUsed = null;
+        for (AIModelResponse response : responses) {
+            double certainty = response.getCertainty() == null ? 0.0 : response.getCertainty();
+            max = Math.max(max, certainty);
+            sum += certainty;
+            if (modelUsed == null) {
+                modelUsed = response.getModelUsed();
+            }
+        }
+        double certainty = aggregation == TiledInferenceService.Aggregation.MAX ? max : sum / responses.size();
+        return new AIModelResponse(certainty, modelUsed, processingTimeMs);
+    }
+
+    private static void awaitQuietly(List<CompletableFuture<AIModelResponse>> results) {
+        try {
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            // reported per part by the caller
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shrinks images before they are sent to the model server. The detector works on inputs of at most
+ * {@code ai.preprocessing.max-dimension} pixels, so forwarding a larger original only adds network and decode
+ * time on the model server. Larger images are decoded with source subsampling (memory stays proportional to
+ * the output), resized with bilinear filtering and re-encoded: JPEG sources as JPEG at
+ * {@code ai.preprocessing.jpeg-quality}, everything else as lossless PNG. Images that are already small enough,
+ * animated GIFs and formats without an ImageIO reader are forwarded unchanged.
+ * <p>
+ * Resizing is CPU-bound, so it runs on a dedicated pool of platform threads sized to the available cores
+ * rather than on the virtual threads that wait on the model server. Preprocessing is an optimization only:
+ * when the pool is saturated or an image cannot be resized, the original is sent. Work nobody is waiting on,
+ * such as shadow traffic, goes through {@link #prepareInBackground} and never holds more than
+ * {@code ai.preprocessing.background-threads} of the pool's threads and queue slots.
+ */
+@Service
+public class ImagePreprocessor {
+
+    private final boolean enabled;
+    private final int maxDimension;
+    private final float jpegQuality;
+    private final ThreadPoolExecutor workers;
+    private final Semaphore backgroundPermits;
+    private final MeterRegistry meterRegistry;
+    private final Timer resizeTimer;
+    private final DistributionSummary bytesSaved;
+
+    public ImagePreprocessor(
+            @Value("${ai.preprocessing.enabled:true}") boolean enabled,
+            @Value("${ai.preprocessing.max-dimension:1024}") int maxDimension,
+            @Value("${ai.preprocessing.jpeg-quality:0.92}") float jpegQuality,
+            @Value("${ai.preprocessing.threads:0}") int threads,
+            @Value("${ai.preprocessing.queue-capacity:256}") int queueCapacity,
+            @Value("${ai.preprocessing.background-threads:1}") int backgroundThreads,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxDimension = Math.max(1, maxDimension);
+        this.jpegQuality = Math.min(1f, Math.max(0f, jpegQuality));
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.workers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                Thread.ofPlatform().name("image-preprocess-", 0).daemon(true).factory());
+        this.backgroundPermits = new Semaphore(Math.min(poolSize, Math.max(1, backgroundThreads)));
+        this.meterRegistry = meterRegistry;
+
+        this.resizeTimer = Timer.builder("ai.preprocessing.time")
+                .description("Time spent downscaling and re-encoding an image")
+                .register(meterRegistry);
+        this.bytesSaved = DistributionSummary.builder("ai.preprocessing.bytes.saved")
+                .description("Upload bytes not sent to the model server thanks to downscaling")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("ai.preprocessing.queued", workers, executor -> executor.getQueue().size())
+                .description("Images waiting for a preprocessing thread")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the image to send to the model server: a downscaled copy, or {@code image} itself with an extra
+     * reference. Either way the caller must release the returned buffer; {@code image} stays owned by the caller.
+     */
+    public ImageBuffer prepare(ImageBuffer image) {
+        if (!enabled) {
+            return image.retain();
+        }
+
+        ImageBuffer resized = null;
+        try {
+            Future<ImageBuffer> task = workers.submit(() -> downscale(image));
+            resized = task.get();
+        } catch (RejectedExecutionException e) {
+            skipped("busy");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            skipped("interrupted");
+        } catch (ExecutionException e) {
+            Log.warn("Could not downscale image " + image.getFilename() + ", sending the original: "
+                    + e.getCause().getMessage());
+            skipped("error");
+        }
+        return resized != null ? resized : image.retain();
+    }
+
+    /**
+     * {@link #prepare} for images no request is waiting on. The caller waits until fewer than
+     * {@code ai.preprocessing.background-threads} background images are being prepared, so background work
+     * cannot fill the pool and push request images onto the unresized path.
+     */
+    public ImageBuffer prepareInBackground(ImageBuffer image) {
+        if (!enabled) {
+            return image.retain();
+        }
+        try {
+            backgroundPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            skipped("interrupted");
+            return image.retain();
+        }
+        try {
+            return prepare(image);
+        } finally {
+            backgroundPermits.release();
+        }
+    }
+
+    private ImageBuffer downscale(ImageBuffer image) throws IOException {
+        long startTime = System.nanoTime();
+        String format = ImageValidationService.detectFormat(image.asByteBuffer());
+        Iterator<ImageReader> readers = format == null ? null : ImageIO.getImageReadersByFormatName(format);
+        // Only the first frame of a GIF would survive a resize, so animations go to the model untouched
+        if (readers == null || !readers.hasNext() || "gif".equals(format)) {
+            skipped("unsupported");
+            return null;
+        }
+
+        ImageReader reader = readers.next();
+        try (ImageInputStream input = new MemoryCacheImageInputStream(image.newInputStream())) {
+            reader.setInput(input, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            int longerSide = Math.max(width, height);
+            if (longerSide <= maxDimension) {
+                skipped("small");
+                return null;
+            }
+
+            // Decimating while decoding keeps memory proportional to the output; stopping at twice the target
+            // leaves the final resize enough pixels to filter out aliasing
+            int subsampling = Math.max(1, longerSide / (2 * maxDimension));
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            BufferedImage decoded = reader.read(0, param);
+
+            double scale = (double) maxDimension / longerSide;
+            BufferedImage resized = resize(decoded,
+                    Math.max(1, (int) Math.round(width * scale)), Math.max(1, (int) Math.round(height * scale)));
+            boolean jpeg = "jpeg".equals(format) && !resized.getColorModel().hasAlpha();
+            byte[] encoded = jpeg ? encodeJpeg(resized) : encodePng(resized);
+
+            long elapsedNanos = System.nanoTime() - startTime;
+            resizeTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            bytesSaved.record(Math.max(0, image.size() - encoded.length));
+            Log.info("Downscaled " + image.getFilename() + " from " + width + "x" + height + " (" + image.size()
+                    + " bytes) to " + resized.getWidth() + "x" + resized.getHeight() + " (" + encoded.length
+                    + " bytes) in " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms");
+            return ImageBuffer.wrap(encoded, image.getFilename(), jpeg ? "image/jpeg" : "image/png");
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private static BufferedImage resize(BufferedImage source, int targetWidth, int targetHeight) {
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        // Halving in steps keeps bilinear filtering from skipping source pixels on large reductions
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (ImageOutputStream output = new MemoryCacheImageOutputStream(encoded)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return encoded.toByteArray();
+    }
+
+    private static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, "png", encoded)) {
+            throw new IOException("No PNG encoder available");
+        }
+        return encoded.toByteArray();
+    }
+
+    private void skipped(String reason) {
+        meterRegistry.counter("ai.preprocessing.skipped", "reason", reason).increment();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,170 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.aidetectorbe.dto.ImageMetadata;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Validates uploads without decoding pixels: the format is identified from its magic bytes and
+ * only the header is parsed through {@link ImageReader} to obtain the dimensions.
+ * The header dimensions are checked against a pixel-count and decoded-memory budget, so
+ * decompression bombs are refused before anything decodes or forwards them.
+ * Rejections are reported as {@link IllegalArgumentException}, like the rest of the upload validation.
+ */
+@Service
+public class ImageValidationService {
+
+    private static final String NOT_AN_IMAGE = "Provided file was not an image";
+    private static final int DEFAULT_BYTES_PER_PIXEL = 4;
+
+    private final long maxPixels;
+    private final DataSize maxDecodedSize;
+    private final MeterRegistry meterRegistry;
+
+    public ImageValidationService(
+            @Value("${image.validation.max-pixels:40000000}") long maxPixels,
+            @Value("${image.validation.max-decoded-size:256MB}") DataSize maxDecodedSize,
+            MeterRegistry meterRegistry) {
+        this.maxPixels = maxPixels;
+        this.maxDecodedSize = maxDecodedSize;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public ImageMetadata validate(ImageBuffer image) {
+        String format = detectFormat(image.asByteBuffer());
+        if (format == null) {
+            throw reject("not_an_image", NOT_AN_IMAGE);
+        }
+
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(format);
+        if (!readers.hasNext()) {
+            throw reject("unsupported_format", NOT_AN_IMAGE);
+        }
+
+        ImageReader reader = readers.next();
+        try (ImageInputStream input = ImageIO.createImageInputStream(image.newInputStream())) {
+            reader.setInput(input, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            if (width <= 0 || height <= 0) {
+                throw reject("not_an_image", NOT_AN_IMAGE);
+            }
+            enforceBudget(width, height, bytesPerPixel(reader, 0));
+            return new ImageMetadata(format, width, height);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw reject("not_an_image", NOT_AN_IMAGE);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Checks frame {@code index} of a multi-frame image from its header before the frame is decoded.
+     * {@link #validate} only sees the first frame, while every later frame declares its own size, so each one
+     * is held to the same budget and must also fit the {@code canvasWidth} x {@code canvasHeight} canvas it is
+     * drawn on.
+     */
+    void validateFrame(ImageReader reader, int index, int canvasWidth, int canvasHeight) throws IOException {
+        int width = reader.getWidth(index);
+        int height = reader.getHeight(index);
+        if (width <= 0 || height <= 0) {
+            throw reject("not_an_image", NOT_AN_IMAGE);
+        }
+        enforceBudget(width, height, bytesPerPixel(reader, index));
+        if (width > canvasWidth || height > canvasHeight) {
+            Log.warn("Rejected frame " + index + " of " + width + "x" + height + " pixels drawn on a "
+                    + canvasWidth + "x" + canvasHeight + " canvas");
+            throw reject("frame_size", "Image frame " + index + " is larger than the image");
+        }
+    }
+
+    private void enforceBudget(int width, int height, int bytesPerPixel) {
+        long pixels = (long) width * height;
+        if (pixels > maxPixels) {
+            Log.warn("Rejected image of " + width + "x" + height + " pixels, pixel budget is " + maxPixels);
+            throw reject("pixel_budget", "Image dimensions too large. Maximum allowed is " + maxPixels + " pixels");
+        }
+        long decodedBytes = pixels * bytesPerPixel;
+        if (decodedBytes > maxDecodedSize.toBytes()) {
+            Log.warn("Rejected image of " + width + "x" + height + " pixels needing " + decodedBytes
+                    + " bytes when decoded, memory budget is " + maxDecodedSize);
+            throw reject("memory_budget", "Image too large to process. Decoded size would exceed " + maxDecodedSize);
+        }
+    }
+
+    private int bytesPerPixel(ImageReader reader, int index) {
+        try {
+            ImageTypeSpecifier rawType = reader.getRawImageType(index);
+            if (rawType != null) {
+                return Math.max(1, (rawType.getColorModel().getPixelSize() + 7) / 8);
+            }
+        } catch (Exception e) {
+            Log.debug("Could not determine raw image type: " + e.getMessage());
+        }
+        return DEFAULT_BYTES_PER_PIXEL;
+    }
+
+    private IllegalArgumentException reject(String reason, String message) {
+        meterRegistry.counter("image.validation.rejections", "reason", reason).increment();
+        return new IllegalArgumentException(message);
+    }
+
+    static String detectFormat(ByteBuffer header) {
+        if (startsWith(header, 0, 0xFF, 0xD8, 0xFF)) {
+            return "jpeg";
+        }
+        if (startsWith(header, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "png";
+        }
+        if (startsWith(header, 0, "GIF87a") || startsWith(header, 0, "GIF89a")) {
+            return "gif";
+        }
+        if (startsWith(header, 0, "BM")) {
+            return "bmp";
+        }
+        if (startsWith(header, 0, 'I', 'I', 0x2A, 0x00) || startsWith(header, 0, 'M', 'M', 0x00, 0x2A)) {
+            return "tiff";
+        }
+        if (startsWith(header, 0, "RIFF") && startsWith(header, 8, "WEBP")) {
+            return "webp";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int offset, String signature) {
+        byte[] expected = signature.getBytes(StandardCharsets.US_ASCII);
+        int[] values = new int[expected.length];
+        for (int i = 0; i < expected.length; i++) {
+            values[i] = expected[i];
+        }
+        return startsWith(buffer, offset, values);
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int offset, int... signature) {
+        if (buffer.remaining() < offset + signature.length) {
+            return false;
+        }
+        int start = buffer.position() + offset;
+        for (int i = 0; i < signature.length; i++) {
+            if ((buffer.get(start + i) & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
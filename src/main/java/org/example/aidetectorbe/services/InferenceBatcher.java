@@ -0,0 +1,189 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional micro-batching stage in front of the model server.
+ * Concurrent requests are collected for up to {@code ai.batching.max-batch-size} images or
+ * {@code ai.batching.max-linger} milliseconds, whichever comes first, sent as one batch request,
+ * and the per-image certainties are fanned back out to the waiting callers.
+ * If a batch call fails in a way single calls can avoid (the batch was too large, or its response could not be
+ * read) and {@code ai.batching.fallback-to-single} is set, its images are retried as concurrent single calls.
+ * Any other failure (an open breaker, a full bulkhead, a server error) is passed to every waiting caller, so an
+ * outage is not multiplied by the batch size.
+ */
+@Service
+public class InferenceBatcher {
+
+    /**
+     * Destination of batched calls; implemented by the AI service client.
+     */
+    public interface BatchTarget {
+        List<Double> processBatch(List<ImageBuffer> images) throws AIServiceException;
+
+        Double processSingle(ImageBuffer image) throws AIServiceException;
+    }
+
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long maxLingerMs;
+    private final boolean fallbackToSingle;
+    private final ScheduledExecutorService lingerTimer;
+    private final ExecutorService dispatcher;
+    private final DistributionSummary batchSizes;
+    private final Counter fallbackCounter;
+
+    private final Object lock = new Object();
+    private List<PendingImage> pending = new ArrayList<>();
+    private BatchTarget pendingTarget;
+    private ScheduledFuture<?> lingerFlush;
+
+    public InferenceBatcher(
+            @Value("${ai.batching.enabled:false}") boolean enabled,
+            @Value("${ai.batching.max-batch-size:8}") int maxBatchSize,
+            @Value("${ai.batching.max-linger:20}") long maxLingerMs,
+            @Value("${ai.batching.fallback-to-single:true}") boolean fallbackToSingle,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxLingerMs = maxLingerMs;
+        this.fallbackToSingle = fallbackToSingle;
+        this.lingerTimer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("inference-batch-timer").factory());
+        this.dispatcher = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("inference-batch-", 0).factory());
+        this.batchSizes = DistributionSummary.builder("ai.inference.batch.size")
+                .description("Number of images sent per batch request")
+                .register(meterRegistry);
+        this.fallbackCounter = meterRegistry.counter("ai.inference.batch.fallbacks");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the image for the next batch. The buffer is retained until its batch has been sent.
+     */
+    public CompletableFuture<Double> submit(ImageBuffer image, BatchTarget target) {
+        PendingImage entry = new PendingImage(image.retain(), new CompletableFuture<>());
+        List<PendingImage> fullBatch = null;
+
+        synchronized (lock) {
+            pending.add(entry);
+            pendingTarget = target;
+            if (pending.size() >= maxBatchSize) {
+                fullBatch = drainLocked();
+            } else if (pending.size() == 1) {
+                lingerFlush = lingerTimer.schedule(this::flush, maxLingerMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (fullBatch != null) {
+            dispatch(fullBatch, target);
+        }
+        return entry.result();
+    }
+
+    private void flush() {
+        List<PendingImage> batch;
+        BatchTarget target;
+        synchronized (lock) {
+            target = pendingTarget;
+            batch = drainLocked();
+        }
+        if (!batch.isEmpty()) {
+            dispatch(batch, target);
+        }
+    }
+
+    private List<PendingImage> drainLocked() {
+        if (lingerFlush != null) {
+            lingerFlush.cancel(false);
+            lingerFlush = null;
+        }
+        List<PendingImage> batch = pending;
+        pending = new ArrayList<>();
+        return batch;
+    }
+
+    private void dispatch(List<PendingImage> batch, BatchTarget target) {
+        dispatcher.execute(() -> {
+            try {
+                send(batch, target);
+            } finally {
+                batch.forEach(entry -> entry.image().release());
+            }
+        });
+    }
+
+    private void send(List<PendingImage> batch, BatchTarget target) {
+        batchSizes.record(batch.size());
+        if (batch.size() == 1) {
+            sendSingle(batch.getFirst(), target);
+            return;
+        }
+
+        try {
+            List<Double> certainties = target.processBatch(batch.stream().map(PendingImage::image).toList());
+            if (certainties.size() != batch.size()) {
+                throw new AIServiceException("AI service returned " + certainties.size()
+                        + " results for a batch of " + batch.size() + " images", 502);
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(certainties.get(i));
+            }
+        } catch (Exception e) {
+            if (!fallbackToSingle || !singleCallsMayHelp(e)) {
+                batch.forEach(entry -> entry.result().completeExceptionally(e));
+                return;
+            }
+            Log.warn("Batch inference of " + batch.size() + " images failed, falling back to single calls: " + e.getMessage());
+            fallbackCounter.increment();
+            // Images stay retained until every single call has finished
+            CompletableFuture.allOf(batch.stream()
+                    .map(entry -> CompletableFuture.runAsync(() -> sendSingle(entry, target), dispatcher))
+                    .toArray(CompletableFuture[]::new)).join();
+        }
+    }
+
+    private static boolean singleCallsMayHelp(Exception e) {
+        return e instanceof AIServiceException serviceException
+                && (serviceException.getStatusCode() == 413
+                || serviceException.getCause() instanceof HttpMessageNotReadableException);
+    }
+
+    private void sendSingle(PendingImage entry, BatchTarget target) {
+        try {
+            entry.result().complete(target.processSingle(entry.image()));
+        } catch (Exception e) {
+            entry.result().completeExceptionally(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        lingerTimer.shutdownNow();
+        dispatcher.shutdown();
+    }
+
+    private record PendingImage(ImageBuffer image, CompletableFuture<Double> result) {
+    }
+}
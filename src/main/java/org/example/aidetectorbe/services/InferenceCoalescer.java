@@ -0,0 +1,144 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.exceptions.SchedulingRejectedException;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Single-flight deduplication of identical inference requests.
+ * The first caller for a given image content hash and model (the leader) calls the AI service;
+ * concurrent callers for the same key wait, for a bounded time, on the leader's outcome
+ * (response or {@link AIServiceException}) instead of issuing their own call.
+ * A leader that fails for reasons of its own, turned away by the scheduler
+ * ({@link SchedulingRejectedException}) or interrupted, says nothing about the image, so its followers start
+ * over instead of inheriting the failure, and one of them becomes the new leader.
+ * <p>
+ * Followers wait {@code ai.coalescing.max-wait}. By default that is as long as the leader itself may take: the
+ * scheduler's {@code ai.scheduling.max-wait} for a slot plus the connect and read timeouts of the model call, so
+ * followers do not time out with a 504 while the leader is still on its way to succeeding.
+ */
+@Service
+public class InferenceCoalescer {
+
+    @FunctionalInterface
+    public interface InferenceCall {
+        AIModelResponse call() throws AIServiceException;
+    }
+
+    private final boolean enabled;
+    private final long maxWaitMs;
+    private final Map<Key, CompletableFuture<AIModelResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalescedCounter;
+    private final Counter timeoutCounter;
+    private final Counter retriedCounter;
+
+    public InferenceCoalescer(
+            @Value("${ai.coalescing.enabled:true}") boolean enabled,
+            @Value("${ai.coalescing.max-wait:0}") long maxWaitMs,
+            @Value("${ai.scheduling.max-wait:${ai.service.timeout:30000}}") long schedulingMaxWaitMs,
+            @Value("${ai.service.connect-timeout:2000}") long connectTimeoutMs,
+            @Value("${ai.service.read-timeout:${ai.service.timeout:30000}}") long readTimeoutMs,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxWaitMs = maxWaitMs > 0 ? maxWaitMs : schedulingMaxWaitMs + connectTimeoutMs + readTimeoutMs;
+        this.coalescedCounter = meterRegistry.counter("ai.inference.coalesced", "outcome", "joined");
+        this.timeoutCounter = meterRegistry.counter("ai.inference.coalesced", "outcome", "timeout");
+        this.retriedCounter = meterRegistry.counter("ai.inference.coalesced", "outcome", "retried");
+        meterRegistry.gaugeMapSize("ai.inference.in.flight", Tags.empty(), inFlight);
+    }
+
+    public AIModelResponse execute(UUID photoId, String modelName, InferenceCall call) throws AIServiceException {
+        if (!enabled || photoId == null) {
+            return call.call();
+        }
+
+        Key key = new Key(photoId, modelName);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        while (true) {
+            CompletableFuture<AIModelResponse> leaderResult = new CompletableFuture<>();
+            CompletableFuture<AIModelResponse> existing = inFlight.putIfAbsent(key, leaderResult);
+            if (existing == null) {
+                return lead(key, leaderResult, call);
+            }
+            try {
+                return follow(photoId, existing, deadline);
+            } catch (LeaderGaveUp e) {
+                retriedCounter.increment();
+                Log.info("Leader for photoId " + photoId + " gave up (" + e.getCause().getMessage() + "), retrying");
+            }
+        }
+    }
+
+    long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    private AIModelResponse lead(Key key, CompletableFuture<AIModelResponse> result, InferenceCall call)
+            throws AIServiceException {
+        try {
+            AIModelResponse response = call.call();
+            result.complete(response);
+            return response;
+        } catch (Throwable e) {
+            // Errors as well (an OutOfMemoryError while decoding), or followers would wait out max-wait
+            boolean ownFailure = e instanceof SchedulingRejectedException || AIServiceGuard.isCancellation(e);
+            // Unregistered first, so a follower that retries cannot find this leader again
+            inFlight.remove(key, result);
+            result.completeExceptionally(ownFailure ? new LeaderGaveUp(e) : e);
+            throw e;
+        } finally {
+            inFlight.remove(key, result);
+        }
+    }
+
+    private AIModelResponse follow(UUID photoId, CompletableFuture<AIModelResponse> leaderResult, long deadline)
+            throws AIServiceException, LeaderGaveUp {
+        coalescedCounter.increment();
+        Log.info("Joining in-flight analysis of photoId " + photoId);
+        try {
+            return leaderResult.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timeoutCounter.increment();
+            throw new AIServiceException("Timed out waiting for an identical analysis in progress", e, 504);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AIServiceException("Interrupted while waiting for an identical analysis in progress", e, 503);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof LeaderGaveUp gaveUp) {
+                throw gaveUp;
+            }
+            if (cause instanceof AIServiceException leaderFailure) {
+                throw new AIServiceException(leaderFailure.getMessage(), leaderFailure, leaderFailure.getStatusCode());
+            }
+            if (cause instanceof RuntimeException runtimeFailure) {
+                throw runtimeFailure;
+            }
+            throw new AIServiceException("Failed to process image with AI service: " + cause.getMessage(), cause);
+        }
+    }
+
+    private record Key(UUID photoId, String modelName) {
+    }
+
+    // Completes the shared result when the leader's failure was its own; never thrown to callers
+    private static final class LeaderGaveUp extends Exception {
+        private LeaderGaveUp(Throwable cause) {
+            super(cause.getMessage(), cause, false, false);
+        }
+    }
+}
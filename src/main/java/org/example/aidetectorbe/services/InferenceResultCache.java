@@ -0,0 +1,64 @@
+package org.example.aidetectorbe.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Bounded in-process cache of model responses keyed by image content hash (the photo id) and model name.
+ * Re-uploads of the same image are answered without calling the AI service again; since the model is part of the
+ * key, answers of another model are never returned and simply age out.
+ */
+@Service
+public class InferenceResultCache {
+
+    private final boolean enabled;
+    private final Cache<CacheKey, AIModelResponse> cache;
+
+    public InferenceResultCache(
+            @Value("${ai.cache.enabled:true}") boolean enabled,
+            @Value("${ai.cache.max-size:10000}") long maxSize,
+            @Value("${ai.cache.ttl:1h}") Duration ttl,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "ai.inference.results");
+    }
+
+    public AIModelResponse get(UUID photoId, String modelName) {
+        if (!enabled || photoId == null) {
+            return null;
+        }
+        return cache.getIfPresent(new CacheKey(photoId, modelName));
+    }
+
+    public void put(UUID photoId, String modelName, AIModelResponse response) {
+        if (!enabled || photoId == null || response == null || response.getCertainty() == null) {
+            return;
+        }
+        cache.put(new CacheKey(photoId, modelName), response);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    private record CacheKey(UUID photoId, String modelName) {
+    }
+}
@@ -1,66 +1,280 @@
 package org.example.aidetectorbe.services;
 
 import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.dto.ImageMetadata;
 import org.example.aidetectorbe.entities.ModelResult;
 import org.example.aidetectorbe.entities.User;
 import org.example.aidetectorbe.exceptions.AIServiceException;
 import org.example.aidetectorbe.repository.ModelResultRepository;
 import org.example.aidetectorbe.repository.UserRepository;
+import org.example.aidetectorbe.utils.ImageBuffer;
 import org.example.aidetectorbe.utils.logger.Log;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 @Service
 public class ModelAnalysisFlowService {
 
+    /**
+     * One {@link ModelResult} per model that answered (a single one unless an ensemble is configured) and the
+     * response returned to the client.
+     */
+    record StoredAnalysis(List<ModelResult> results, AIModelResponse response) {
+        StoredAnalysis(ModelResult result, AIModelResponse response) {
+            this(List.of(result), response);
+        }
+
+        ModelResult result() {
+            return results.getFirst();
+        }
+    }
+
     private final AIModelService aiModelService;
     private final UserRepository userRepository;
     private final ModelResultRepository modelResultRepository;
     private final PhotoStorageService photoStorageService;
+    private final ImageValidationService imageValidationService;
+    private final InferenceResultCache inferenceResultCache;
+    private final InferenceCoalescer inferenceCoalescer;
+    private final FairInferenceScheduler inferenceScheduler;
+    private final TiledInferenceService tiledInferenceService;
+    private final FrameSamplingService frameSamplingService;
+    private final EnsembleInferenceService ensembleInferenceService;
+    private final ShadowTrafficService shadowTrafficService;
+    private final ExecutorService inferenceExecutor;
     private final DataSize maxFileSize;
+    private final DataSize offHeapThreshold;
 
     public ModelAnalysisFlowService(
             AIModelService aiModelService,
             UserRepository userRepository,
             ModelResultRepository modelResultRepository,
             PhotoStorageService photoStorageService,
-            @Value("${spring.servlet.multipart.max-file-size:10MB}") DataSize maxFileSize) {
+            ImageValidationService imageValidationService,
+            InferenceResultCache inferenceResultCache,
+            InferenceCoalescer inferenceCoalescer,
+            FairInferenceScheduler inferenceScheduler,
+            TiledInferenceService tiledInferenceService,
+            FrameSamplingService frameSamplingService,
+            EnsembleInferenceService ensembleInferenceService,
+            ShadowTrafficService shadowTrafficService,
+            ExecutorService inferenceExecutor,
+            @Value("${spring.servlet.multipart.max-file-size:10MB}") DataSize maxFileSize,
+            @Value("${image.buffer.off-heap-threshold:1MB}") DataSize offHeapThreshold) {
         this.aiModelService = aiModelService;
         this.userRepository = userRepository;
         this.modelResultRepository = modelResultRepository;
         this.photoStorageService = photoStorageService;
+        this.imageValidationService = imageValidationService;
+        this.inferenceResultCache = inferenceResultCache;
+        this.inferenceCoalescer = inferenceCoalescer;
+        this.inferenceScheduler = inferenceScheduler;
+        this.tiledInferenceService = tiledInferenceService;
+        this.frameSamplingService = frameSamplingService;
+        this.ensembleInferenceService = ensembleInferenceService;
+        this.shadowTrafficService = shadowTrafficService;
+        this.inferenceExecutor = inferenceExecutor;
         this.maxFileSize = maxFileSize;
+        this.offHeapThreshold = offHeapThreshold;
     }
 
+    /**
+     * Entry point for uploads: the file is read into a single {@link ImageBuffer} here and every
+     * later stage (validation, inference, hashing) works on that buffer.
+     */
     public AIModelResponse analyzeAndStore(MultipartFile image, String authenticatedUser) throws AIServiceException {
+        validateAuthenticatedUser(authenticatedUser);
+        if (image == null || image.isEmpty()) {
+            throw new IllegalArgumentException("Empty file provided");
+        }
+
+        try (ImageBuffer buffer = readImage(image)) {
+            return analyzeAndStoreBuffer(buffer, authenticatedUser);
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #analyzeAndStore(MultipartFile, String)}. The upload is read on the
+     * calling (request) thread; validation, inference and storage run on a virtual thread so the
+     * servlet thread can be returned to the container. Failures complete the future exceptionally.
+     */
+    public CompletableFuture<AIModelResponse> analyzeAndStoreAsync(MultipartFile image, String authenticatedUser) {
+        validateAuthenticatedUser(authenticatedUser);
+        if (image == null || image.isEmpty()) {
+            throw new IllegalArgumentException("Empty file provided");
+        }
+
+        ImageBuffer buffer = readImage(image);
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return analyzeAndStoreBuffer(buffer, authenticatedUser);
+                } catch (AIServiceException e) {
+                    throw new CompletionException(e);
+                }
+            }, inferenceExecutor).whenComplete((response, error) -> buffer.release());
+        } catch (RejectedExecutionException e) {
+            buffer.release();
+            throw e;
+        }
+    }
+
+    public AIModelResponse analyzeAndStoreBuffer(ImageBuffer image, String authenticatedUser) throws AIServiceException {
         validateAuthenticatedUser(authenticatedUser);
         validateImage(image);
+        return analyzeAndStoreValidated(image, authenticatedUser).response();
+    }
+
+    /**
+     * Reads and validates an upload up front, so callers that defer inference (analysis jobs) can still
+     * reject bad input synchronously. The caller owns the returned buffer and must release it.
+     */
+    public ImageBuffer acceptUpload(MultipartFile image, String authenticatedUser) {
+        validateAuthenticatedUser(authenticatedUser);
+        if (image == null || image.isEmpty()) {
+            throw new IllegalArgumentException("Empty file provided");
+        }
 
-        AIModelResponse response = aiModelService.processImage(image);
+        ImageBuffer buffer = readImage(image);
+        try {
+            validateImage(buffer);
+            return buffer;
+        } catch (RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+    }
 
+    /**
+     * Runs inference on an image that already passed {@link #acceptUpload} and stores the result.
+     */
+    StoredAnalysis analyzeAndStoreValidated(ImageBuffer image, String authenticatedUser) throws AIServiceException {
         User user = userRepository.findByLogin(authenticatedUser)
                 .orElseThrow(() -> new SecurityException("Authenticated user not found"));
+        StoredAnalysis analysis = analyzeValidated(image, authenticatedUser, user);
+        if (analysis.results().size() == 1) {
+            modelResultRepository.save(analysis.result());
+        } else {
+            modelResultRepository.saveAll(analysis.results());
+        }
+
+        Log.info("Stored " + analysis.results().size() + " model analysis results for user " + authenticatedUser
+                + " and photoId " + analysis.result().getPhotoId());
+        return analysis;
+    }
 
+    /**
+     * Runs inference and builds the {@link ModelResult} without persisting it, so batch callers can save many
+     * results in one round trip.
+     */
+    StoredAnalysis analyzeValidated(ImageBuffer image, String authenticatedUser, User user) throws AIServiceException {
+        // The photo id is the content hash, so it doubles as the inference cache key.
         UUID photoId = photoStorageService.storeAndGetPhotoId(image);
+        FairInferenceScheduler.Analysis analysis = inferenceScheduler.analysisFor(authenticatedUser, user);
+        if (!ensembleInferenceService.isEnabled()) {
+            AIModelResponse response = infer(image, photoId, analysis);
+            return new StoredAnalysis(toResult(photoId, user, response), response);
+        }
+
+        // The primary model keeps its cache and coalescing; the other members are fair-scheduled and guarded per member
+        EnsembleInferenceService.Verdict verdict = ensembleInferenceService.infer(
+                member -> member.isPrimary()
+                        ? inferPrimaryMember(image, photoId, analysis)
+                        : inferParts(image, analysis,
+                                part -> aiModelService.processImage(part, member.name(), member.baseUrl())));
+        List<ModelResult> results = verdict.memberResponses().stream()
+                .map(response -> toResult(photoId, user, response))
+                .toList();
+        return new StoredAnalysis(results, verdict.response());
+    }
 
+    /**
+     * The ensemble never cancels the primary member, so when this analysis gives up (its thread is interrupted) or
+     * the other members agree without it, the primary keeps running for the requests coalesced onto it. It holds its own reference to the image for
+     * that; one that has not started before the caller released the image fails without becoming a leader.
+     */
+    private AIModelResponse inferPrimaryMember(ImageBuffer image, UUID photoId, FairInferenceScheduler.Analysis analysis)
+            throws AIServiceException {
+        try (ImageBuffer retained = image.retain()) {
+            return infer(retained, photoId, analysis);
+        }
+    }
+
+    private static ModelResult toResult(UUID photoId, User user, AIModelResponse response) {
         ModelResult result = new ModelResult();
         result.setPhotoId(photoId);
         result.setUserId(user.getId());
         result.setModel(response.getModelUsed());
         result.setChance(toChance(response.getCertainty()));
-        modelResultRepository.save(result);
+        return result;
+    }
 
-        Log.info("Stored model analysis result for user " + authenticatedUser + " and photoId " + photoId);
-        return response;
+    /**
+     * Copies an upload into an {@link ImageBuffer} without validating it; see {@link #validateUpload}. A failure
+     * names the file and the reason, since it is reported per item of a bulk request.
+     */
+    ImageBuffer readUpload(MultipartFile image) {
+        if (image == null || image.isEmpty()) {
+            throw new IllegalArgumentException("Empty file provided");
+        }
+        try {
+            return ImageBuffer.read(image, offHeapThreshold.toBytes());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to read image " + image.getOriginalFilename() + ": " + e.getMessage());
+        }
+    }
+
+    void validateUpload(ImageBuffer image) {
+        validateImage(image);
+    }
+
+    private AIModelResponse infer(ImageBuffer image, UUID photoId, FairInferenceScheduler.Analysis analysis)
+            throws AIServiceException {
+        long startTime = System.currentTimeMillis();
+        String modelName = aiModelService.getModelName();
+
+        AIModelResponse cached = inferenceResultCache.get(photoId, modelName);
+        if (cached != null) {
+            Log.info("Inference cache hit for photoId " + photoId + ", skipping AI service call");
+            return new AIModelResponse(cached.getCertainty(), cached.getModelUsed(), System.currentTimeMillis() - startTime);
+        }
+
+        return inferenceCoalescer.execute(photoId, modelName, () -> {
+            // A leader that just finished may have filled the cache between our lookup and joining.
+            AIModelResponse completed = inferenceResultCache.get(photoId, modelName);
+            if (completed != null) {
+                return completed;
+            }
+            // Only the leader queues, so coalesced followers never take a second slot; if the leader's own queue
+            // turns it away, the followers retry rather than inherit that rejection
+            AIModelResponse response = inferParts(image, analysis, aiModelService::processImage);
+            inferenceResultCache.put(photoId, modelName, response);
+            // Mirrored after a real model call, so cache hits do not skew the latency comparison
+            shadowTrafficService.mirror(image, response);
+            return response;
+        });
+    }
+
+    /**
+     * Animations are sampled into frames and large images split into tiles; each part is scheduled on its own
+     * so one upload cannot monopolize inference slots.
+     */
+    private AIModelResponse inferParts(ImageBuffer image, FairInferenceScheduler.Analysis analysis,
+                                       TiledInferenceService.TileCall call)
+            throws AIServiceException {
+        return frameSamplingService.infer(image, frame -> tiledInferenceService.infer(frame,
+                region -> inferenceScheduler.execute(analysis, () -> call.call(region))));
     }
 
     private void validateAuthenticatedUser(String authenticatedUser) {
@@ -69,14 +283,22 @@ public class ModelAnalysisFlowService {
         }
     }
 
-    private void validateImage(MultipartFile image) {
+    private ImageBuffer readImage(MultipartFile image) {
         try {
-            if (image == null || image.isEmpty() || image.getSize() == 0) {
+            return ImageBuffer.read(image, offHeapThreshold.toBytes());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to read image");
+        }
+    }
+
+    private void validateImage(ImageBuffer image) {
+        try {
+            if (image == null || image.isEmpty()) {
                 throw new IllegalArgumentException("Empty file provided");
             }
 
             long maxFileSizeBytes = maxFileSize.toBytes();
-            if (image.getSize() > maxFileSizeBytes) {
+            if (image.size() > maxFileSizeBytes) {
                 throw new IllegalArgumentException("File size too large. Maximum allowed size is " + maxFileSize);
             }
 
@@ -85,12 +307,10 @@ public class ModelAnalysisFlowService {
                 throw new IllegalArgumentException("File must be an image");
             }
 
-            BufferedImage bufferedImage = ImageIO.read(new ByteArrayInputStream(image.getBytes()));
-            if (bufferedImage == null) {
-                throw new IllegalArgumentException("Provided file was not an image");
-            }
+            ImageMetadata metadata = imageValidationService.validate(image);
 
-            Log.info("Processing image: " + image.getOriginalFilename() + " (" + image.getSize() + " bytes)");
+            Log.info("Processing image: " + image.getFilename() + " (" + image.size() + " bytes, "
+                    + metadata.getFormat() + " " + metadata.getWidth() + "x" + metadata.getHeight() + ")");
         } catch (IllegalArgumentException e) {
             throw e;
         } catch (Exception e) {
@@ -98,7 +318,7 @@ public class ModelAnalysisFlowService {
         }
     }
 
-    private BigDecimal toChance(Double certainty) {
+    static BigDecimal toChance(Double certainty) {
         double value = certainty == null ? 0.0 : certainty * 100.0;
         return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
     }
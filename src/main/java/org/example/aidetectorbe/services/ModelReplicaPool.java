@@ -0,0 +1,205 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client-side load balancing across model server replicas listed in {@code ai.service.urls}.
+ * Each call goes to the replica with the fewest outstanding requests ({@code least-outstanding}) or the
+ * lowest EWMA latency weighted by outstanding requests ({@code ewma}).
+ * A replica is ejected after {@code ai.service.load-balancing.eject-after-failures} consecutive server
+ * failures, or when {@link AIServiceHealthProber} finds it unhealthy, and reinstated once a probe succeeds again.
+ */
+@Service
+public class ModelReplicaPool {
+
+    public enum Strategy {
+        LEAST_OUTSTANDING, EWMA
+    }
+
+    @FunctionalInterface
+    public interface ReplicaCall<T> {
+        T call(String baseUrl) throws AIServiceException;
+    }
+
+    private final List<Replica> replicas;
+    private final Strategy strategy;
+    private final double ewmaAlpha;
+    private final int ejectAfterFailures;
+
+    public ModelReplicaPool(
+            @Value("${ai.service.urls:${ai.service.url:http://localhost:8000}}") List<String> urls,
+            @Value("${ai.service.load-balancing.strategy:least-outstanding}") String strategy,
+            @Value("${ai.service.load-balancing.ewma-alpha:0.3}") double ewmaAlpha,
+            @Value("${ai.service.load-balancing.eject-after-failures:3}") int ejectAfterFailures,
+            MeterRegistry meterRegistry) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("At least one AI service URL must be configured");
+        }
+        this.strategy = Strategy.valueOf(strategy.trim().replace('-', '_').toUpperCase());
+        this.ewmaAlpha = ewmaAlpha;
+        this.ejectAfterFailures = Math.max(1, ejectAfterFailures);
+        this.replicas = urls.stream()
+                .map(String::trim)
+                .map(url -> new Replica(url, meterRegistry))
+                .toList();
+    }
+
+    public <T> T execute(ReplicaCall<T> call) throws AIServiceException {
+        return execute(call, null);
+    }
+
+    /**
+     * Runs the call against the best available replica other than {@code excludedUrl}, when there is one.
+     */
+    public <T> T execute(ReplicaCall<T> call, String excludedUrl) throws AIServiceException {
+        Replica replica = select(excludedUrl);
+        replica.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            T result = call.call(replica.baseUrl);
+            replica.recordSuccess(System.nanoTime() - start);
+            return result;
+        } catch (AIServiceException e) {
+            if (AIServiceGuard.isCancellation(e)) {
+                throw e;
+            }
+            if (e.getStatusCode() >= 500) {
+                replica.recordFailure();
+            } else {
+                replica.recordSuccess(System.nanoTime() - start);
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            if (!AIServiceGuard.isCancellation(e)) {
+                replica.recordFailure();
+            }
+            throw e;
+        } finally {
+            replica.outstanding.decrementAndGet();
+        }
+    }
+
+    public List<String> getUrls() {
+        return replicas.stream().map(replica -> replica.baseUrl).toList();
+    }
+
+    public boolean isEjected(String baseUrl) {
+        return replicas.stream().anyMatch(replica -> replica.baseUrl.equals(baseUrl) && replica.ejected);
+    }
+
+    /**
+     * Applies a background health probe result: unhealthy replicas leave the rotation, recovered ones rejoin it.
+     */
+    public void onProbeResult(String baseUrl, boolean healthy) {
+        for (Replica replica : replicas) {
+            if (!replica.baseUrl.equals(baseUrl)) {
+                continue;
+            }
+            if (healthy && replica.ejected) {
+                replica.reinstate();
+            } else if (!healthy && !replica.ejected) {
+                replica.eject("failing health probes");
+            }
+        }
+    }
+
+    private Replica select(String excludedUrl) {
+        Replica best = null;
+        double bestScore = Double.MAX_VALUE;
+        int ties = 0;
+        for (Replica replica : replicas) {
+            if (replica.ejected || replica.baseUrl.equals(excludedUrl)) {
+                continue;
+            }
+            double score = score(replica);
+            if (score < bestScore) {
+                best = replica;
+                bestScore = score;
+                ties = 1;
+            } else if (score == bestScore && ThreadLocalRandom.current().nextInt(++ties) == 0) {
+                best = replica;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        // Every candidate is ejected (or excluded): keep serving from the least loaded one rather than failing outright
+        return replicas.stream()
+                .filter(replica -> !replica.baseUrl.equals(excludedUrl) || replicas.size() == 1)
+                .min((a, b) -> Integer.compare(a.outstanding.get(), b.outstanding.get()))
+                .orElse(replicas.getFirst());
+    }
+
+    private double score(Replica replica) {
+        int outstanding = replica.outstanding.get();
+        if (strategy == Strategy.EWMA) {
+            return replica.ewmaLatencyNanos * (outstanding + 1);
+        }
+        return outstanding;
+    }
+
+    private final class Replica {
+        private final String baseUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final Timer latency;
+        private final Counter errors;
+        private volatile double ewmaLatencyNanos;
+        private volatile boolean ejected;
+
+        private Replica(String baseUrl, MeterRegistry meterRegistry) {
+            this.baseUrl = baseUrl;
+            this.latency = Timer.builder("ai.service.replica.latency")
+                    .tag("replica", baseUrl)
+                    .register(meterRegistry);
+            this.errors = meterRegistry.counter("ai.service.replica.errors", "replica", baseUrl);
+            Gauge.builder("ai.service.replica.outstanding", outstanding, AtomicInteger::get)
+                    .tag("replica", baseUrl)
+                    .register(meterRegistry);
+            Gauge.builder("ai.service.replica.ejected", this, replica -> replica.ejected ? 1 : 0)
+                    .tag("replica", baseUrl)
+                    .register(meterRegistry);
+        }
+
+        private void recordSuccess(long elapsedNanos) {
+            latency.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            consecutiveFailures.set(0);
+            synchronized (this) {
+                ewmaLatencyNanos = ewmaLatencyNanos == 0
+                        ? elapsedNanos
+                        : ewmaAlpha * elapsedNanos + (1 - ewmaAlpha) * ewmaLatencyNanos;
+            }
+        }
+
+        private void recordFailure() {
+            errors.increment();
+            if (consecutiveFailures.incrementAndGet() >= ejectAfterFailures && !ejected) {
+                eject(consecutiveFailures.get() + " consecutive failures");
+            }
+        }
+
+        private void eject(String reason) {
+            ejected = true;
+            Log.warn("Ejecting AI service replica " + baseUrl + " after " + reason);
+        }
+
+        private void reinstate() {
+            consecutiveFailures.set(0);
+            ewmaLatencyNanos = 0;
+            ejected = false;
+            Log.info("AI service replica " + baseUrl + " is healthy again, reinstating");
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package org.example.aidetectorbe.services;
 
+import org.example.aidetectorbe.utils.ImageBuffer;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
@@ -10,14 +10,15 @@ import java.util.UUID;
 @Service
 public class PhotoStorageService {
 
-    public UUID storeAndGetPhotoId(MultipartFile image) {
+    public UUID storeAndGetPhotoId(ImageBuffer image) {
         try {
             // TODO: replace this with real cloud upload and return cloud object key-based identifier.
-            byte[] hash = MessageDigest.getInstance("SHA-256").digest(image.getBytes());
-            ByteBuffer buffer = ByteBuffer.wrap(hash);
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(image.asByteBuffer());
+            ByteBuffer buffer = ByteBuffer.wrap(digest.digest());
             return new UUID(buffer.getLong(), buffer.getLong());
         } catch (Exception e) {
             throw new IllegalStateException("Failed to generate photo identifier", e);
         }
     }
-}
\ No newline at end of file
+}
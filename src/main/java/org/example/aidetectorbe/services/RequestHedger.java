@@ -0,0 +1,213 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional request hedging for model server calls.
+ * When a call has not finished within {@code ai.hedging.percentile} of recent call latency, a duplicate is
+ * sent (to another replica) and the first successful answer wins; the slower attempt is cancelled by
+ * interrupting its virtual thread, which closes its socket. The breaker, replica pool and concurrency limiter
+ * do not count such a cancelled attempt as a failure, and its elapsed time is kept as a lower bound of its
+ * latency, so the hedge delay is not computed from the winners alone.
+ * Hedges are paid for from a token budget that grows by {@code ai.hedging.budget} per call, so hedging
+ * adds at most that fraction of extra load and cannot amplify an overload.
+ */
+@Service
+public class RequestHedger {
+
+    @FunctionalInterface
+    public interface HedgedCall<T> {
+        T call(boolean hedge) throws AIServiceException;
+    }
+
+    private static final double MAX_BUDGET_TOKENS = 10;
+
+    private final boolean enabled;
+    private final double percentile;
+    private final double budgetRatio;
+    private final long minDelayNanos;
+    private final int minSamples;
+    private final ExecutorService executor;
+
+    private final long[] latencyWindow;
+    private int latencyCount;
+    private int latencyNext;
+    private volatile long hedgeDelayNanos = Long.MAX_VALUE;
+    private double budgetTokens;
+
+    private final Timer primaryTimer;
+    private final Timer hedgedTimer;
+    private final Counter hedgesSent;
+    private final Counter hedgesWon;
+    private final Counter budgetExhausted;
+
+    public RequestHedger(
+            @Value("${ai.hedging.enabled:false}") boolean enabled,
+            @Value("${ai.hedging.percentile:0.95}") double percentile,
+            @Value("${ai.hedging.budget:0.05}") double budgetRatio,
+            @Value("${ai.hedging.min-delay:50ms}") Duration minDelay,
+            @Value("${ai.hedging.window-size:1000}") int windowSize,
+            @Value("${ai.hedging.min-samples:20}") int minSamples,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.budgetRatio = budgetRatio;
+        this.minDelayNanos = minDelay.toNanos();
+        this.minSamples = Math.max(1, minSamples);
+        this.latencyWindow = new long[Math.max(this.minSamples, windowSize)];
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("inference-hedge-", 0).factory());
+        this.primaryTimer = Timer.builder("ai.inference.latency")
+                .description("Caller-observed model server latency")
+                .tag("hedged", "false")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.hedgedTimer = Timer.builder("ai.inference.latency")
+                .description("Caller-observed model server latency")
+                .tag("hedged", "true")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.hedgesSent = meterRegistry.counter("ai.hedging.requests", "outcome", "sent");
+        this.hedgesWon = meterRegistry.counter("ai.hedging.requests", "outcome", "won");
+        this.budgetExhausted = meterRegistry.counter("ai.hedging.requests", "outcome", "budget_exhausted");
+    }
+
+    public <T> T execute(HedgedCall<T> call) throws AIServiceException {
+        if (!enabled) {
+            return call.call(false);
+        }
+
+        depositBudget();
+        long start = System.nanoTime();
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger pendingAttempts = new AtomicInteger(1);
+        Attempt primary = new Attempt();
+        primary.future = executor.submit(() -> attempt(call, false, primary, winner, pendingAttempts));
+        Attempt hedge = null;
+
+        try {
+            try {
+                T result = winner.get(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+                primaryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return result;
+            } catch (TimeoutException e) {
+                if (!withdrawBudget()) {
+                    budgetExhausted.increment();
+                    T result = winner.get();
+                    primaryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    return result;
+                }
+            }
+
+            hedgesSent.increment();
+            pendingAttempts.incrementAndGet();
+            Attempt hedgeAttempt = new Attempt();
+            hedge = hedgeAttempt;
+            hedgeAttempt.future = executor.submit(() -> attempt(call, true, hedgeAttempt, winner, pendingAttempts));
+            T result = winner.get();
+            hedgedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AIServiceException("Interrupted while waiting for AI service", e, 503);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AIServiceException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new AIServiceException("Failed to process image with AI service: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            cancel(primary);
+            if (hedge != null) {
+                cancel(hedge);
+            }
+        }
+    }
+
+    private void cancel(Attempt attempt) {
+        if (!attempt.finished) {
+            attempt.future.cancel(true);
+            // The loser took at least this long; leaving it out would bias the hedge delay low
+            recordLatency(System.nanoTime() - attempt.start);
+        }
+    }
+
+    private <T> void attempt(HedgedCall<T> call, boolean hedge, Attempt attempt, CompletableFuture<T> winner,
+                             AtomicInteger pendingAttempts) {
+        try {
+            T result = call.call(hedge);
+            attempt.finished = true;
+            recordLatency(System.nanoTime() - attempt.start);
+            if (winner.complete(result) && hedge) {
+                hedgesWon.increment();
+            }
+        } catch (Throwable e) {
+            attempt.finished = true;
+            // The caller only sees a failure once every attempt has failed
+            if (pendingAttempts.decrementAndGet() == 0) {
+                winner.completeExceptionally(e);
+            }
+        }
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        latencyWindow[latencyNext] = nanos;
+        latencyNext = (latencyNext + 1) % latencyWindow.length;
+        if (latencyCount < latencyWindow.length) {
+            latencyCount++;
+        }
+        // Re-rank occasionally rather than on every call
+        if (latencyCount >= minSamples && (latencyNext % minSamples == 0 || hedgeDelayNanos == Long.MAX_VALUE)) {
+            long[] samples = Arrays.copyOf(latencyWindow, latencyCount);
+            Arrays.sort(samples);
+            int index = (int) Math.min(samples.length - 1, Math.ceil(percentile * samples.length) - 1);
+            hedgeDelayNanos = Math.max(minDelayNanos, samples[Math.max(0, index)]);
+        }
+    }
+
+    private synchronized void depositBudget() {
+        budgetTokens = Math.min(MAX_BUDGET_TOKENS, budgetTokens + budgetRatio);
+    }
+
+    private synchronized boolean withdrawBudget() {
+        if (budgetTokens < 1) {
+            return false;
+        }
+        budgetTokens -= 1;
+        return true;
+    }
+
+    private static final class Attempt {
+        private final long start = System.nanoTime();
+        private volatile boolean finished;
+        private volatile Future<?> future;
+    }
+
+    long getHedgeDelayNanos() {
+        return hedgeDelayNanos;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
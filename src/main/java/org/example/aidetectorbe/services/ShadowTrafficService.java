@@ -0,0 +1,187 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shadow traffic for rolling out a new detector model. {@code ai.shadow.percentage} percent of the images the
+ * primary model analyzes are also sent to the candidate at {@code ai.shadow.url}, and both answers are recorded
+ * side by side: certainty and latency per model, the certainty difference, and how often the two disagree on
+ * which side of 0.5 an image falls. The candidate's answer is never returned or stored.
+ * <p>
+ * Mirroring stays off the request path: the request thread only takes a reference to the image and offers it to
+ * a queue of at most {@code ai.shadow.queue-capacity} entries drained by {@code ai.shadow.threads} workers. When
+ * the queue is full the mirror is dropped rather than waited for, so a slow or failing candidate can neither add
+ * latency to an analysis nor hold more than that many images in memory.
+ * <p>
+ * So that the comparison is between models and not between pipelines, the candidate sees an image the way the
+ * primary model does: animations are sampled into frames and large images split into tiles with the same
+ * settings, and the parts' answers are combined the same way. Mirrors skip fair scheduling, since no user waits
+ * on them, and downscale through the background share of the preprocessing pool.
+ */
+@Service
+public class ShadowTrafficService {
+
+    private final boolean enabled;
+    private final String candidateUrl;
+    private final String candidateModelName;
+    private final double percentage;
+    private final AIModelService aiModelService;
+    private final FrameSamplingService frameSamplingService;
+    private final TiledInferenceService tiledInferenceService;
+    private final ThreadPoolExecutor workers;
+    private final MeterRegistry meterRegistry;
+    private final Counter compared;
+    private final Counter failed;
+    private final Counter dropped;
+    private final Counter disagreements;
+    private final DistributionSummary certaintyDifference;
+
+    public ShadowTrafficService(
+            @Value("${ai.shadow.enabled:false}") boolean enabled,
+            @Value("${ai.shadow.url:}") String candidateUrl,
+            @Value("${ai.shadow.model-name:candidate}") String candidateModelName,
+            @Value("${ai.shadow.percentage:0}") double percentage,
+            @Value("${ai.shadow.threads:2}") int threads,
+            @Value("${ai.shadow.queue-capacity:32}") int queueCapacity,
+            AIModelService aiModelService,
+            FrameSamplingService frameSamplingService,
+            TiledInferenceService tiledInferenceService,
+            MeterRegistry meterRegistry) {
+        this.percentage = Math.min(100.0, Math.max(0.0, percentage));
+        this.enabled = enabled && candidateUrl != null && !candidateUrl.isBlank() && this.percentage > 0.0;
+        this.candidateUrl = candidateUrl;
+        this.candidateModelName = candidateModelName;
+        this.aiModelService = aiModelService;
+        this.frameSamplingService = frameSamplingService;
+        this.tiledInferenceService = tiledInferenceService;
+        int poolSize = Math.max(1, threads);
+        // Workers only wait on the candidate, so virtual threads are enough; the pool size caps its load
+        this.workers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                Thread.ofVirtual().name("shadow-traffic-", 0).factory());
+        this.meterRegistry = meterRegistry;
+
+        this.compared = meterRegistry.counter("ai.shadow.requests", "outcome", "compared");
+        this.failed = meterRegistry.counter("ai.shadow.requests", "outcome", "failed");
+        this.dropped = meterRegistry.counter("ai.shadow.requests", "outcome", "dropped");
+        this.disagreements = Counter.builder("ai.shadow.disagreements")
+                .description("Mirrored images the candidate and primary model classified differently")
+                .register(meterRegistry);
+        this.certaintyDifference = DistributionSummary.builder("ai.shadow.certainty.difference")
+                .description("Absolute difference between the candidate's and the primary model's certainty")
+                .register(meterRegistry);
+        Gauge.builder("ai.shadow.queued", workers, executor -> executor.getQueue().size())
+                .description("Mirrored images waiting for the candidate model")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Offers {@code image} for comparison against the primary model's {@code primary} answer, subject to
+     * sampling. Never blocks and never fails; the caller keeps ownership of {@code image}.
+     */
+    public void mirror(ImageBuffer image, AIModelResponse primary) {
+        if (!enabled || ThreadLocalRandom.current().nextDouble(100.0) >= percentage) {
+            return;
+        }
+
+        ShadowRequest request = new ShadowRequest(image.retain(), primary);
+        try {
+            workers.execute(request);
+        } catch (RejectedExecutionException e) {
+            request.image.release();
+            dropped.increment();
+        }
+    }
+
+    private void compare(ImageBuffer image, AIModelResponse primary) {
+        long startTime = System.currentTimeMillis();
+        AIModelResponse candidate;
+        try {
+            candidate = frameSamplingService.infer(image, frame -> tiledInferenceService.infer(frame,
+                    part -> aiModelService.processBackgroundImage(part, candidateModelName, candidateUrl)));
+        } catch (AIServiceException | RuntimeException e) {
+            failed.increment();
+            Log.warn("Shadow request to candidate model " + candidateModelName + " failed: " + e.getMessage());
+            return;
+        }
+        long candidateMs = candidate.getProcessingTimeMs() != null
+                ? candidate.getProcessingTimeMs()
+                : System.currentTimeMillis() - startTime;
+
+        String primaryModelName = aiModelService.getModelName();
+        compared.increment();
+        record(primaryModelName, primary.getCertainty(), primary.getProcessingTimeMs());
+        record(candidateModelName, candidate.getCertainty(), candidateMs);
+        if (primary.getCertainty() != null && candidate.getCertainty() != null) {
+            certaintyDifference.record(Math.abs(candidate.getCertainty() - primary.getCertainty()));
+            if ((candidate.getCertainty() >= 0.5) != (primary.getCertainty() >= 0.5)) {
+                disagreements.increment();
+            }
+        }
+        Log.info("Shadow comparison for " + image.getFilename() + ": " + primaryModelName + " "
+                + primary.getCertainty() + " in " + primary.getProcessingTimeMs() + "ms, " + candidateModelName
+                + " " + candidate.getCertainty() + " in " + candidateMs + "ms");
+    }
+
+    private void record(String model, Double certainty, Long processingTimeMs) {
+        if (certainty != null) {
+            DistributionSummary.builder("ai.shadow.certainty")
+                    .description("Certainty reported for mirrored images")
+                    .tag("model", model)
+                    .register(meterRegistry)
+                    .record(certainty);
+        }
+        if (processingTimeMs != null) {
+            Timer.builder("ai.shadow.latency")
+                    .description("Model latency for mirrored images")
+                    .tag("model", model)
+                    .register(meterRegistry)
+                    .record(processingTimeMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private final class ShadowRequest implements Runnable {
+        private final ImageBuffer image;
+        private final AIModelResponse primary;
+
+        private ShadowRequest(ImageBuffer image, AIModelResponse primary) {
+            this.image = image;
+            this.primary = primary;
+        }
+
+        @Override
+        public void run() {
+            try {
+                compare(image, primary);
+            } finally {
+                image.release();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Runnable pending : workers.shutdownNow()) {
+            if (pending instanceof ShadowRequest request) {
+                request.image.release();
+            }
+        }
+    }
+}
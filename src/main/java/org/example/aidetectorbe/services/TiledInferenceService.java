@@ -0,0 +1,186 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.example.aidetectorbe.utils.logger.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Optional tiled analysis mode for high-resolution images, enabled with {@code ai.tiling.enabled}. Sent whole,
+ * such an image is downsampled by the model server and loses the fine detail detection relies on, so an image
+ * whose longer side exceeds {@code ai.tiling.min-size} is cut into overlapping {@code ai.tiling.tile-size}
+ * squares instead. It is off by default: every tile is a model call of its own, and with {@code MAX}
+ * aggregation a false positive on any tile decides the verdict.
+ * <p>
+ * Tiles are decoded one row band at a time with {@link ImageReadParam#setSourceRegion}, so the full raster is
+ * never held in memory and the decoder passes over the image once per row rather than once per tile (JPEG and
+ * PNG have to decode everything above a region to reach it). The tiles of a band are cropped from it,
+ * re-encoded losslessly as PNG and analyzed in parallel; at most {@code ai.tiling.max-concurrent} tiles of one
+ * image are in flight at once. Tile certainties are combined by {@code ai.tiling.aggregation}: {@code MAX}
+ * flags the image when any region looks generated, {@code MEAN} averages them.
+ */
+@Service
+public class TiledInferenceService {
+
+    public enum Aggregation {
+        MAX, MEAN
+    }
+
+    @FunctionalInterface
+    public interface TileCall {
+        AIModelResponse call(ImageBuffer image) throws AIServiceException;
+    }
+
+    private final boolean enabled;
+    private final int tileSize;
+    private final int stride;
+    private final int minSize;
+    private final int maxConcurrent;
+    private final Aggregation aggregation;
+    private final ExecutorService inferenceExecutor;
+    private final Counter tiledImages;
+    private final Counter tiles;
+
+    public TiledInferenceService(
+            @Value("${ai.tiling.enabled:false}") boolean enabled,
+            @Value("${ai.tiling.tile-size:1024}") int tileSize,
+            @Value("${ai.tiling.overlap:128}") int overlap,
+            @Value("${ai.tiling.min-size:2048}") int minSize,
+            @Value("${ai.tiling.max-concurrent:4}") int maxConcurrent,
+            @Value("${ai.tiling.aggregation:MAX}") Aggregation aggregation,
+            ExecutorService inferenceExecutor,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.tileSize = Math.max(1, tileSize);
+        // Overlap is capped at half a tile so the grid always advances
+        this.stride = this.tileSize - Math.min(Math.max(0, overlap), this.tileSize / 2);
+        this.minSize = Math.max(this.tileSize, minSize);
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.aggregation = aggregation;
+        this.inferenceExecutor = inferenceExecutor;
+        this.tiledImages = meterRegistry.counter("ai.tiling.images");
+        this.tiles = meterRegistry.counter("ai.tiling.tiles");
+    }
+
+    /**
+     * Runs {@code call} on the whole image, or once per tile when the image is large enough to be tiled and its
+     * format can be decoded by region. The caller keeps ownership of {@code image}.
+     */
+    public AIModelResponse infer(ImageBuffer image, TileCall call) throws AIServiceException {
+        String format = enabled ? ImageValidationService.detectFormat(image.asByteBuffer()) : null;
+        Iterator<ImageReader> readers = format == null ? null : ImageIO.getImageReadersByFormatName(format);
+        if (readers == null || !readers.hasNext()) {
+            return call.call(image);
+        }
+
+        ImageReader reader = readers.next();
+        try (ImageInputStream input = new MemoryCacheImageInputStream(image.newInputStream())) {
+            reader.setInput(input, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            if (Math.max(width, height) <= minSize) {
+                return call.call(image);
+            }
+            return inferTiles(reader, image.getFilename(), width, height, call);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to decode image");
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private AIModelResponse inferTiles(ImageReader reader, String filename, int width, int height, TileCall call)
+            throws AIServiceException, IOException {
+        long startTime = System.currentTimeMillis();
+        Iterator<Rectangle> regions = tileRegions(width, height).iterator();
+        RowBand band = new RowBand(reader, width);
+        List<AIModelResponse> responses = ImagePartInference.run(
+                () -> regions.hasNext() ? encodeTile(band.crop(regions.next()), filename) : null,
+                maxConcurrent, inferenceExecutor, call);
+
+        tiledImages.increment();
+        tiles.increment(responses.size());
+        Log.info("Analyzed " + width + "x" + height + " image " + filename + " as " + responses.size() + " tiles");
+        return ImagePartInference.aggregate(responses, aggregation, System.currentTimeMillis() - startTime);
+    }
+
+    private static ImageBuffer encodeTile(Tile tile, String filename) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        if (!ImageIO.write(tile.raster(), "png", encoded)) {
+            throw new IOException("No PNG encoder for tile color model");
+        }
+        return ImageBuffer.wrap(encoded.toByteArray(),
+                filename + "#" + tile.region().x + "," + tile.region().y + ".png", "image/png");
+    }
+
+    private record Tile(Rectangle region, BufferedImage raster) {
+    }
+
+    /**
+     * The full-width strip of the image covering the current row of tiles. Regions arrive row by row, so each
+     * band is decoded once and replaced when the next row starts.
+     */
+    private static final class RowBand {
+        private final ImageReader reader;
+        private final int width;
+        private Rectangle area;
+        private BufferedImage raster;
+
+        private RowBand(ImageReader reader, int width) {
+            this.reader = reader;
+            this.width = width;
+        }
+
+        private Tile crop(Rectangle region) throws IOException {
+            if (area == null || area.y != region.y || area.height != region.height) {
+                // Drop the previous band first, so two are never held at once
+                raster = null;
+                area = new Rectangle(0, region.y, width, region.height);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(area);
+                raster = reader.read(0, param);
+            }
+            return new Tile(region, raster.getSubimage(region.x, 0, region.width, region.height));
+        }
+    }
+
+    List<Rectangle> tileRegions(int width, int height) {
+        List<Rectangle> regions = new ArrayList<>();
+        for (int y : offsets(height)) {
+            for (int x : offsets(width)) {
+                regions.add(new Rectangle(x, y, Math.min(tileSize, width), Math.min(tileSize, height)));
+            }
+        }
+        return regions;
+    }
+
+    private List<Integer> offsets(int length) {
+        List<Integer> offsets = new ArrayList<>();
+        int offset = 0;
+        while (offset + tileSize < length) {
+            offsets.add(offset);
+            offset += stride;
+        }
+        // The last tile is aligned to the far edge, so every tile has the full size
+        offsets.add(Math.max(0, length - tileSize));
+        return offsets;
+    }
+}
@@ -0,0 +1,197 @@
+package org.example.aidetectorbe.utils;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable, reference-counted copy of an uploaded image.
+ * The upload is read exactly once; validation, hashing, inference and storage all consume
+ * read-only views of the same buffer. Large images are kept off-heap so they do not
+ * pressure the young generation.
+ * <p>
+ * The creator owns one reference and must {@link #close()} it; every additional consumer that
+ * outlives the creator (e.g. background work) must {@link #retain()} and release its own.
+ */
+public final class ImageBuffer implements AutoCloseable {
+
+    private final String filename;
+    private final String contentType;
+    private final int size;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+    private volatile ByteBuffer content;
+
+    private ImageBuffer(ByteBuffer content, String filename, String contentType) {
+        this.content = content.asReadOnlyBuffer();
+        this.filename = filename;
+        this.contentType = contentType;
+        this.size = content.remaining();
+    }
+
+    public static ImageBuffer read(MultipartFile file, long offHeapThresholdBytes) throws IOException {
+        long declaredSize = file.getSize();
+        if (declaredSize > Integer.MAX_VALUE) {
+            throw new IOException("Image too large to buffer: " + declaredSize + " bytes");
+        }
+        int capacity = (int) declaredSize;
+        ByteBuffer target = capacity >= offHeapThresholdBytes
+                ? ByteBuffer.allocateDirect(capacity)
+                : ByteBuffer.allocate(capacity);
+
+        try (InputStream in = file.getInputStream(); ReadableByteChannel channel = Channels.newChannel(in)) {
+            while (target.hasRemaining() && channel.read(target) >= 0) {
+                // keep reading until the declared size has been consumed or the stream ends
+            }
+        }
+        target.flip();
+        return new ImageBuffer(target, file.getOriginalFilename(), file.getContentType());
+    }
+
+    /**
+     * Wraps bytes that were already read elsewhere (e.g. an archive entry); the array must not be modified afterwards.
+     */
+    public static ImageBuffer wrap(byte[] content, String filename, String contentType) {
+        return new ImageBuffer(ByteBuffer.wrap(content), filename, contentType);
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isDirect() {
+        return liveContent().isDirect();
+    }
+
+    /**
+     * Independent read-only view positioned at the start of the image.
+     */
+    public ByteBuffer asByteBuffer() {
+        return liveContent().duplicate();
+    }
+
+    public InputStream newInputStream() {
+        return new ByteBufferInputStream(asByteBuffer());
+    }
+
+    /**
+     * Repeatable {@link Resource} view, suitable as a multipart part body.
+     */
+    public Resource asResource() {
+        return new AbstractResource() {
+            @Override
+            public String getDescription() {
+                return "Image buffer [" + filename + "]";
+            }
+
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+
+            @Override
+            public long contentLength() {
+                return size;
+            }
+
+            @Override
+            public InputStream getInputStream() {
+                return newInputStream();
+            }
+        };
+    }
+
+    public ImageBuffer retain() {
+        int current;
+        do {
+            current = refCount.get();
+            if (current <= 0) {
+                throw new IllegalStateException("Image buffer already released");
+            }
+        } while (!refCount.compareAndSet(current, current + 1));
+        return this;
+    }
+
+    public void release() {
+        int remaining = refCount.decrementAndGet();
+        if (remaining == 0) {
+            // Dropping the last reference lets the GC (or the direct buffer cleaner) reclaim the memory.
+            content = null;
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Image buffer released more times than retained");
+        }
+    }
+
+    public int refCount() {
+        return Math.max(refCount.get(), 0);
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    private ByteBuffer liveContent() {
+        ByteBuffer current = content;
+        if (current == null) {
+            throw new IllegalStateException("Image buffer already released");
+        }
+        return current;
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
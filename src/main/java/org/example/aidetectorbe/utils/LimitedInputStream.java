@@ -0,0 +1,67 @@
+package org.example.aidetectorbe.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that fails with {@link LimitExceededException} once more than {@code limit} bytes have been read,
+ * so untrusted streams can be consumed incrementally without buffering them first.
+ */
+public final class LimitedInputStream extends FilterInputStream {
+
+    public static final class LimitExceededException extends IOException {
+        public LimitExceededException(long limit) {
+            super("Stream exceeds the limit of " + limit + " bytes");
+        }
+    }
+
+    private final long limit;
+    private long count;
+
+    public LimitedInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            advance(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            advance(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        advance(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    private void advance(long n) throws LimitExceededException {
+        count += n;
+        if (count > limit) {
+            throw new LimitExceededException(limit);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.example.aidetectorbe.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.dto.ImageMetadata;
+import org.example.aidetectorbe.services.ImageValidationService;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous full {@code ImageIO.read} validation with the header-only
+ * {@link ImageValidationService} on a noisy JPEG (noise keeps the file close to real photo sizes).
+ * Run with {@code main}; {@code gc.alloc.rate.norm} shows the raster allocation the old path paid.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageValidationBenchmark {
+
+    @Param({"1024x768", "4000x3000"})
+    private String dimensions;
+
+    private final ImageValidationService validationService =
+            new ImageValidationService(Long.MAX_VALUE, DataSize.ofGigabytes(8), new SimpleMeterRegistry());
+    private ImageBuffer image;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String[] parts = dimensions.split("x");
+        int width = Integer.parseInt(parts[0]);
+        int height = Integer.parseInt(parts[1]);
+
+        BufferedImage source = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                source.setRGB(x, y, random.nextInt());
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(source, "jpg", out);
+
+        image = ImageBuffer.read(new MockMultipartFile("image", "bench.jpg", "image/jpeg", out.toByteArray()), Long.MAX_VALUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        image.close();
+    }
+
+    @Benchmark
+    public BufferedImage fullDecode() throws IOException {
+        return ImageIO.read(image.newInputStream());
+    }
+
+    @Benchmark
+    public ImageMetadata headerOnly() {
+        return validationService.validate(image);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(ImageValidationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,167 @@
+package org.example.aidetectorbe.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.FormHttpMessageConverter;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares heap allocation of the old {@code getBytes()} + {@code ByteArrayResource} upload body
+ * with the streaming {@code MultipartFile.getResource()} body used by {@code AIModelServiceImpl}.
+ * The upload is backed by a temp file, as Tomcat does for large parts.
+ * Run with {@code main}; look at {@code gc.alloc.rate.norm} (bytes per operation).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultipartUploadBenchmark {
+
+    @Param({"1048576", "10485760"})
+    private int imageSize;
+
+    private Path imagePath;
+    private MultipartFile image;
+    private final FormHttpMessageConverter converter = new FormHttpMessageConverter();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] content = new byte[imageSize];
+        ThreadLocalRandom.current().nextBytes(content);
+        imagePath = Files.createTempFile("upload-benchmark", ".jpg");
+        Files.write(imagePath, content);
+        image = new TempFileMultipartFile(imagePath);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(imagePath);
+    }
+
+    @Benchmark
+    public void byteArrayBody() throws IOException {
+        ByteArrayResource resource = new ByteArrayResource(image.getBytes()) {
+            @Override
+            public String getFilename() {
+                return image.getOriginalFilename();
+            }
+        };
+        write(resource);
+    }
+
+    @Benchmark
+    public void streamingBody() throws IOException {
+        write(image.getResource());
+    }
+
+    private void write(Resource resource) throws IOException {
+        HttpHeaders partHeaders = new HttpHeaders();
+        partHeaders.setContentDispositionFormData("file", image.getOriginalFilename());
+        partHeaders.setContentType(MediaType.IMAGE_JPEG);
+
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("file", new HttpEntity<>(resource, partHeaders));
+        body.add("type", "image");
+
+        converter.write(body, MediaType.MULTIPART_FORM_DATA, new DiscardingOutputMessage());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(MultipartUploadBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    private static final class DiscardingOutputMessage implements HttpOutputMessage {
+        private final HttpHeaders headers = new HttpHeaders();
+
+        @Override
+        public OutputStream getBody() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+
+    private record TempFileMultipartFile(Path path) implements MultipartFile {
+
+        @Override
+        public String getName() {
+            return "image";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return "benchmark.jpg";
+        }
+
+        @Override
+        public String getContentType() {
+            return MediaType.IMAGE_JPEG_VALUE;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return getSize() == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return path.toFile().length();
+        }
+
+        @Override
+        public byte[] getBytes() throws IOException {
+            return Files.readAllBytes(path);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return Files.newInputStream(path);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            Files.copy(path, dest.toPath());
+        }
+    }
+}
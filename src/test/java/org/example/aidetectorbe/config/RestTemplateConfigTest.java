@@ -0,0 +1,65 @@
+package org.example.aidetectorbe.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import static org.example.aidetectorbe.TestUtils.setPrivateField;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+class RestTemplateConfigTest {
+
+    private RestTemplateConfig config;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient httpClient;
+
+    @BeforeEach
+    void setUp() {
+        config = new RestTemplateConfig();
+        setPrivateField(config, "connectTimeoutMs", 500);
+        setPrivateField(config, "readTimeoutMs", 1500);
+        setPrivateField(config, "maxTotalConnections", 8);
+        setPrivateField(config, "maxConnectionsPerRoute", 4);
+        setPrivateField(config, "acquireTimeoutMs", 100);
+        setPrivateField(config, "idleTimeoutMs", 1000);
+
+        connectionManager = config.aiServiceConnectionManager();
+        httpClient = config.aiServiceHttpClient(connectionManager);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        httpClient.close();
+        connectionManager.close();
+    }
+
+    @Test
+    void aiServiceConnectionManager_ShouldBeBoundedByConfiguredLimits() {
+        assertEquals(8, connectionManager.getMaxTotal());
+        assertEquals(4, connectionManager.getDefaultMaxPerRoute());
+    }
+
+    @Test
+    void restTemplate_ShouldUsePooledHttpComponentsFactory() {
+        RestTemplate restTemplate = config.restTemplate(httpClient);
+
+        assertInstanceOf(HttpComponentsClientHttpRequestFactory.class, restTemplate.getRequestFactory());
+    }
+
+    @Test
+    void aiServiceConnectionPoolMetrics_ShouldExposePoolOccupancy() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        config.aiServiceConnectionPoolMetrics(connectionManager).bindTo(registry);
+
+        assertEquals(8.0, registry.get("ai.service.http.pool.connections").tag("state", "max").gauge().value());
+        assertEquals(0.0, registry.get("ai.service.http.pool.connections").tag("state", "leased").gauge().value());
+        assertEquals(0.0, registry.get("ai.service.http.pool.connections").tag("state", "pending").gauge().value());
+    }
+}
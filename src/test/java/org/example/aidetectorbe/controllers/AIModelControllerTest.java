@@ -1,8 +1,11 @@
 package org.example.aidetectorbe.controllers;
 
 import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.dto.BatchItemResultDTO;
 import org.example.aidetectorbe.exceptions.AIServiceException;
 import org.example.aidetectorbe.security.JwtUtil;
+import org.example.aidetectorbe.services.ArchiveAnalysisService;
+import org.example.aidetectorbe.services.BatchAnalysisService;
 import org.example.aidetectorbe.services.ModelAnalysisFlowService;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -10,15 +13,25 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(controllers = AIModelController.class)
@@ -31,6 +44,12 @@ public class AIModelControllerTest {
     @MockBean
     private ModelAnalysisFlowService modelAnalysisFlowService;
 
+    @MockBean
+    private BatchAnalysisService batchAnalysisService;
+
+    @MockBean
+    private ArchiveAnalysisService archiveAnalysisService;
+
     @MockBean
     private JwtUtil jwtUtil;
 
@@ -39,12 +58,16 @@ public class AIModelControllerTest {
         // given
         MockMultipartFile image = new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes());
         AIModelResponse resp = new AIModelResponse(0.95, "TestModel", 123L);
-        Mockito.when(modelAnalysisFlowService.analyzeAndStore(any(), eq("testUser"))).thenReturn(resp);
+        Mockito.when(modelAnalysisFlowService.analyzeAndStoreAsync(any(), eq("testUser")))
+                .thenReturn(CompletableFuture.completedFuture(resp));
 
         // when
-        mockMvc.perform(multipart("/api/useModel").file(image)
+        MvcResult result = mockMvc.perform(multipart("/api/useModel").file(image)
                 .requestAttr("login", "testUser")
                 .contentType(MediaType.MULTIPART_FORM_DATA))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                 // then
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
@@ -64,13 +87,142 @@ public class AIModelControllerTest {
     public void testUseModel_WhenAiServiceThrowsException_ShouldReturnAppropriateStatus() throws Exception {
         // given
         MockMultipartFile image = new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes());
-        Mockito.when(modelAnalysisFlowService.analyzeAndStore(any(), eq("testUser")))
-                .thenThrow(new AIServiceException("AI failed", 502));
+        Mockito.when(modelAnalysisFlowService.analyzeAndStoreAsync(any(), eq("testUser")))
+                .thenReturn(CompletableFuture.failedFuture(new AIServiceException("AI failed", 502)));
 
         // then
-        mockMvc.perform(multipart("/api/useModel").file(image)
+        MvcResult result = mockMvc.perform(multipart("/api/useModel").file(image)
                 .requestAttr("login", "testUser")
                 .contentType(MediaType.MULTIPART_FORM_DATA))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isBadGateway());
     }
+
+    @Test
+    public void testUseModel_WhenUploadIsRejectedBeforeInference_ShouldReturn400() throws Exception {
+        // given
+        MockMultipartFile image = new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes());
+        Mockito.when(modelAnalysisFlowService.analyzeAndStoreAsync(any(), eq("testUser")))
+                .thenThrow(new IllegalArgumentException("Empty file provided"));
+
+        // then
+        MvcResult result = mockMvc.perform(multipart("/api/useModel").file(image)
+                .requestAttr("login", "testUser")
+                .contentType(MediaType.MULTIPART_FORM_DATA))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(containsString("Empty file provided")));
+    }
+
+    @Test
+    public void testAnalyzeBatch_GivenHappyPath_ShouldStreamOneLinePerImage() throws Exception {
+        // given
+        MockMultipartFile first = new MockMultipartFile("images", "a.jpg", "image/jpeg", "a".getBytes());
+        MockMultipartFile second = new MockMultipartFile("images", "b.jpg", "image/jpeg", "b".getBytes());
+        Mockito.when(batchAnalysisService.analyzeBatch(any(), eq("testUser"), any())).thenAnswer(invocation -> {
+            Consumer<BatchItemResultDTO> onResult = invocation.getArgument(2);
+            onResult.accept(new BatchItemResultDTO(1, "b.jpg", 0.2, "TestModel", 10L, null));
+            onResult.accept(new BatchItemResultDTO(0, "a.jpg", 0.9, "TestModel", 12L, null));
+            return CompletableFuture.completedFuture(2);
+        });
+
+        // when
+        MvcResult result = mockMvc.perform(multipart("/api/model/analyze/batch").file(first).file(second)
+                .requestAttr("login", "testUser")
+                .contentType(MediaType.MULTIPART_FORM_DATA))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                // then
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON));
+        String[] lines = result.getResponse().getContentAsString().trim().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("b.jpg"));
+    }
+
+    @Test
+    public void testAnalyzeBatch_WhenSaveFails_ShouldEndWithErrorLine() throws Exception {
+        // given
+        MockMultipartFile image = new MockMultipartFile("images", "a.jpg", "image/jpeg", "a".getBytes());
+        Mockito.when(batchAnalysisService.analyzeBatch(any(), eq("testUser"), any())).thenAnswer(invocation -> {
+            Consumer<BatchItemResultDTO> onResult = invocation.getArgument(2);
+            onResult.accept(new BatchItemResultDTO(0, "a.jpg", 0.9, "TestModel", 12L, null));
+            return CompletableFuture.failedFuture(new DataAccessResourceFailureException("connection lost"));
+        });
+
+        // when
+        MvcResult result = mockMvc.perform(multipart("/api/model/analyze/batch").file(image)
+                .requestAttr("login", "testUser")
+                .contentType(MediaType.MULTIPART_FORM_DATA))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                // then
+                .andExpect(status().isOk());
+        String[] lines = result.getResponse().getContentAsString().trim().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("a.jpg"));
+        assertTrue(lines[1].contains("Failed to store analysis results"));
+        assertTrue(lines[1].contains("500"));
+    }
+
+    @Test
+    public void testAnalyzeBatch_GivenTooManyImages_ShouldReturn400() throws Exception {
+        // given
+        MockMultipartFile image = new MockMultipartFile("images", "a.jpg", "image/jpeg", "a".getBytes());
+        Mockito.when(batchAnalysisService.analyzeBatch(any(), eq("testUser"), any()))
+                .thenThrow(new IllegalArgumentException("Too many images. Maximum allowed per batch is 50"));
+
+        // when
+        MvcResult result = mockMvc.perform(multipart("/api/model/analyze/batch").file(image)
+                .requestAttr("login", "testUser")
+                .contentType(MediaType.MULTIPART_FORM_DATA))
+                .andReturn();
+
+        // then
+        assertEquals(400, result.getResponse().getStatus());
+        assertTrue(result.getResponse().getContentAsString().contains("Too many images"));
+    }
+
+    @Test
+    public void testAnalyzeArchive_GivenHappyPath_ShouldStreamOneLinePerEntry() throws Exception {
+        // given
+        Mockito.when(archiveAnalysisService.analyzeArchiveAsync(any(), eq("testUser"), any())).thenAnswer(invocation -> {
+            Consumer<BatchItemResultDTO> onResult = invocation.getArgument(2);
+            onResult.accept(new BatchItemResultDTO(0, "a.jpg", 0.9, "TestModel", 12L, null));
+            return CompletableFuture.completedFuture(1);
+        });
+
+        // when
+        MvcResult result = mockMvc.perform(post("/api/model/analyze/archive")
+                .requestAttr("login", "testUser")
+                .contentType("application/zip")
+                .content(new byte[]{0x50, 0x4B, 0x05, 0x06}))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                // then
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON));
+        String[] lines = result.getResponse().getContentAsString().trim().split("\n");
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].contains("a.jpg"));
+    }
+
+    @Test
+    public void testAnalyzeArchive_GivenMissingLogin_ShouldReturn401() throws Exception {
+        // when
+        MvcResult result = mockMvc.perform(post("/api/model/analyze/archive")
+                .contentType("application/zip")
+                .content(new byte[]{0x50, 0x4B, 0x05, 0x06}))
+                .andReturn();
+
+        // then
+        assertEquals(401, result.getResponse().getStatus());
+        assertTrue(result.getResponse().getContentAsString().contains("Missing authenticated user"));
+    }
 }
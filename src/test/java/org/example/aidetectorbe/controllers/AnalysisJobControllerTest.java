@@ -0,0 +1,135 @@
+package org.example.aidetectorbe.controllers;
+
+import org.example.aidetectorbe.dto.AnalysisJobDTO;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.security.JwtUtil;
+import org.example.aidetectorbe.services.AnalysisJobService;
+import org.example.aidetectorbe.services.AnalysisProgressNotifier;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = AnalysisJobController.class)
+@AutoConfigureMockMvc(addFilters = false)
+public class AnalysisJobControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private AnalysisJobService analysisJobService;
+
+    @MockBean
+    private AnalysisProgressNotifier progressNotifier;
+
+    @MockBean
+    private JwtUtil jwtUtil;
+
+    @Test
+    public void testSubmitJob_GivenHappyPath_ShouldReturn202WithLocation() throws Exception {
+        // given
+        MockMultipartFile image = new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes());
+        UUID jobId = UUID.randomUUID();
+        AnalysisJobDTO job = new AnalysisJobDTO(jobId, "PENDING", Instant.now(), Instant.now(), null, null);
+        Mockito.when(analysisJobService.submit(any(), eq("testUser"))).thenReturn(job);
+
+        // when n then
+        mockMvc.perform(multipart("/api/model/jobs").file(image)
+                .requestAttr("login", "testUser")
+                .contentType(MediaType.MULTIPART_FORM_DATA))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/model/jobs/" + jobId))
+                .andExpect(content().string(containsString("PENDING")));
+    }
+
+    @Test
+    public void testSubmitJob_WhenQueueIsFull_ShouldReturn503() throws Exception {
+        // given
+        MockMultipartFile image = new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes());
+        Mockito.when(analysisJobService.submit(any(), eq("testUser")))
+                .thenThrow(new AIServiceException("Too many analysis jobs are queued. Please retry shortly.", 503));
+
+        // when n then
+        mockMvc.perform(multipart("/api/model/jobs").file(image)
+                .requestAttr("login", "testUser")
+                .contentType(MediaType.MULTIPART_FORM_DATA))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    public void testSubmitJob_WhenUploadIsInvalid_ShouldReturn400() throws Exception {
+        // given
+        MockMultipartFile image = new MockMultipartFile("image", "test.txt", "text/plain", "hello".getBytes());
+        Mockito.when(analysisJobService.submit(any(), eq("testUser")))
+                .thenThrow(new IllegalArgumentException("File must be an image"));
+
+        // when n then
+        mockMvc.perform(multipart("/api/model/jobs").file(image)
+                .requestAttr("login", "testUser")
+                .contentType(MediaType.MULTIPART_FORM_DATA))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(containsString("File must be an image")));
+    }
+
+    @Test
+    public void testGetJob_GivenOwnJob_ShouldReturn200() throws Exception {
+        // given
+        UUID jobId = UUID.randomUUID();
+        AnalysisJobDTO job = new AnalysisJobDTO(jobId, "RUNNING", Instant.now(), Instant.now(), null, null);
+        Mockito.when(analysisJobService.getJob(jobId, "testUser")).thenReturn(Optional.of(job));
+
+        // when n then
+        mockMvc.perform(get("/api/model/jobs/" + jobId).requestAttr("login", "testUser"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("RUNNING")));
+    }
+
+    @Test
+    public void testGetJob_GivenUnknownJob_ShouldReturn404() throws Exception {
+        // given
+        UUID jobId = UUID.randomUUID();
+        Mockito.when(analysisJobService.getJob(jobId, "testUser")).thenReturn(Optional.empty());
+
+        // when n then
+        mockMvc.perform(get("/api/model/jobs/" + jobId).requestAttr("login", "testUser"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testStreamEvents_GivenAuthenticatedUser_ShouldStartEventStream() throws Exception {
+        // given
+        Mockito.when(progressNotifier.subscribe("testUser")).thenReturn(new SseEmitter());
+
+        // when n then
+        mockMvc.perform(get("/api/model/jobs/events").requestAttr("login", "testUser"))
+                .andExpect(request().asyncStarted());
+        Mockito.verify(progressNotifier).subscribe("testUser");
+    }
+
+    @Test
+    public void testStreamEvents_GivenNoUser_ShouldReturn401() throws Exception {
+        mockMvc.perform(get("/api/model/jobs/events"))
+                .andExpect(status().isUnauthorized());
+    }
+}
@@ -1,12 +1,17 @@
 package org.example.aidetectorbe.services;
 
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.TestUtils;
 import org.example.aidetectorbe.dto.AIModelResponse;
 import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.utils.ImageBuffer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.test.web.client.ExpectedCount;
 import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.web.client.RestTemplate;
 
@@ -19,6 +24,12 @@ import org.springframework.test.web.client.response.MockRestResponseCreators;
 import org.springframework.http.HttpStatus;
 
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -29,6 +40,8 @@ public class AIModelServiceImplTest {
     private RestTemplate restTemplate;
     private MockRestServiceServer mockServer;
     private ObjectMapper objectMapper;
+    private AIServiceGuard guard;
+    private AIServiceHealthProber healthProber;
     private AIModelServiceImpl service;
 
     @BeforeEach
@@ -37,14 +50,19 @@ public class AIModelServiceImplTest {
         restTemplate = new RestTemplate(factory);
         mockServer = MockRestServiceServer.createServer(restTemplate);
         objectMapper = new ObjectMapper();
-        service = new AIModelServiceImpl(restTemplate, objectMapper);
+        ModelReplicaPool replicaPool = new ModelReplicaPool(List.of("http://localhost:9999"), "least-outstanding", 0.3, 3, new SimpleMeterRegistry());
+        healthProber = new AIServiceHealthProber(replicaPool, restTemplate, event -> { }, Duration.ofSeconds(2), 1, true, new SimpleMeterRegistry());
+        guard = new AIServiceGuard(50, 100, Duration.ofSeconds(10), 4, 4, Duration.ofSeconds(30), 1,
+                8, Duration.ZERO, new SimpleMeterRegistry());
+        service = new AIModelServiceImpl(restTemplate, objectMapper, Executors.newVirtualThreadPerTaskExecutor(),
+                new InferenceBatcher(false, 8, 20, true, new SimpleMeterRegistry()), guard,
+                replicaPool, new RequestHedger(false, 0.95, 0.05, Duration.ofMillis(50), 1000, 20, new SimpleMeterRegistry()),
+                healthProber,
+                new AdaptiveConcurrencyLimiter(true, 20, 1, 200, 0.9, 2.0, 500, new SimpleMeterRegistry()),
+                new ImagePreprocessor(true, 1024, 0.92f, 1, 16, 1, new SimpleMeterRegistry()));
 
         // override config values via reflection since they're private and injected via @Value in production
         try {
-            java.lang.reflect.Field urlField = AIModelServiceImpl.class.getDeclaredField("aiServiceUrl");
-            urlField.setAccessible(true);
-            urlField.set(service, "http://localhost:9999");
-
             java.lang.reflect.Field endpointField = AIModelServiceImpl.class.getDeclaredField("aiServiceEndpoint");
             endpointField.setAccessible(true);
             endpointField.set(service, "/verify/image");
@@ -62,10 +80,28 @@ public class AIModelServiceImplTest {
         }
     }
 
+    @Test
+    public void testProcessImage_ForEnsembleMember_ShouldCallMemberUrlAndReportItsName() throws Exception {
+        // given
+        ImageBuffer image = ImageBuffer.read(new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes()), Long.MAX_VALUE);
+        mockServer.expect(MockRestRequestMatchers.requestTo("http://vit:8000/verify/image"))
+                .andExpect(MockRestRequestMatchers.method(HttpMethod.POST))
+                .andRespond(MockRestResponseCreators.withSuccess("{\"certainty\": 0.4}", MediaType.APPLICATION_JSON));
+
+        // when
+        AIModelResponse resp = service.processImage(image, "vit", "http://vit:8000");
+
+        // then
+        mockServer.verify();
+        assertThat(resp.getCertainty()).isCloseTo(0.4d, withinPercentage(0.1d));
+        assertThat(resp.getModelUsed()).isEqualTo("vit");
+        assertThat(image.refCount()).isEqualTo(1);
+    }
+
     @Test
     public void testProcessImage_WhenSuccessfulResponse_ShouldParsesCorrectly() throws Exception {
         // given
-        MockMultipartFile image = new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes());
+        ImageBuffer image = ImageBuffer.read(new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes()), Long.MAX_VALUE);
         String aiResponse = "{\"certainty\": 0.95}";
         // when
         mockServer.expect(MockRestRequestMatchers.requestTo("http://localhost:9999/verify/image"))
@@ -82,10 +118,43 @@ public class AIModelServiceImplTest {
         assertThat(resp.getProcessingTimeMs()).isGreaterThanOrEqualTo(0L);
     }
 
+    @Test
+    public void testProcessImageAsync_WhenSuccessfulResponse_ShouldCompleteOffCallerThread() throws Exception {
+        // given
+        ImageBuffer image = ImageBuffer.read(new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes()), Long.MAX_VALUE);
+        Thread caller = Thread.currentThread();
+        // when
+        mockServer.expect(MockRestRequestMatchers.requestTo("http://localhost:9999/verify/image"))
+                .andExpect(MockRestRequestMatchers.method(HttpMethod.POST))
+                .andRespond(request -> {
+                    assertThat(Thread.currentThread()).isNotSameAs(caller);
+                    assertThat(Thread.currentThread().isVirtual()).isTrue();
+                    return MockRestResponseCreators.withSuccess("{\"certainty\": 0.42}", MediaType.APPLICATION_JSON).createResponse(request);
+                });
+
+        AIModelResponse resp = service.processImageAsync(image).get(5, TimeUnit.SECONDS);
+
+        // then
+        mockServer.verify();
+        assertThat(resp.getCertainty()).isCloseTo(0.42d, withinPercentage(0.1d));
+    }
+
+    @Test
+    public void testProcessImageAsync_WhenAiReturns5xx_ShouldCompleteExceptionally() throws Exception {
+        // given
+        ImageBuffer image = ImageBuffer.read(new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes()), Long.MAX_VALUE);
+        // when
+        mockServer.expect(MockRestRequestMatchers.requestTo("http://localhost:9999/verify/image"))
+                .andRespond(MockRestResponseCreators.withServerError());
+        // then
+        assertThatThrownBy(() -> service.processImageAsync(image).get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(AIServiceException.class);
+    }
+
     @Test
     public void testProcessImage_WhenAiReturns4xx_ShouldThrowAIServiceException() throws Exception {
         // given
-        MockMultipartFile image = new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes());
+        ImageBuffer image = ImageBuffer.read(new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes()), Long.MAX_VALUE);
         // when
         mockServer.expect(MockRestRequestMatchers.requestTo("http://localhost:9999/verify/image"))
                 .andExpect(MockRestRequestMatchers.method(HttpMethod.POST))
@@ -98,7 +167,7 @@ public class AIModelServiceImplTest {
     @Test
     public void testProcessImage_WhenAiReturns5xx_ShouldThrowAIServiceException() throws Exception {
         // given
-        MockMultipartFile image = new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes());
+        ImageBuffer image = ImageBuffer.read(new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes()), Long.MAX_VALUE);
         // when
         mockServer.expect(MockRestRequestMatchers.requestTo("http://localhost:9999/verify/image"))
                 .andExpect(MockRestRequestMatchers.method(HttpMethod.POST))
@@ -111,7 +180,7 @@ public class AIModelServiceImplTest {
     @Test
     public void testProcessImage_WhenAiServiceUnreachable_ShouldThrowAIServiceException() throws Exception {
         // given
-        MockMultipartFile image = new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes());
+        ImageBuffer image = ImageBuffer.read(new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes()), Long.MAX_VALUE);
         // when
         mockServer.expect(MockRestRequestMatchers.requestTo("http://localhost:9999/verify/image"))
                 .andExpect(MockRestRequestMatchers.method(HttpMethod.POST))
@@ -121,12 +190,63 @@ public class AIModelServiceImplTest {
         mockServer.verify();
     }
 
+    @Test
+    public void testProcessImage_WhenCircuitBreakerOpen_ShouldFailFastWith503() throws Exception {
+        // given
+        ImageBuffer image = ImageBuffer.read(new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes()), Long.MAX_VALUE);
+        mockServer.expect(ExpectedCount.times(4), MockRestRequestMatchers.requestTo("http://localhost:9999/verify/image"))
+                .andRespond(MockRestResponseCreators.withServerError());
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> service.processImage(image)).isInstanceOf(AIServiceException.class);
+        }
+        // when n then
+        assertThat(guard.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThatThrownBy(() -> service.processImage(image))
+                .isInstanceOf(AIServiceException.class)
+                .extracting("statusCode").isEqualTo(503);
+        mockServer.verify();
+    }
+
+    @Test
+    public void testProcessImage_WhenEnsembleMemberFails_ShouldOpenOnlyItsOwnCircuitBreaker() throws Exception {
+        // given
+        ImageBuffer image = ImageBuffer.read(new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes()), Long.MAX_VALUE);
+        mockServer.expect(ExpectedCount.times(4), MockRestRequestMatchers.requestTo("http://vit:8000/verify/image"))
+                .andRespond(MockRestResponseCreators.withServerError());
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> service.processImage(image, "vit", "http://vit:8000")).isInstanceOf(AIServiceException.class);
+        }
+        // when n then
+        assertThat(guard.getCircuitBreaker("vit").getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(guard.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThatThrownBy(() -> service.processImage(image, "vit", "http://vit:8000"))
+                .isInstanceOf(AIServiceException.class)
+                .extracting("statusCode").isEqualTo(503);
+        mockServer.verify();
+    }
+
+    @Test
+    public void testProcessImage_WhenAiReturns4xx_ShouldNotOpenCircuitBreaker() throws Exception {
+        // given
+        ImageBuffer image = ImageBuffer.read(new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes()), Long.MAX_VALUE);
+        mockServer.expect(ExpectedCount.times(5), MockRestRequestMatchers.requestTo("http://localhost:9999/verify/image"))
+                .andRespond(MockRestResponseCreators.withStatus(HttpStatus.UNPROCESSABLE_ENTITY));
+        // when
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> service.processImage(image)).isInstanceOf(AIServiceException.class);
+        }
+        // then
+        assertThat(guard.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        mockServer.verify();
+    }
+
     @Test
     public void testIsServiceHealthy_WhenAiServiceIsUp_ShouldReturnTrue() throws Exception {
         // when
         mockServer.expect(MockRestRequestMatchers.requestTo("http://localhost:9999/health"))
                 .andExpect(MockRestRequestMatchers.method(HttpMethod.GET))
                 .andRespond(MockRestResponseCreators.withSuccess("{\"status\":\"ok\"}", MediaType.APPLICATION_JSON));
+        healthProber.probeAll();
         // then
         assertThat(service.isServiceHealthy()).isTrue();
         mockServer.verify();
@@ -138,20 +258,51 @@ public class AIModelServiceImplTest {
         mockServer.expect(MockRestRequestMatchers.requestTo("http://localhost:9999/health"))
                 .andExpect(MockRestRequestMatchers.method(HttpMethod.GET))
                 .andRespond(MockRestResponseCreators.withServerError().body("Service Unavailable").contentType(MediaType.TEXT_PLAIN));
+        healthProber.probeAll();
         // then
         assertThat(service.isServiceHealthy()).isFalse();
         mockServer.verify();
     }
 
     @Test
-    public void testParseSuccessfulResponse_WhenInvalidJson_ShouldThrowAIServiceException() throws Exception {
+    public void testProcessImage_WhenInvalidJson_ShouldThrowAIServiceException() throws Exception {
+        // given
+        ImageBuffer image = ImageBuffer.read(new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes()), Long.MAX_VALUE);
+        mockServer.expect(MockRestRequestMatchers.requestTo("http://localhost:9999/verify/image"))
+                .andRespond(MockRestResponseCreators.withSuccess("This is not JSON", MediaType.APPLICATION_JSON));
+        // when n then
+        assertThatThrownBy(() -> service.processImage(image))
+                .isInstanceOf(AIServiceException.class)
+                .extracting("statusCode").isEqualTo(502);
+        mockServer.verify();
+    }
+
+    @Test
+    public void testProcessImage_WhenResponseHasNestedFields_ShouldReadOnlyTopLevelCertainty() throws Exception {
+        // given
+        ImageBuffer image = ImageBuffer.read(new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes()), Long.MAX_VALUE);
+        String aiResponse = "{\"heatmap\": [[0.1, 0.2], [0.3, 0.4]], \"meta\": {\"certainty\": 0.1}, \"certainty\": 0.77, \"label\": \"ai\"}";
+        mockServer.expect(MockRestRequestMatchers.requestTo("http://localhost:9999/verify/image"))
+                .andRespond(MockRestResponseCreators.withSuccess(aiResponse, MediaType.APPLICATION_JSON));
+        // when
+        AIModelResponse resp = service.processImage(image);
+        // then
+        assertThat(resp.getCertainty()).isCloseTo(0.77d, withinPercentage(0.1d));
+        mockServer.verify();
+    }
+
+    @Test
+    public void testProcessImage_WhenResponseExceedsSizeLimit_ShouldThrowAIServiceException() throws Exception {
         // given
-        String invalidJson = "This is not JSON";
+        TestUtils.setPrivateField(service, "maxResponseSize", DataSize.ofBytes(64));
+        ImageBuffer image = ImageBuffer.read(new MockMultipartFile("image", "test.jpg", "image/jpeg", "hello".getBytes()), Long.MAX_VALUE);
+        String aiResponse = "{\"heatmap\": [" + "0.5, ".repeat(100) + "0.5], \"certainty\": 0.9}";
+        mockServer.expect(MockRestRequestMatchers.requestTo("http://localhost:9999/verify/image"))
+                .andRespond(MockRestResponseCreators.withSuccess(aiResponse, MediaType.APPLICATION_JSON));
         // when n then
-        assertThatThrownBy(() -> {
-            java.lang.reflect.Method method = AIModelServiceImpl.class.getDeclaredMethod("parseSuccessfulResponse", String.class, long.class);
-            method.setAccessible(true);
-            method.invoke(service, invalidJson, 100L);
-        }).hasCauseInstanceOf(AIServiceException.class);
+        assertThatThrownBy(() -> service.processImage(image))
+                .isInstanceOf(AIServiceException.class)
+                .extracting("statusCode").isEqualTo(502);
+        mockServer.verify();
     }
 }
@@ -0,0 +1,104 @@
+package org.example.aidetectorbe.services;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AIServiceGuardTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AIServiceGuard guard;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        guard = new AIServiceGuard(50, 100, Duration.ofSeconds(10), 4, 4, Duration.ofSeconds(30), 1,
+                1, Duration.ZERO, meterRegistry);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void execute_ShouldFailFastWithoutCallingServiceWhileOpen() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            assertThrows(AIServiceException.class, () -> guard.execute(() -> {
+                throw new AIServiceException("AI down", 503);
+            }));
+        }
+        AtomicInteger calls = new AtomicInteger();
+
+        AIServiceException exception = assertThrows(AIServiceException.class, () -> guard.execute(calls::incrementAndGet));
+
+        assertEquals(503, exception.getStatusCode());
+        assertEquals(0, calls.get());
+        assertEquals(CircuitBreaker.State.OPEN, guard.getCircuitBreaker().getState());
+    }
+
+    @Test
+    void execute_ShouldRejectCallsBeyondBulkheadLimit() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> guard.execute(() -> {
+            started.countDown();
+            awaitRelease(release);
+            return null;
+        }));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        AIServiceException exception = assertThrows(AIServiceException.class, () -> guard.execute(() -> "second"));
+        release.countDown();
+
+        assertEquals(503, exception.getStatusCode());
+    }
+
+    @Test
+    void healthIndicator_ShouldStayUpAndReportAnalysisUnavailableWhenBreakerOpen() throws Exception {
+        ModelReplicaPool replicaPool = new ModelReplicaPool(List.of("http://localhost:9999"), "least-outstanding", 0.3, 3, meterRegistry);
+        AIServiceHealthProber healthProber = new AIServiceHealthProber(replicaPool, new RestTemplate(), event -> { },
+                Duration.ofSeconds(1), 1, true, meterRegistry);
+        AIServiceHealthIndicator healthIndicator = new AIServiceHealthIndicator(guard, healthProber);
+        assertEquals(Status.UP, healthIndicator.health().getStatus());
+        assertEquals(true, healthIndicator.health().getDetails().get("analysisAvailable"));
+
+        guard.getCircuitBreaker().transitionToOpenState();
+        Health health = healthIndicator.health();
+
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(false, health.getDetails().get("analysisAvailable"));
+        assertEquals("OPEN", health.getDetails().get("circuitBreakerState"));
+        assertEquals(1.0, meterRegistry.get("resilience4j.circuitbreaker.state")
+                .tag("name", AIServiceGuard.NAME).tag("state", "open").gauge().value());
+    }
+
+    private static void awaitRelease(CountDownLatch release) {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
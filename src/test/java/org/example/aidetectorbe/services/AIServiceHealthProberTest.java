@@ -0,0 +1,103 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.match.MockRestRequestMatchers;
+import org.springframework.test.web.client.response.MockRestResponseCreators;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AIServiceHealthProberTest {
+
+    private static final String REPLICA_A = "http://replica-a:8000";
+    private static final String REPLICA_B = "http://replica-b:8000";
+
+    private SimpleMeterRegistry meterRegistry;
+    private RestTemplate restTemplate;
+    private MockRestServiceServer mockServer;
+    private List<Object> events;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        restTemplate = new RestTemplate();
+        mockServer = MockRestServiceServer.bindTo(restTemplate).ignoreExpectOrder(true).build();
+        events = new ArrayList<>();
+    }
+
+    @Test
+    void probeAll_ShouldMarkEndpointUnhealthyOnlyAfterConsecutiveFailures() {
+        ModelReplicaPool replicaPool = new ModelReplicaPool(List.of(REPLICA_A), "least-outstanding", 0.3, 3, meterRegistry);
+        AIServiceHealthProber prober = prober(replicaPool);
+        mockServer.expect(ExpectedCount.times(2), MockRestRequestMatchers.requestTo(REPLICA_A + "/health"))
+                .andRespond(MockRestResponseCreators.withServerError());
+        mockServer.expect(MockRestRequestMatchers.requestTo(REPLICA_A + "/health"))
+                .andRespond(MockRestResponseCreators.withSuccess("{\"status\":\"ok\"}", MediaType.APPLICATION_JSON));
+
+        prober.probeAll();
+        assertTrue(prober.isAnyHealthy());
+        assertEquals(1, prober.getEndpoints().getFirst().consecutiveFailures());
+
+        prober.probeAll();
+        AIServiceHealthProber.EndpointHealth unhealthy = prober.getEndpoints().getFirst();
+        assertFalse(prober.isAnyHealthy());
+        assertFalse(unhealthy.healthy());
+        assertTrue(replicaPool.isEjected(REPLICA_A));
+        assertEquals(ReadinessState.REFUSING_TRAFFIC, readinessAt(0));
+        assertEquals(0.0, meterRegistry.get("ai.service.health.up").tag("replica", REPLICA_A).gauge().value());
+
+        prober.probeAll();
+        AIServiceHealthProber.EndpointHealth recovered = prober.getEndpoints().getFirst();
+        assertTrue(prober.isAnyHealthy());
+        assertTrue(recovered.lastLatencyMs() >= 0);
+        assertEquals(0, recovered.consecutiveFailures());
+        assertFalse(recovered.lastChange().isBefore(unhealthy.lastChange()));
+        assertFalse(replicaPool.isEjected(REPLICA_A));
+        assertEquals(ReadinessState.ACCEPTING_TRAFFIC, readinessAt(1));
+        mockServer.verify();
+    }
+
+    @Test
+    void probeAll_ShouldStayReadyWhileAnyEndpointIsHealthy() {
+        ModelReplicaPool replicaPool = new ModelReplicaPool(List.of(REPLICA_A, REPLICA_B), "least-outstanding", 0.3, 3, meterRegistry);
+        AIServiceHealthProber prober = prober(replicaPool);
+        mockServer.expect(ExpectedCount.times(2), MockRestRequestMatchers.requestTo(REPLICA_A + "/health"))
+                .andRespond(MockRestResponseCreators.withSuccess("{\"status\":\"ok\"}", MediaType.APPLICATION_JSON));
+        mockServer.expect(ExpectedCount.times(2), MockRestRequestMatchers.requestTo(REPLICA_B + "/health"))
+                .andRespond(MockRestResponseCreators.withServerError());
+
+        prober.probeAll();
+        prober.probeAll();
+
+        assertTrue(prober.isAnyHealthy());
+        assertTrue(replicaPool.isEjected(REPLICA_B));
+        assertFalse(replicaPool.isEjected(REPLICA_A));
+        assertTrue(events.isEmpty());
+        Instant checked = prober.getEndpoints().get(1).lastChecked();
+        assertNotNull(checked);
+        mockServer.verify();
+    }
+
+    private AIServiceHealthProber prober(ModelReplicaPool replicaPool) {
+        return new AIServiceHealthProber(replicaPool, restTemplate, events::add, Duration.ofSeconds(2), 2, true, meterRegistry);
+    }
+
+    private ReadinessState readinessAt(int index) {
+        return (ReadinessState) ((AvailabilityChangeEvent<?>) events.get(index)).getState();
+    }
+}
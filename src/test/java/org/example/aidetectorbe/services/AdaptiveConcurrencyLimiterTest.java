@@ -0,0 +1,154 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void execute_ShouldRejectCallsBeyondLimitWith429() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 1, 1, 10, 0.9, 2.0, 500, meterRegistry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> limiter.execute(() -> {
+            started.countDown();
+            awaitRelease(release);
+            return null;
+        }));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        AIServiceException exception = assertThrows(AIServiceException.class, () -> limiter.execute(() -> "rejected"));
+        // Read the gauges while the first call still holds its slot; completing it may grow the limit
+        double inFlight = meterRegistry.get("ai.concurrency.in.flight").gauge().value();
+        double limit = meterRegistry.get("ai.concurrency.limit").gauge().value();
+        release.countDown();
+
+        assertEquals(429, exception.getStatusCode());
+        assertEquals(1.0, meterRegistry.get("ai.concurrency.rejections").counter().count());
+        assertEquals(1.0, inFlight);
+        assertEquals(1.0, limit);
+    }
+
+    @Test
+    void execute_ShouldBackOffOnServerErrors() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 20, 1, 50, 0.5, 2.0, 500, meterRegistry);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(AIServiceException.class, () -> limiter.execute(() -> {
+                throw new AIServiceException("AI down", 503);
+            }));
+        }
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void execute_ShouldNotBackOffOnClientErrors() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 20, 1, 50, 0.5, 2.0, 500, meterRegistry);
+
+        assertThrows(AIServiceException.class, () -> limiter.execute(() -> {
+            throw new AIServiceException("Unprocessable", 422);
+        }));
+
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    void execute_ShouldNotBackOffWhenCallIsCancelled() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 20, 1, 50, 0.5, 2.0, 500, meterRegistry);
+
+        try {
+            assertThrows(AIServiceException.class, () -> limiter.execute(() -> {
+                Thread.currentThread().interrupt();
+                throw new AIServiceException("Unable to connect to AI service. Please try again later.", 503);
+            }));
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    void execute_ShouldKeepSeparateLimitPerMember() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 20, 1, 50, 0.5, 2.0, 500, meterRegistry);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(AIServiceException.class, () -> limiter.execute("vit", () -> {
+                throw new AIServiceException("AI service is experiencing issues", 500);
+            }));
+        }
+
+        assertEquals(2.0, meterRegistry.get("ai.ensemble.concurrency.limit").tag("model", "vit").gauge().value());
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    void execute_ShouldGrowLimitWhileFastAndUtilized() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 1, 1, 50, 0.9, 100.0, 500, meterRegistry);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.execute(() -> null);
+        }
+
+        // A single sequential caller only ever uses one slot, so growth stops once that is under half the limit
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    void execute_ShouldBackOffWhenLatencyRisesAboveBaseline() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 10, 1, 50, 0.5, 2.0, 500, meterRegistry);
+        for (int i = 0; i < 5; i++) {
+            limiter.execute(() -> sleep(1));
+        }
+        int before = limiter.getLimit();
+
+        limiter.execute(() -> sleep(50));
+
+        assertTrue(limiter.getLimit() < before, "limit " + limiter.getLimit() + " should be below " + before);
+    }
+
+    private static Object sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private static void awaitRelease(CountDownLatch release) {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
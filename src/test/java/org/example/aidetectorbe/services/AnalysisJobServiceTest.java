@@ -0,0 +1,239 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.dto.AnalysisEventDTO;
+import org.example.aidetectorbe.dto.AnalysisJobDTO;
+import org.example.aidetectorbe.entities.AnalysisJob;
+import org.example.aidetectorbe.entities.ModelResult;
+import org.example.aidetectorbe.entities.User;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.repository.AnalysisJobRepository;
+import org.example.aidetectorbe.repository.UserRepository;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AnalysisJobServiceTest {
+
+    private ModelAnalysisFlowService flowService;
+    private AnalysisJobRepository analysisJobRepository;
+    private UserRepository userRepository;
+    private AnalysisProgressNotifier progressNotifier;
+    private AnalysisJobService jobService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        flowService = mock(ModelAnalysisFlowService.class);
+        analysisJobRepository = mock(AnalysisJobRepository.class);
+        userRepository = mock(UserRepository.class);
+        progressNotifier = mock(AnalysisProgressNotifier.class);
+        user = new User();
+        user.setId(UUID.randomUUID());
+        when(userRepository.findByLogin("testUser")).thenReturn(Optional.of(user));
+        when(analysisJobRepository.save(any(AnalysisJob.class))).thenAnswer(invocation -> {
+            AnalysisJob job = invocation.getArgument(0);
+            if (job.getJobId() == null) {
+                job.setJobId(UUID.randomUUID());
+            }
+            return job;
+        });
+        jobService = createService(2, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobService.shutdown();
+    }
+
+    @Test
+    void submit_ShouldRunJobAndExposeStoredResult() throws Exception {
+        ImageBuffer buffer = imageBuffer();
+        when(flowService.acceptUpload(any(), eq("testUser"))).thenReturn(buffer);
+        ModelResult result = new ModelResult();
+        result.setResultId(UUID.randomUUID());
+        result.setPhotoId(UUID.randomUUID());
+        result.setModel("TestModel");
+        result.setChance(new BigDecimal("87.50"));
+        when(flowService.analyzeAndStoreValidated(buffer, "testUser"))
+                .thenReturn(new ModelAnalysisFlowService.StoredAnalysis(result, new AIModelResponse(0.875, "TestModel", 10L)));
+
+        AnalysisJobDTO accepted = jobService.submit(upload(), "testUser");
+        AnalysisJobDTO finished = awaitTerminal(accepted.getJobId());
+
+        assertEquals("PENDING", accepted.getStatus());
+        assertEquals("SUCCEEDED", finished.getStatus());
+        assertEquals(result.getResultId(), finished.getResult().getId());
+        assertEquals(new BigDecimal("87.50"), finished.getResult().getChance());
+        assertNull(finished.getError());
+        awaitReleased(buffer);
+        ArgumentCaptor<AnalysisEventDTO> events = ArgumentCaptor.forClass(AnalysisEventDTO.class);
+        verify(progressNotifier, timeout(1000).times(2)).publish(eq("testUser"), events.capture());
+        assertEquals(List.of("STORED", "DONE"), events.getAllValues().stream().map(AnalysisEventDTO::getStage).toList());
+        assertEquals(0.875, events.getValue().getCertainty());
+        assertEquals(result.getResultId(), events.getValue().getResultId());
+        verify(progressNotifier).publish("testUser", accepted.getJobId(), AnalysisProgressNotifier.Stage.INFERRING);
+    }
+
+    @Test
+    void submit_ShouldRecordAiServiceFailureOnJob() throws Exception {
+        ImageBuffer buffer = imageBuffer();
+        when(flowService.acceptUpload(any(), eq("testUser"))).thenReturn(buffer);
+        when(flowService.analyzeAndStoreValidated(buffer, "testUser"))
+                .thenThrow(new AIServiceException("AI service returned an error", 502));
+
+        AnalysisJobDTO finished = awaitTerminal(jobService.submit(upload(), "testUser").getJobId());
+
+        assertEquals("FAILED", finished.getStatus());
+        assertEquals(502, finished.getError().getStatus());
+        assertEquals("AI service returned an error", finished.getError().getMessage());
+        awaitReleased(buffer);
+    }
+
+    @Test
+    void submit_ShouldRejectWith503WhenQueuedUploadsExceedSizeLimit() throws Exception {
+        jobService.shutdown();
+        // Each upload is 3 bytes, so only one fits under the limit
+        jobService = createService(4, 10, DataSize.ofBytes(5));
+        CountDownLatch release = new CountDownLatch(1);
+        ImageBuffer first = imageBuffer();
+        when(flowService.acceptUpload(any(), eq("testUser"))).thenReturn(first).thenAnswer(invocation -> imageBuffer());
+        when(flowService.analyzeAndStoreValidated(any(), eq("testUser"))).thenAnswer(invocation -> {
+            release.await();
+            throw new AIServiceException("AI service is unavailable", 503);
+        });
+
+        jobService.submit(upload(), "testUser");
+        AIServiceException exception = assertThrows(AIServiceException.class, () -> jobService.submit(upload(), "testUser"));
+        release.countDown();
+
+        assertEquals(503, exception.getStatusCode());
+        awaitReleased(first);
+        // Once the first job has finished its bytes are free again
+        jobService.submit(upload(), "testUser");
+    }
+
+    @Test
+    void submit_ShouldTruncateLongErrorMessages() throws Exception {
+        ImageBuffer buffer = imageBuffer();
+        when(flowService.acceptUpload(any(), eq("testUser"))).thenReturn(buffer);
+        when(flowService.analyzeAndStoreValidated(buffer, "testUser"))
+                .thenThrow(new AIServiceException("AI service is experiencing issues: " + "x".repeat(1000), 500));
+
+        AnalysisJobDTO finished = awaitTerminal(jobService.submit(upload(), "testUser").getJobId());
+
+        assertEquals("FAILED", finished.getStatus());
+        assertEquals(AnalysisJob.MAX_ERROR_MESSAGE_LENGTH, finished.getError().getMessage().length());
+    }
+
+    @Test
+    void submit_ShouldRejectWith503WhenQueueIsFull() throws Exception {
+        jobService.shutdown();
+        jobService = createService(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(flowService.acceptUpload(any(), eq("testUser"))).thenAnswer(invocation -> imageBuffer());
+        when(flowService.analyzeAndStoreValidated(any(), eq("testUser"))).thenAnswer(invocation -> {
+            release.await();
+            throw new AIServiceException("AI service is unavailable", 503);
+        });
+
+        jobService.submit(upload(), "testUser");
+        jobService.submit(upload(), "testUser");
+        AIServiceException exception = assertThrows(AIServiceException.class, () -> jobService.submit(upload(), "testUser"));
+        release.countDown();
+
+        assertEquals(503, exception.getStatusCode());
+        verify(analysisJobRepository).delete(any(AnalysisJob.class));
+    }
+
+    @Test
+    void getJob_ShouldHideJobsOfOtherUsers() throws Exception {
+        ImageBuffer buffer = imageBuffer();
+        when(flowService.acceptUpload(any(), eq("testUser"))).thenReturn(buffer);
+        when(flowService.analyzeAndStoreValidated(buffer, "testUser")).thenThrow(new AIServiceException("AI down", 503));
+
+        UUID jobId = jobService.submit(upload(), "testUser").getJobId();
+
+        assertTrue(jobService.getJob(jobId, "otherUser").isEmpty());
+    }
+
+    @Test
+    void getJob_ShouldFallBackToRepositoryAndFailStaleJobs() {
+        AnalysisJob stored = new AnalysisJob();
+        stored.setJobId(UUID.randomUUID());
+        stored.setUserId(user.getId());
+        stored.setStatus(AnalysisJob.Status.RUNNING);
+        stored.setCreatedAt(Instant.now().minus(Duration.ofHours(1)));
+        stored.setUpdatedAt(Instant.now().minus(Duration.ofHours(1)));
+        when(analysisJobRepository.findById(stored.getJobId())).thenReturn(Optional.of(stored));
+
+        AnalysisJobDTO job = jobService.getJob(stored.getJobId(), "testUser").orElseThrow();
+
+        assertEquals("FAILED", job.getStatus());
+        assertEquals(503, job.getError().getStatus());
+        verify(analysisJobRepository).save(stored);
+    }
+
+    private AnalysisJobService createService(int workers, int queueCapacity) {
+        return createService(workers, queueCapacity, DataSize.ofMegabytes(256));
+    }
+
+    private AnalysisJobService createService(int workers, int queueCapacity, DataSize maxQueuedSize) {
+        return new AnalysisJobService(flowService, analysisJobRepository, userRepository, progressNotifier, workers, queueCapacity,
+                maxQueuedSize, 100, Duration.ofMinutes(5), Duration.ofMinutes(10), Duration.ofDays(7), new SimpleMeterRegistry());
+    }
+
+    private AnalysisJobDTO awaitTerminal(UUID jobId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (true) {
+            AnalysisJobDTO job = jobService.getJob(jobId, "testUser").orElseThrow();
+            if (job.getStatus().equals("SUCCEEDED") || job.getStatus().equals("FAILED")) {
+                return job;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "job did not finish in time");
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+
+    private static void awaitReleased(ImageBuffer buffer) throws InterruptedException {
+        // The worker releases the upload after publishing the terminal state
+        long deadline = System.currentTimeMillis() + 2000;
+        while (buffer.refCount() != 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "upload buffer was not released");
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+
+    private static MockMultipartFile upload() {
+        return new MockMultipartFile("image", "test.png", "image/png", new byte[]{1, 2, 3});
+    }
+
+    private static ImageBuffer imageBuffer() throws Exception {
+        return ImageBuffer.read(upload(), 1024);
+    }
+}
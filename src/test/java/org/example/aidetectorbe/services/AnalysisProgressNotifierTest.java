@@ -0,0 +1,144 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.dto.AnalysisEventDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalysisProgressNotifierTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AnalysisProgressNotifier notifier;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        notifier = new AnalysisProgressNotifier(Duration.ofMinutes(1), 4, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        notifier.shutdown();
+    }
+
+    @Test
+    void publish_ShouldDeliverEventsOnlyToTheOwnersStreams() throws Exception {
+        RecordingEmitter alice = new RecordingEmitter(null);
+        RecordingEmitter bob = new RecordingEmitter(null);
+        notifier.register("alice", alice);
+        notifier.register("bob", bob);
+        UUID jobId = UUID.randomUUID();
+
+        notifier.publish("alice", jobId, AnalysisProgressNotifier.Stage.QUEUED);
+        notifier.publish("alice", new AnalysisEventDTO(jobId, "DONE", 0.9, UUID.randomUUID(), null, Instant.now()));
+
+        awaitCondition(() -> alice.payloads.size() == 2);
+        assertTrue(alice.payloads.get(0).contains("QUEUED"));
+        assertTrue(alice.payloads.get(1).contains("DONE"));
+        assertTrue(bob.payloads.isEmpty());
+        assertEquals(2.0, meterRegistry.get("app.events.subscribers").gauge().value());
+    }
+
+    @Test
+    void publish_ShouldNotBlockOnSlowClientsAndDropOldestEvents() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter(release);
+        notifier.register("alice", slow);
+        UUID jobId = UUID.randomUUID();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            notifier.publish("alice", new AnalysisEventDTO(jobId, "STAGE-" + i, null, null, null, Instant.now()));
+        }
+        long publishMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        release.countDown();
+
+        awaitCondition(() -> slow.payloads.stream().anyMatch(payload -> payload.contains("STAGE-49")));
+        assertTrue(publishMillis < 1000, "publishing took " + publishMillis + "ms");
+        // One event may already be in flight; the rest of the backlog is capped by the 4-event buffer
+        assertTrue(slow.payloads.size() <= 5, "delivered " + slow.payloads.size());
+        assertTrue(meterRegistry.get("app.events.dropped").counter().count() >= 45);
+    }
+
+    @Test
+    void sendHeartbeats_ShouldDropSubscribersWhoseConnectionFailed() throws Exception {
+        RecordingEmitter broken = new RecordingEmitter(null);
+        broken.failing = true;
+        notifier.register("alice", broken);
+
+        notifier.sendHeartbeats();
+
+        awaitCondition(() -> notifier.getSubscriberCount() == 0);
+        notifier.publish("alice", UUID.randomUUID(), AnalysisProgressNotifier.Stage.QUEUED);
+        assertTrue(broken.payloads.isEmpty());
+    }
+
+    @Test
+    void sendHeartbeats_ShouldSendCommentToEverySubscriber() throws Exception {
+        RecordingEmitter alice = new RecordingEmitter(null);
+        RecordingEmitter bob = new RecordingEmitter(null);
+        notifier.register("alice", alice);
+        notifier.register("bob", bob);
+
+        notifier.sendHeartbeats();
+
+        awaitCondition(() -> alice.payloads.size() == 1 && bob.payloads.size() == 1);
+        assertTrue(alice.payloads.get(0).contains(":heartbeat"));
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not reached in time");
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Captures what would be written to the client instead of needing a live async request.
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        private final List<String> payloads = new CopyOnWriteArrayList<>();
+        private final CountDownLatch release;
+        private volatile boolean failing;
+
+        private RecordingEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            StringBuilder payload = new StringBuilder();
+            for (DataWithMediaType part : builder.build()) {
+                payload.append(part.getData());
+            }
+            payloads.add(payload.toString());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package org.example.aidetectorbe.services;
+
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.dto.BatchItemResultDTO;
+import org.example.aidetectorbe.entities.ModelResult;
+import org.example.aidetectorbe.entities.User;
+import org.example.aidetectorbe.repository.ModelResultRepository;
+import org.example.aidetectorbe.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ArchiveAnalysisServiceTest {
+
+    private ModelAnalysisFlowService flowService;
+    private UserRepository userRepository;
+    private ModelResultRepository modelResultRepository;
+    private ExecutorService executor;
+    private User user;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        flowService = mock(ModelAnalysisFlowService.class);
+        userRepository = mock(UserRepository.class);
+        modelResultRepository = mock(ModelResultRepository.class);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        user = new User();
+        user.setId(UUID.randomUUID());
+        when(userRepository.findByLogin("testUser")).thenReturn(Optional.of(user));
+        when(flowService.analyzeValidated(any(), eq("testUser"), eq(user))).thenAnswer(invocation -> stored());
+    }
+
+    @Test
+    void analyzeArchive_ShouldAnalyzeEveryImageEntryAndSaveInChunks() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            entries.put("album/img" + i + ".png", new byte[]{(byte) i, 1, 2, 3});
+        }
+        List<BatchItemResultDTO> streamed = new CopyOnWriteArrayList<>();
+
+        int stored = service(DataSize.ofMegabytes(1), 4).analyzeArchive(zip(entries), "testUser", streamed::add);
+
+        assertEquals(5, stored);
+        assertEquals(5, streamed.size());
+        assertTrue(streamed.stream().allMatch(item -> item.getError() == null));
+        // flush size 2: two full chunks plus the remainder
+        verify(modelResultRepository, times(3)).saveAll(anyList());
+    }
+
+    @Test
+    void analyzeArchive_ShouldReportUnsavedChunksOnceForTheArchive() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            entries.put("album/img" + i + ".png", new byte[]{(byte) i, 1, 2, 3});
+        }
+        AtomicInteger saves = new AtomicInteger();
+        when(modelResultRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            if (saves.incrementAndGet() == 1) {
+                throw new DataAccessResourceFailureException("connection lost");
+            }
+            return invocation.getArgument(0);
+        });
+        List<BatchItemResultDTO> streamed = new CopyOnWriteArrayList<>();
+
+        int stored = service(DataSize.ofMegabytes(1), 4).analyzeArchive(zip(entries), "testUser", streamed::add);
+
+        assertEquals(3, stored);
+        assertEquals(5, streamed.stream().filter(item -> item.getIndex() != null && item.getError() == null).count());
+        BatchItemResultDTO failure = streamed.stream().filter(item -> item.getIndex() == null).findFirst().orElseThrow();
+        assertEquals(500, failure.getError().getStatus());
+        assertEquals("Failed to store 2 analysis results", failure.getError().getMessage());
+    }
+
+    @Test
+    void analyzeArchive_ShouldRefuseNestedArchivesAndContinue() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("inner.zip", zip(Map.of("x.png", new byte[]{1})).readAllBytes());
+        entries.put("disguised.png", zip(Map.of("y.png", new byte[]{1})).readAllBytes());
+        entries.put("ok.png", new byte[]{1, 2, 3});
+        List<BatchItemResultDTO> streamed = new CopyOnWriteArrayList<>();
+
+        int stored = service(DataSize.ofMegabytes(1), 4).analyzeArchive(zip(entries), "testUser", streamed::add);
+
+        assertEquals(1, stored);
+        assertEquals(2, streamed.stream().filter(item -> item.getError() != null
+                && item.getError().getMessage().equals("Nested archives are not supported")).count());
+    }
+
+    @Test
+    void analyzeArchive_ShouldAbortOnOversizedEntry() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("small.png", new byte[]{1, 2, 3});
+        entries.put("huge.png", randomBytes(4096));
+        entries.put("after.png", new byte[]{4, 5, 6});
+        List<BatchItemResultDTO> streamed = new CopyOnWriteArrayList<>();
+
+        int stored = service(DataSize.ofKilobytes(1), 4).analyzeArchive(zip(entries), "testUser", streamed::add);
+
+        assertEquals(1, stored);
+        BatchItemResultDTO failure = streamed.stream().filter(item -> item.getIndex() == null).findFirst().orElseThrow();
+        assertTrue(failure.getError().getMessage().contains("huge.png"));
+        assertTrue(streamed.stream().noneMatch(item -> "after.png".equals(item.getFilename())));
+    }
+
+    @Test
+    void analyzeArchive_ShouldRejectCompressionBombs() throws Exception {
+        List<BatchItemResultDTO> streamed = new CopyOnWriteArrayList<>();
+
+        int stored = service(DataSize.ofMegabytes(10), 4)
+                .analyzeArchive(zip(Map.of("zeros.png", new byte[2 * 1024 * 1024])), "testUser", streamed::add);
+
+        assertEquals(0, stored);
+        assertEquals(1, streamed.size());
+        assertNull(streamed.get(0).getIndex());
+        assertTrue(streamed.get(0).getError().getMessage().contains("expands more than 100 times"));
+    }
+
+    @Test
+    void analyzeArchive_ShouldBoundEntriesInFlight() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        when(flowService.analyzeValidated(any(), eq("testUser"), eq(user))).thenAnswer(invocation -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            active.decrementAndGet();
+            return stored();
+        });
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 10; i++) {
+            entries.put("img" + i + ".png", new byte[]{(byte) i});
+        }
+
+        int stored = service(DataSize.ofMegabytes(1), 2).analyzeArchive(zip(entries), "testUser", item -> { });
+
+        assertEquals(10, stored);
+        assertTrue(maxActive.get() <= 2, "max in flight was " + maxActive.get());
+    }
+
+    @Test
+    void analyzeArchive_ShouldReportBodiesThatAreNotArchives() {
+        List<BatchItemResultDTO> streamed = new CopyOnWriteArrayList<>();
+
+        int stored = service(DataSize.ofMegabytes(1), 4)
+                .analyzeArchive(new ByteArrayInputStream("not a zip".getBytes()), "testUser", streamed::add);
+
+        assertEquals(0, stored);
+        assertEquals("Archive contains no files", streamed.get(0).getError().getMessage());
+    }
+
+    private ArchiveAnalysisService service(DataSize maxEntrySize, int maxInFlight) {
+        BatchAnalysisService batchService = new BatchAnalysisService(flowService, userRepository, modelResultRepository,
+                executor, 50, 8);
+        return new ArchiveAnalysisService(batchService, userRepository, modelResultRepository, executor,
+                DataSize.ofMegabytes(100), maxEntrySize, 1000, 100, maxInFlight, 2);
+    }
+
+    private static ModelAnalysisFlowService.StoredAnalysis stored() {
+        ModelResult result = new ModelResult();
+        result.setPhotoId(UUID.randomUUID());
+        return new ModelAnalysisFlowService.StoredAnalysis(result, new AIModelResponse(0.4, "TestModel", 5L));
+    }
+
+    private static ByteArrayInputStream zip(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("album/"));
+            zip.closeEntry();
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue());
+                zip.closeEntry();
+            }
+        }
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new java.util.Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
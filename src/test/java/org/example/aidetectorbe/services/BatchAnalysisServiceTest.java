@@ -0,0 +1,178 @@
+package org.example.aidetectorbe.services;
+
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.dto.BatchItemResultDTO;
+import org.example.aidetectorbe.entities.ModelResult;
+import org.example.aidetectorbe.entities.User;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.repository.ModelResultRepository;
+import org.example.aidetectorbe.repository.UserRepository;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchAnalysisServiceTest {
+
+    private ModelAnalysisFlowService flowService;
+    private UserRepository userRepository;
+    private ModelResultRepository modelResultRepository;
+    private BatchAnalysisService batchService;
+    private List<ImageBuffer> buffers;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        flowService = mock(ModelAnalysisFlowService.class);
+        userRepository = mock(UserRepository.class);
+        modelResultRepository = mock(ModelResultRepository.class);
+        batchService = new BatchAnalysisService(flowService, userRepository, modelResultRepository,
+                Executors.newVirtualThreadPerTaskExecutor(), 10, 2);
+        buffers = new CopyOnWriteArrayList<>();
+        user = new User();
+        user.setId(UUID.randomUUID());
+        when(userRepository.findByLogin("testUser")).thenReturn(Optional.of(user));
+        when(flowService.readUpload(any())).thenAnswer(invocation -> {
+            ImageBuffer buffer = ImageBuffer.read(invocation.getArgument(0), 1024);
+            buffers.add(buffer);
+            return buffer;
+        });
+    }
+
+    @Test
+    void analyzeBatch_ShouldStreamEveryItemAndSaveResultsOnce() throws Exception {
+        when(flowService.analyzeValidated(any(), eq("testUser"), eq(user))).thenAnswer(invocation -> stored(0.7));
+        doThrow(new IllegalArgumentException("File must be an image")).when(flowService)
+                .validateUpload(bufferNamed("bad.txt"));
+        List<BatchItemResultDTO> streamed = new CopyOnWriteArrayList<>();
+
+        int stored = batchService.analyzeBatch(List.of(image("a.png"), image("bad.txt"), image("b.png")), "testUser", streamed::add)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, stored);
+        assertEquals(3, streamed.size());
+        List<BatchItemResultDTO> byIndex = new ArrayList<>(streamed);
+        byIndex.sort(Comparator.comparing(BatchItemResultDTO::getIndex));
+        assertEquals(0.7, byIndex.get(0).getCertainty());
+        assertNull(byIndex.get(0).getError());
+        assertEquals(400, byIndex.get(1).getError().getStatus());
+        assertEquals("bad.txt", byIndex.get(1).getFilename());
+
+        ArgumentCaptor<Collection<ModelResult>> saved = ArgumentCaptor.captor();
+        verify(modelResultRepository, times(1)).saveAll(saved.capture());
+        assertEquals(2, saved.getValue().size());
+        verify(modelResultRepository, never()).save(any());
+        verify(userRepository, times(1)).findByLogin("testUser");
+        assertTrue(buffers.stream().allMatch(buffer -> buffer.refCount() == 0));
+    }
+
+    @Test
+    void analyzeBatch_ShouldReportUnreadableUploadWithFilenameAndReason() throws Exception {
+        when(flowService.analyzeValidated(any(), eq("testUser"), eq(user))).thenAnswer(invocation -> stored(0.7));
+        doThrow(new IllegalArgumentException("Failed to read image broken.png: Connection reset")).when(flowService)
+                .readUpload(argThat(file -> file != null && "broken.png".equals(file.getOriginalFilename())));
+        List<BatchItemResultDTO> streamed = new CopyOnWriteArrayList<>();
+
+        int stored = batchService.analyzeBatch(List.of(image("a.png"), image("broken.png")), "testUser", streamed::add)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, stored);
+        BatchItemResultDTO failed = streamed.stream().filter(item -> item.getIndex() == 1).findFirst().orElseThrow();
+        assertEquals("broken.png", failed.getFilename());
+        assertEquals(400, failed.getError().getStatus());
+        assertEquals("Failed to read image broken.png: Connection reset", failed.getError().getMessage());
+    }
+
+    @Test
+    void analyzeBatch_ShouldBoundConcurrentInference() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        when(flowService.analyzeValidated(any(), eq("testUser"), eq(user))).thenAnswer(invocation -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            Thread.sleep(30);
+            active.decrementAndGet();
+            return stored(0.5);
+        });
+        List<MultipartFile> images = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            images.add(image("img" + i + ".png"));
+        }
+
+        batchService.analyzeBatch(images, "testUser", item -> { }).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, maxActive.get());
+    }
+
+    @Test
+    void analyzeBatch_ShouldReportAiServiceErrorsPerImage() throws Exception {
+        when(flowService.analyzeValidated(any(), eq("testUser"), eq(user)))
+                .thenThrow(new AIServiceException("AI service is temporarily unavailable", 503));
+        List<BatchItemResultDTO> streamed = new CopyOnWriteArrayList<>();
+
+        int stored = batchService.analyzeBatch(List.of(image("a.png")), "testUser", streamed::add).get(5, TimeUnit.SECONDS);
+
+        assertEquals(0, stored);
+        assertEquals(503, streamed.get(0).getError().getStatus());
+    }
+
+    @Test
+    void analyzeBatch_ShouldRejectTooManyImages() {
+        List<MultipartFile> images = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            images.add(image("img" + i + ".png"));
+        }
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> batchService.analyzeBatch(images, "testUser", item -> { }));
+
+        assertEquals("Too many images. Maximum allowed per batch is 10", exception.getMessage());
+    }
+
+    @Test
+    void analyzeBatch_ShouldRejectUnknownUser() {
+        assertThrows(SecurityException.class,
+                () -> batchService.analyzeBatch(List.of(image("a.png")), "ghost", item -> { }));
+    }
+
+    private ImageBuffer bufferNamed(String filename) {
+        return argThat(buffer -> buffer != null && filename.equals(buffer.getFilename()));
+    }
+
+    private static ModelAnalysisFlowService.StoredAnalysis stored(double certainty) {
+        ModelResult result = new ModelResult();
+        result.setPhotoId(UUID.randomUUID());
+        return new ModelAnalysisFlowService.StoredAnalysis(result, new AIModelResponse(certainty, "TestModel", 5L));
+    }
+
+    private static MockMultipartFile image(String filename) {
+        return new MockMultipartFile("images", filename, "image/png", filename.getBytes());
+    }
+}
@@ -0,0 +1,187 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnsembleInferenceServiceTest {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void infer_ShouldAskEveryModelAndAverageTheirCertainties() throws Exception {
+        EnsembleInferenceService service = service(List.of("vit=http://vit:8000", "clip=http://clip:8000"));
+
+        EnsembleInferenceService.Verdict verdict = service.infer(member ->
+                new AIModelResponse(switch (member.name()) {
+                    case "primary" -> 0.2;
+                    case "vit" -> 0.5;
+                    default -> 0.8;
+                }, member.name(), 5L));
+
+        assertEquals(0.5, verdict.response().getCertainty(), 1e-9);
+        assertEquals("ensemble", verdict.response().getModelUsed());
+        assertEquals(List.of("clip", "primary", "vit"),
+                verdict.memberResponses().stream().map(AIModelResponse::getModelUsed).sorted().toList());
+        assertEquals(1.0, meterRegistry.get("ai.ensemble.requests").tag("outcome", "complete").counter().count());
+    }
+
+    @Test
+    void infer_ShouldCancelSlowModelOnceFastOnesConfidentlyAgree() throws Exception {
+        EnsembleInferenceService service = service(List.of("fast=http://fast:8000", "slow=http://slow:8000"));
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch slowInterrupted = new CountDownLatch(1);
+
+        EnsembleInferenceService.Verdict verdict = service.infer(member -> {
+            if (member.name().equals("slow")) {
+                slowStarted.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    slowInterrupted.countDown();
+                    throw new AIServiceException("Cancelled", e, 503);
+                }
+            }
+            // Answer only once the slow call is running, so it is interrupted rather than skipped
+            await(slowStarted);
+            return new AIModelResponse(0.97, member.name(), 5L);
+        });
+
+        assertEquals(2, verdict.memberResponses().size());
+        assertEquals(0.97, verdict.response().getCertainty(), 1e-9);
+        assertTrue(slowInterrupted.await(2, TimeUnit.SECONDS), "slow model should be interrupted");
+        assertEquals(1.0, meterRegistry.get("ai.ensemble.requests").tag("outcome", "early_stop").counter().count());
+        assertEquals(1.0, meterRegistry.get("ai.ensemble.members.cancelled").counter().count());
+    }
+
+    @Test
+    void infer_ShouldDetachSlowPrimaryWithoutCancellingIt() throws Exception {
+        EnsembleInferenceService service = service(List.of("fast=http://fast:8000", "quick=http://quick:8000"));
+        CountDownLatch releasePrimary = new CountDownLatch(1);
+        CountDownLatch primaryFinished = new CountDownLatch(1);
+        AtomicBoolean primaryInterrupted = new AtomicBoolean();
+
+        EnsembleInferenceService.Verdict verdict = service.infer(member -> {
+            if (member.isPrimary()) {
+                try {
+                    releasePrimary.await();
+                } catch (InterruptedException e) {
+                    primaryInterrupted.set(true);
+                    throw new AIServiceException("Cancelled", e, 503);
+                } finally {
+                    primaryFinished.countDown();
+                }
+                return new AIModelResponse(0.91, member.name(), 200L);
+            }
+            return new AIModelResponse(0.97, member.name(), 5L);
+        });
+
+        // The fast members agree without the primary, which is still running for anyone coalesced onto it
+        assertEquals(List.of("fast", "quick"),
+                verdict.memberResponses().stream().map(AIModelResponse::getModelUsed).sorted().toList());
+        assertEquals(1, primaryFinished.getCount());
+        releasePrimary.countDown();
+        assertTrue(primaryFinished.await(2, TimeUnit.SECONDS));
+        assertFalse(primaryInterrupted.get(), "primary model must not be interrupted");
+        assertEquals(1.0, meterRegistry.get("ai.ensemble.primary.detached").counter().count());
+        assertEquals(0.0, meterRegistry.get("ai.ensemble.members.cancelled").counter().count());
+    }
+
+    @Test
+    void infer_ShouldWaitForAllModelsWhenTheyDisagree() throws Exception {
+        EnsembleInferenceService service = service(List.of("fast=http://fast:8000", "slow=http://slow:8000"));
+
+        EnsembleInferenceService.Verdict verdict = service.infer(member -> {
+            if (member.name().equals("slow")) {
+                sleep(100);
+                return new AIModelResponse(0.4, member.name(), 100L);
+            }
+            return new AIModelResponse(member.isPrimary() ? 0.95 : 0.05, member.name(), 5L);
+        });
+
+        assertEquals(3, verdict.memberResponses().size());
+    }
+
+    @Test
+    void infer_ShouldLeaveFailedModelsOutOfTheVerdict() throws Exception {
+        EnsembleInferenceService service = service(List.of("broken=http://broken:8000"));
+
+        EnsembleInferenceService.Verdict verdict = service.infer(member -> {
+            if (member.name().equals("broken")) {
+                throw new AIServiceException("AI service is experiencing issues", 500);
+            }
+            return new AIModelResponse(0.6, member.name(), 5L);
+        });
+
+        assertEquals(1, verdict.memberResponses().size());
+        assertEquals(0.6, verdict.response().getCertainty(), 1e-9);
+        assertEquals(1.0, meterRegistry.get("ai.ensemble.member.failures").tag("model", "broken").counter().count());
+    }
+
+    @Test
+    void infer_ShouldFailWhenNoModelAnswers() {
+        EnsembleInferenceService service = service(List.of("broken=http://broken:8000"));
+
+        AIServiceException exception = assertThrows(AIServiceException.class, () -> service.infer(member -> {
+            throw new AIServiceException("Unable to connect to AI service. Please try again later.", 503);
+        }));
+
+        assertEquals(503, exception.getStatusCode());
+    }
+
+    @Test
+    void constructor_ShouldRejectMalformedModelEntries() {
+        assertThrows(IllegalArgumentException.class, () -> service(List.of("http://no-name:8000")));
+        assertFalse(new EnsembleInferenceService(false, List.of("vit=http://vit:8000"), "primary", "ensemble",
+                TiledInferenceService.Aggregation.MEAN, 0.9, 2, executor, meterRegistry).isEnabled());
+    }
+
+    @Test
+    void constructor_ShouldRejectNamesThatCannotBeStoredApart() {
+        assertThrows(IllegalArgumentException.class, () -> service(List.of("primary=http://other:8000")));
+        assertThrows(IllegalArgumentException.class, () -> service(List.of("vit=http://a:8000", "vit=http://b:8000")));
+        assertThrows(IllegalArgumentException.class, () -> new EnsembleInferenceService(true, List.of("vit=http://vit:8000"),
+                "primary", "e".repeat(51), TiledInferenceService.Aggregation.MEAN, 0.9, 2, executor, meterRegistry));
+    }
+
+    private EnsembleInferenceService service(List<String> models) {
+        return new EnsembleInferenceService(true, models, "primary", "ensemble", TiledInferenceService.Aggregation.MEAN, 0.9, 2,
+                executor, meterRegistry);
+    }
+
+    private static void await(CountDownLatch latch) throws AIServiceException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new AIServiceException("Interrupted", e, 503);
+        }
+    }
+
+    private static void sleep(long millis) throws AIServiceException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new AIServiceException("Interrupted", e, 503);
+        }
+    }
+}
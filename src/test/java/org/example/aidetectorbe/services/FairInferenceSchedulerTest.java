@@ -0,0 +1,212 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.entities.Role;
+import org.example.aidetectorbe.entities.User;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.example.aidetectorbe.utils.Constants.ADMIN_USER_ROLE;
+import static org.example.aidetectorbe.utils.Constants.DEFAULT_USER_ROLE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FairInferenceSchedulerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void execute_ShouldFavorHeavierQueuesWhileBacklogged() throws Exception {
+        FairInferenceScheduler scheduler = scheduler(1, 20, 5000);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> blocker = occupySlot(scheduler, "blocker", release);
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            submitAndWaitQueued(scheduler, "alice", 1, order);
+            submitAndWaitQueued(scheduler, "admin", 4, order);
+        }
+        release.countDown();
+        blocker.get(1, TimeUnit.SECONDS);
+        awaitCondition(() -> order.size() == 8);
+
+        // The admin queue has four times the weight, so all its calls finish within the first five slots
+        assertEquals(4, order.subList(0, 5).stream().filter("admin"::equals).count());
+        assertEquals(4, meterRegistry.get("ai.scheduling.queue.wait").tag("role", ADMIN_USER_ROLE).timer().count());
+    }
+
+    @Test
+    void execute_ShouldRejectWith429WhenUserQueueIsFull() throws Exception {
+        FairInferenceScheduler scheduler = scheduler(1, 2, 5000);
+        CountDownLatch release = new CountDownLatch(1);
+        occupySlot(scheduler, "bob", release);
+        List<String> order = new CopyOnWriteArrayList<>();
+        submitAndWaitQueued(scheduler, "bob", 1, order);
+        submitAndWaitQueued(scheduler, "bob", 1, order);
+
+        AIServiceException exception = assertThrows(AIServiceException.class,
+                () -> scheduler.execute(analysis("bob", 1), () -> "rejected"));
+        submitAndWaitQueued(scheduler, "carol", 1, order);
+        release.countDown();
+        awaitCondition(() -> order.size() == 3);
+
+        assertEquals(429, exception.getStatusCode());
+        assertEquals(1.0, meterRegistry.get("ai.scheduling.rejections").tag("reason", "queue_full").counter().count());
+    }
+
+    @Test
+    void execute_ShouldFailWith503WhenWaitingTooLong() throws Exception {
+        FairInferenceScheduler scheduler = scheduler(1, 20, 50);
+        CountDownLatch release = new CountDownLatch(1);
+        occupySlot(scheduler, "bob", release);
+
+        AIServiceException exception = assertThrows(AIServiceException.class,
+                () -> scheduler.execute(analysis("alice", 1), () -> "late"));
+        release.countDown();
+
+        assertEquals(503, exception.getStatusCode());
+        assertEquals(0, scheduler.getQueued());
+        assertEquals(0, scheduler.getActiveQueues());
+        assertEquals(1.0, meterRegistry.get("ai.scheduling.rejections").tag("reason", "timeout").counter().count());
+    }
+
+    @Test
+    void execute_ShouldQueueBeyondAdaptiveConcurrencyLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 1, 1, 1, 0.9, 2.0, 500, meterRegistry);
+        FairInferenceScheduler scheduler = new FairInferenceScheduler(true, 32, 20, 5000, 4, 1, limiter, meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        occupySlot(scheduler, "bob", release);
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        submitAndWaitQueued(scheduler, "alice", 1, order);
+        assertTrue(order.isEmpty());
+        release.countDown();
+
+        awaitCondition(() -> order.size() == 1);
+    }
+
+    @Test
+    void execute_ShouldCountQueueDepthPerAnalysisNotPerPart() throws Exception {
+        FairInferenceScheduler scheduler = scheduler(1, 1, 5000);
+        CountDownLatch release = new CountDownLatch(1);
+        occupySlot(scheduler, "bob", release);
+        FairInferenceScheduler.Analysis analysis = analysis("bob", 1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            submitAndWaitQueued(scheduler, analysis, "part", order);
+        }
+
+        // Four parts of one image fill a depth of one; a second image of the same login does not fit
+        AIServiceException exception = assertThrows(AIServiceException.class,
+                () -> scheduler.execute(analysis("bob", 1), () -> "rejected"));
+        release.countDown();
+        awaitCondition(() -> order.size() == 4);
+
+        assertEquals(429, exception.getStatusCode());
+        assertEquals(0, scheduler.getActiveQueues());
+    }
+
+    @Test
+    void analysisFor_ShouldUseRoleWeights() {
+        FairInferenceScheduler scheduler = scheduler(1, 20, 5000);
+
+        assertEquals(4, scheduler.analysisFor("admin", userWithRole(ADMIN_USER_ROLE)).getWeight());
+        assertEquals(1, scheduler.analysisFor("alice", userWithRole(DEFAULT_USER_ROLE)).getWeight());
+        assertEquals(1, scheduler.analysisFor("bob", new User()).getWeight());
+    }
+
+    @Test
+    void execute_ShouldTagWaitTimeByRoleEvenWhenWeightsAreEqual() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(false, 20, 1, 200, 0.9, 2.0, 500, meterRegistry);
+        FairInferenceScheduler scheduler = new FairInferenceScheduler(true, 1, 20, 5000, 1, 1, limiter, meterRegistry);
+
+        FairInferenceScheduler.Analysis admin = scheduler.analysisFor("admin", userWithRole(ADMIN_USER_ROLE));
+        scheduler.execute(admin, () -> "done");
+
+        assertEquals(ADMIN_USER_ROLE, admin.getRole());
+        assertEquals(1, meterRegistry.get("ai.scheduling.queue.wait").tag("role", ADMIN_USER_ROLE).timer().count());
+        assertEquals(0, meterRegistry.get("ai.scheduling.queue.wait").tag("role", DEFAULT_USER_ROLE).timer().count());
+    }
+
+    private FairInferenceScheduler scheduler(int maxConcurrent, int maxQueueDepth, long maxWaitMs) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(false, 20, 1, 200, 0.9, 2.0, 500, meterRegistry);
+        return new FairInferenceScheduler(true, maxConcurrent, maxQueueDepth, maxWaitMs, 4, 1, limiter, meterRegistry);
+    }
+
+    private Future<?> occupySlot(FairInferenceScheduler scheduler, String login, CountDownLatch release) throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        Future<?> future = executor.submit(() -> scheduler.execute(analysis(login, 1), () -> {
+            started.countDown();
+            awaitRelease(release);
+            return null;
+        }));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        return future;
+    }
+
+    private void submitAndWaitQueued(FairInferenceScheduler scheduler, String login, int weight, List<String> order)
+            throws Exception {
+        submitAndWaitQueued(scheduler, analysis(login, weight), login, order);
+    }
+
+    private void submitAndWaitQueued(FairInferenceScheduler scheduler, FairInferenceScheduler.Analysis analysis,
+                                     String label, List<String> order) throws Exception {
+        int queued = scheduler.getQueued();
+        executor.submit(() -> scheduler.execute(analysis, () -> order.add(label)));
+        awaitCondition(() -> scheduler.getQueued() == queued + 1);
+    }
+
+    private static FairInferenceScheduler.Analysis analysis(String login, int weight) {
+        return new FairInferenceScheduler.Analysis(login, weight > 1 ? ADMIN_USER_ROLE : DEFAULT_USER_ROLE, weight);
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not reached in time");
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitRelease(CountDownLatch release) {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static User userWithRole(String roleName) {
+        Role role = new Role();
+        role.setName(roleName);
+        User user = new User();
+        user.setRoles(Set.of(role));
+        return user;
+    }
+}
@@ -0,0 +1,189 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameSamplingServiceTest {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void infer_ShouldSendStillGifWhole() throws Exception {
+        ImageBuffer image = gif(1);
+        List<ImageBuffer> calls = new CopyOnWriteArrayList<>();
+
+        service(5, TiledInferenceService.Aggregation.MAX).infer(image, frame -> {
+            calls.add(frame);
+            return new AIModelResponse(0.2, "TestModel", 5L);
+        });
+
+        assertEquals(1, calls.size());
+        assertSame(image, calls.get(0));
+    }
+
+    @Test
+    void infer_ShouldSampleFramesEvenlyUpToBudget() throws Exception {
+        List<Integer> sampledFrames = new CopyOnWriteArrayList<>();
+
+        service(5, TiledInferenceService.Aggregation.MAX).infer(gif(20), frame -> {
+            assertEquals("image/png", frame.getContentType());
+            sampledFrames.add(frameNumber(frame));
+            return new AIModelResponse(0.2, "TestModel", 5L);
+        });
+
+        // 20 frames with a budget of 5 means every 4th frame
+        assertEquals(List.of(0, 4, 8, 12, 16), sampledFrames.stream().sorted().toList());
+    }
+
+    @Test
+    void infer_ShouldAggregateFrameCertainties() throws Exception {
+        TiledInferenceService.TileCall call = frame ->
+                new AIModelResponse(frameNumber(frame) == 2 ? 0.8 : 0.2, "TestModel", 5L);
+
+        AIModelResponse max = service(4, TiledInferenceService.Aggregation.MAX).infer(gif(4), call);
+        AIModelResponse mean = service(4, TiledInferenceService.Aggregation.MEAN).infer(gif(4), call);
+
+        assertEquals(0.8, max.getCertainty(), 1e-9);
+        assertEquals(0.35, mean.getCertainty(), 1e-9);
+        assertEquals("TestModel", max.getModelUsed());
+    }
+
+    @Test
+    void infer_ShouldStopReadingFramesAfterFailure() throws Exception {
+        FrameSamplingService service = new FrameSamplingService(true, 50, 1, 1000, 1,
+                TiledInferenceService.Aggregation.MAX, validation(40_000_000L), executor, meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+
+        AIServiceException exception = assertThrows(AIServiceException.class, () ->
+                service.infer(gif(30), frame -> {
+                    calls.incrementAndGet();
+                    throw new AIServiceException("AI service unavailable", 503);
+                }));
+
+        assertEquals(503, exception.getStatusCode());
+        assertTrue(calls.get() < 30, "remaining frames should not be analyzed after a failure");
+    }
+
+    @Test
+    void infer_ShouldSendNonGifUnchanged() throws Exception {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB), "png", png);
+        ImageBuffer image = ImageBuffer.wrap(png.toByteArray(), "still.png", "image/png");
+        AtomicInteger calls = new AtomicInteger();
+
+        service(5, TiledInferenceService.Aggregation.MAX).infer(image, frame -> {
+            assertSame(image, frame);
+            calls.incrementAndGet();
+            return new AIModelResponse(0.2, "TestModel", 5L);
+        });
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void infer_ShouldRejectLaterFrameOverPixelBudget() throws Exception {
+        FrameSamplingService service = new FrameSamplingService(true, 50, 1, 1000, 1,
+                TiledInferenceService.Aggregation.MAX, validation(1_000L), executor, meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+
+        // The 16x16 first frame is within budget; the 64x64 third frame is not and must not be decoded
+        assertThrows(IllegalArgumentException.class, () -> service.infer(gif(16, 16, 64), frame -> {
+            calls.incrementAndGet();
+            return new AIModelResponse(0.2, "TestModel", 5L);
+        }));
+
+        assertTrue(calls.get() <= 2);
+        assertEquals(1.0, meterRegistry.get("image.validation.rejections").tag("reason", "pixel_budget").counter().count());
+    }
+
+    @Test
+    void infer_ShouldRejectLaterFrameLargerThanCanvas() {
+        FrameSamplingService service = service(5, TiledInferenceService.Aggregation.MAX);
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () ->
+                service.infer(gif(16, 64), frame -> new AIModelResponse(0.2, "TestModel", 5L)));
+
+        assertEquals("Image frame 1 is larger than the image", exception.getMessage());
+        assertEquals(1.0, meterRegistry.get("image.validation.rejections").tag("reason", "frame_size").counter().count());
+    }
+
+    private FrameSamplingService service(int maxFrames, TiledInferenceService.Aggregation aggregation) {
+        return new FrameSamplingService(true, maxFrames, 1, 1000, 2, aggregation, validation(40_000_000L), executor,
+                meterRegistry);
+    }
+
+    private ImageValidationService validation(long maxPixels) {
+        return new ImageValidationService(maxPixels, DataSize.ofMegabytes(256), meterRegistry);
+    }
+
+    private static ImageBuffer gif(int frames) throws IOException {
+        int[] sizes = new int[frames];
+        Arrays.fill(sizes, 16);
+        return gif(sizes);
+    }
+
+    // Frame i is filled with red level i * 8, so a sample can be traced back to its frame
+    private static ImageBuffer gif(int... sizes) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            writer.prepareWriteSequence(null);
+            for (int i = 0; i < sizes.length; i++) {
+                int size = sizes[i];
+                BufferedImage frame = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+                int rgb = new Color(i * 8, 0, 0).getRGB();
+                for (int y = 0; y < size; y++) {
+                    for (int x = 0; x < size; x++) {
+                        frame.setRGB(x, y, rgb);
+                    }
+                }
+                writer.writeToSequence(new IIOImage(frame, null, null), null);
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+        return ImageBuffer.wrap(out.toByteArray(), "animated.gif", "image/gif");
+    }
+
+    private static int frameNumber(ImageBuffer frame) throws AIServiceException {
+        try {
+            BufferedImage decoded = ImageIO.read(frame.newInputStream());
+            return Math.round(new Color(decoded.getRGB(8, 8)).getRed() / 8f);
+        } catch (IOException e) {
+            throw new AIServiceException("Unreadable frame", e);
+        }
+    }
+}
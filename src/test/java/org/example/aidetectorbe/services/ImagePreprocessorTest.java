@@ -0,0 +1,142 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImagePreprocessorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ImagePreprocessor preprocessor = new ImagePreprocessor(true, 512, 0.9f, 2, 16, 1, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        preprocessor.shutdown();
+    }
+
+    @Test
+    void prepare_ShouldDownscaleLargeJpegKeepingAspectRatio() throws Exception {
+        ImageBuffer image = encode(photo(2400, 1600), "jpeg", "large.jpg", "image/jpeg");
+
+        ImageBuffer prepared = preprocessor.prepare(image);
+
+        assertNotSame(image, prepared);
+        BufferedImage decoded = ImageIO.read(prepared.newInputStream());
+        assertEquals(512, decoded.getWidth());
+        assertEquals(341, decoded.getHeight());
+        assertEquals("image/jpeg", prepared.getContentType());
+        assertEquals("large.jpg", prepared.getFilename());
+        assertTrue(prepared.size() < image.size());
+        assertEquals(1, meterRegistry.get("ai.preprocessing.time").timer().count());
+        assertTrue(meterRegistry.get("ai.preprocessing.bytes.saved").summary().totalAmount() > 0);
+        assertEquals(1, image.refCount());
+    }
+
+    @Test
+    void prepare_ShouldReencodeNonJpegAsPng() throws Exception {
+        ImageBuffer image = encode(photo(1200, 1200), "bmp", "large.bmp", "image/bmp");
+
+        ImageBuffer prepared = preprocessor.prepare(image);
+
+        BufferedImage decoded = ImageIO.read(prepared.newInputStream());
+        assertEquals(512, decoded.getWidth());
+        assertEquals("image/png", prepared.getContentType());
+    }
+
+    @Test
+    void prepare_ShouldReturnSmallImageWithExtraReference() throws Exception {
+        ImageBuffer image = encode(photo(300, 200), "png", "small.png", "image/png");
+
+        ImageBuffer prepared = preprocessor.prepare(image);
+
+        assertSame(image, prepared);
+        assertEquals(2, image.refCount());
+        prepared.release();
+        assertEquals(1, image.refCount());
+        assertEquals(1.0, meterRegistry.get("ai.preprocessing.skipped").tag("reason", "small").counter().count());
+    }
+
+    @Test
+    void prepare_ShouldSendUnrecognizedContentUnchanged() {
+        ImageBuffer image = ImageBuffer.wrap("hello".getBytes(), "test.jpg", "image/jpeg");
+
+        ImageBuffer prepared = preprocessor.prepare(image);
+
+        assertSame(image, prepared);
+        assertEquals(1.0, meterRegistry.get("ai.preprocessing.skipped").tag("reason", "unsupported").counter().count());
+    }
+
+    @Test
+    void prepare_ShouldSkipWhenDisabled() throws Exception {
+        ImagePreprocessor disabled = new ImagePreprocessor(false, 512, 0.9f, 1, 16, 1, new SimpleMeterRegistry());
+        ImageBuffer image = encode(photo(2400, 1600), "jpeg", "large.jpg", "image/jpeg");
+
+        try {
+            assertSame(image, disabled.prepare(image));
+        } finally {
+            disabled.shutdown();
+        }
+    }
+
+    @Test
+    void prepareInBackground_ShouldTakeOnlyItsShareOfThePool() throws Exception {
+        // One thread and one queue slot: unbounded submissions from four callers would find the pool busy
+        ImagePreprocessor shared = new ImagePreprocessor(true, 512, 0.9f, 1, 1, 1, meterRegistry);
+        ImageBuffer image = encode(photo(2400, 1600), "jpeg", "large.jpg", "image/jpeg");
+        ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+
+        try {
+            List<Future<ImageBuffer>> prepared = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                prepared.add(callers.submit(() -> shared.prepareInBackground(image)));
+            }
+            for (Future<ImageBuffer> result : prepared) {
+                assertNotSame(image, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+            shared.shutdown();
+        }
+        assertEquals(4, meterRegistry.get("ai.preprocessing.time").timer().count());
+        assertEquals(1, image.refCount());
+    }
+
+    private static BufferedImage photo(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            for (int y = 0; y < height; y += 40) {
+                graphics.setColor(new Color((y * 7) % 256, (y * 13) % 256, (y * 29) % 256));
+                graphics.fillRect(0, y, width, 40);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    private static ImageBuffer encode(BufferedImage image, String format, String filename, String contentType) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return ImageBuffer.wrap(out.toByteArray(), filename, contentType);
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.dto.ImageMetadata;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ImageValidationServiceTest {
+
+    private ImageValidationService validationService;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        validationService = new ImageValidationService(500_000_000L, DataSize.ofGigabytes(2), meterRegistry);
+    }
+
+    @Test
+    void validate_ShouldReadFormatAndDimensionsOfJpeg() throws Exception {
+        ImageMetadata metadata = validationService.validate(buffer(encode(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "jpg")));
+
+        assertEquals("jpeg", metadata.getFormat());
+        assertEquals(40, metadata.getWidth());
+        assertEquals(30, metadata.getHeight());
+    }
+
+    @Test
+    void validate_ShouldOnlyParseHeaderWithoutDecodingPixels() throws Exception {
+        // header announces a 20000x20000 image but carries no pixel data at all
+        ImageMetadata metadata = validationService.validate(buffer(pngHeader(20000, 20000)));
+
+        assertEquals("png", metadata.getFormat());
+        assertEquals(20000, metadata.getWidth());
+        assertEquals(20000, metadata.getHeight());
+    }
+
+    @Test
+    void validate_ShouldRejectImagesAbovePixelBudgetFromHeaderAlone() throws Exception {
+        validationService = new ImageValidationService(25_000_000L, DataSize.ofGigabytes(2), meterRegistry);
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> validationService.validate(buffer(pngHeader(50000, 50000))));
+
+        assertEquals("Image dimensions too large. Maximum allowed is 25000000 pixels", exception.getMessage());
+        assertEquals(1.0, meterRegistry.get("image.validation.rejections").tag("reason", "pixel_budget").counter().count());
+    }
+
+    @Test
+    void validate_ShouldRejectImagesAboveDecodedMemoryBudget() throws Exception {
+        // 4000x4000 RGB needs 48MB decoded
+        validationService = new ImageValidationService(25_000_000L, DataSize.ofMegabytes(32), meterRegistry);
+
+        assertThrows(IllegalArgumentException.class, () -> validationService.validate(buffer(pngHeader(4000, 4000))));
+        assertEquals(1.0, meterRegistry.get("image.validation.rejections").tag("reason", "memory_budget").counter().count());
+    }
+
+    @Test
+    void validate_ShouldRejectUnknownMagicBytes() throws Exception {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> validationService.validate(buffer("hello".getBytes())));
+
+        assertEquals("Provided file was not an image", exception.getMessage());
+    }
+
+    @Test
+    void validate_ShouldRejectTruncatedHeader() throws Exception {
+        byte[] truncated = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0x00};
+
+        assertThrows(IllegalArgumentException.class, () -> validationService.validate(buffer(truncated)));
+    }
+
+    @Test
+    void detectFormat_ShouldRecognizeSupportedSignatures() {
+        assertEquals("gif", ImageValidationService.detectFormat(ByteBuffer.wrap("GIF89a....".getBytes())));
+        assertEquals("bmp", ImageValidationService.detectFormat(ByteBuffer.wrap("BM........".getBytes())));
+        assertEquals("tiff", ImageValidationService.detectFormat(ByteBuffer.wrap(new byte[]{'I', 'I', 0x2A, 0x00})));
+        assertEquals("webp", ImageValidationService.detectFormat(ByteBuffer.wrap("RIFF....WEBPVP8 ".getBytes())));
+    }
+
+    static ImageBuffer buffer(byte[] content) throws Exception {
+        return ImageBuffer.read(new MockMultipartFile("image", "test", "image/png", content), Long.MAX_VALUE);
+    }
+
+    static byte[] encode(BufferedImage image, String format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    static byte[] pngHeader(int width, int height) {
+        ByteBuffer ihdr = ByteBuffer.allocate(17);
+        ihdr.put("IHDR".getBytes()).putInt(width).putInt(height)
+                .put((byte) 8).put((byte) 2).put((byte) 0).put((byte) 0).put((byte) 0);
+        CRC32 crc = new CRC32();
+        crc.update(ihdr.array());
+
+        ByteBuffer png = ByteBuffer.allocate(8 + 4 + 17 + 4);
+        png.put(new byte[]{(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A})
+                .putInt(13)
+                .put(ihdr.array())
+                .putInt((int) crc.getValue());
+        return png.array();
+    }
+}
@@ -0,0 +1,207 @@
+package org.example.aidetectorbe.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.TestUtils;
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Runs the batching stage against a local stub model server. The stub answers each image with a
+ * certainty derived from its file name ("42.jpg" scores 0.42), so misrouted results are detectable.
+ */
+class InferenceBatcherTest {
+
+    private static final Pattern FILENAME = Pattern.compile("filename=\"(\\d+)\\.jpg\"");
+
+    private HttpServer stubServer;
+    private final AtomicInteger singleRequests = new AtomicInteger();
+    private final AtomicInteger batchRequests = new AtomicInteger();
+    private volatile int batchStatus = 200;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ExecutorService callers;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stubServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stubServer.createContext("/verify/image", exchange -> {
+            singleRequests.incrementAndGet();
+            List<String> scores = scores(exchange);
+            respond(exchange, 200, "{\"certainty\": " + scores.getFirst() + "}");
+        });
+        stubServer.createContext("/verify/images", exchange -> {
+            batchRequests.incrementAndGet();
+            List<String> scores = scores(exchange);
+            if (batchStatus != 200) {
+                respond(exchange, batchStatus, "{\"detail\": \"Batch rejected\"}");
+                return;
+            }
+            List<String> results = scores.stream().map(score -> "{\"certainty\": " + score + "}").toList();
+            respond(exchange, 200, "{\"results\": [" + String.join(",", results) + "]}");
+        });
+        stubServer.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        stubServer.start();
+
+        meterRegistry = new SimpleMeterRegistry();
+        callers = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        stubServer.stop(0);
+    }
+
+    @Test
+    void processImage_ShouldSendConcurrentImagesAsBatches() throws Exception {
+        AIModelServiceImpl service = service(new InferenceBatcher(true, 4, 1000, true, meterRegistry));
+
+        List<AIModelResponse> responses = analyzeConcurrently(service, 8);
+
+        for (int i = 0; i < responses.size(); i++) {
+            assertEquals(0.10 + i / 100.0, responses.get(i).getCertainty(), 0.0001);
+            assertEquals("TestModel", responses.get(i).getModelUsed());
+        }
+        assertEquals(2, batchRequests.get());
+        assertEquals(0, singleRequests.get());
+        assertEquals(4.0, meterRegistry.get("ai.inference.batch.size").summary().mean(), 0.0001);
+    }
+
+    @Test
+    void processImage_ShouldFlushPartialBatchAfterLinger() throws Exception {
+        AIModelServiceImpl service = service(new InferenceBatcher(true, 4, 20, true, meterRegistry));
+
+        AIModelResponse response = service.processImage(image(37));
+
+        assertEquals(0.37, response.getCertainty(), 0.0001);
+        assertEquals(1, singleRequests.get());
+        assertEquals(0, batchRequests.get());
+    }
+
+    @Test
+    void processImage_ShouldFallBackToSingleCallsWhenBatchIsTooLarge() throws Exception {
+        batchStatus = 413;
+        AIModelServiceImpl service = service(new InferenceBatcher(true, 4, 1000, true, meterRegistry));
+
+        List<AIModelResponse> responses = analyzeConcurrently(service, 4);
+
+        for (int i = 0; i < responses.size(); i++) {
+            assertEquals(0.10 + i / 100.0, responses.get(i).getCertainty(), 0.0001);
+        }
+        assertEquals(1, batchRequests.get());
+        assertEquals(4, singleRequests.get());
+        assertEquals(1.0, meterRegistry.get("ai.inference.batch.fallbacks").counter().count());
+    }
+
+    @Test
+    void processImage_ShouldPropagateServerErrorsWithoutFallingBack() throws Exception {
+        batchStatus = 500;
+        AIModelServiceImpl service = service(new InferenceBatcher(true, 2, 1000, true, meterRegistry));
+
+        Future<AIModelResponse> first = callers.submit(() -> service.processImage(image(10)));
+        AIServiceException exception = assertThrows(AIServiceException.class, () -> service.processImage(image(11)));
+
+        assertEquals(500, exception.getStatusCode());
+        assertThrows(Exception.class, () -> first.get(1, TimeUnit.SECONDS));
+        assertEquals(0, singleRequests.get());
+        assertEquals(0.0, meterRegistry.get("ai.inference.batch.fallbacks").counter().count());
+    }
+
+    @Test
+    void processImage_ShouldPropagateBatchFailureWhenFallbackDisabled() throws Exception {
+        batchStatus = 413;
+        AIModelServiceImpl service = service(new InferenceBatcher(true, 2, 1000, false, meterRegistry));
+
+        Future<AIModelResponse> first = callers.submit(() -> service.processImage(image(10)));
+        AIServiceException exception = assertThrows(AIServiceException.class, () -> service.processImage(image(11)));
+
+        assertEquals(413, exception.getStatusCode());
+        assertThrows(Exception.class, () -> first.get(1, TimeUnit.SECONDS));
+        assertEquals(0, singleRequests.get());
+    }
+
+    private List<AIModelResponse> analyzeConcurrently(AIModelServiceImpl service, int count) throws Exception {
+        List<Future<AIModelResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int score = 10 + i;
+            futures.add(callers.submit(() -> {
+                try (ImageBuffer image = image(score)) {
+                    return service.processImage(image);
+                }
+            }));
+        }
+        List<AIModelResponse> responses = new ArrayList<>();
+        for (Future<AIModelResponse> future : futures) {
+            responses.add(future.get(5, TimeUnit.SECONDS));
+        }
+        return responses;
+    }
+
+    private AIModelServiceImpl service(InferenceBatcher batcher) {
+        RestTemplate restTemplate = new RestTemplate();
+        ModelReplicaPool replicaPool = new ModelReplicaPool(List.of("http://localhost:" + stubServer.getAddress().getPort()),
+                "least-outstanding", 0.3, 3, meterRegistry);
+        AIModelServiceImpl service = new AIModelServiceImpl(restTemplate, new ObjectMapper(),
+                Executors.newVirtualThreadPerTaskExecutor(), batcher,
+                new AIServiceGuard(50, 100, Duration.ofSeconds(10), 20, 10, Duration.ofSeconds(30), 3, 32, Duration.ZERO, meterRegistry),
+                replicaPool, new RequestHedger(false, 0.95, 0.05, Duration.ofMillis(50), 1000, 20, meterRegistry),
+                new AIServiceHealthProber(replicaPool, restTemplate, event -> { }, Duration.ofSeconds(2), 2, true, meterRegistry),
+                new AdaptiveConcurrencyLimiter(true, 20, 1, 200, 0.9, 2.0, 500, meterRegistry),
+                new ImagePreprocessor(false, 1024, 0.92f, 1, 16, 1, meterRegistry));
+        TestUtils.setPrivateField(service, "aiServiceEndpoint", "/verify/image");
+        TestUtils.setPrivateField(service, "aiServiceFileField", "file");
+        TestUtils.setPrivateField(service, "aiServiceBatchEndpoint", "/verify/images");
+        TestUtils.setPrivateField(service, "aiServiceBatchFileField", "files");
+        TestUtils.setPrivateField(service, "batchMaxWaitMs", 5000L);
+        TestUtils.setPrivateField(service, "modelName", "TestModel");
+        return service;
+    }
+
+    private static ImageBuffer image(int score) throws IOException {
+        return ImageBuffer.read(new MockMultipartFile("image", score + ".jpg", "image/jpeg", new byte[]{1, 2, 3}), Long.MAX_VALUE);
+    }
+
+    private static List<String> scores(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.ISO_8859_1);
+        List<String> scores = new ArrayList<>();
+        Matcher matcher = FILENAME.matcher(body);
+        while (matcher.find()) {
+            scores.add(String.valueOf(Integer.parseInt(matcher.group(1)) / 100.0));
+        }
+        return scores;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+}
@@ -0,0 +1,204 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.exceptions.SchedulingRejectedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InferenceCoalescerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private InferenceCoalescer coalescer;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new InferenceCoalescer(true, 2000, 0, 0, 0, meterRegistry);
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void execute_ShouldCallAiServiceOnceForConcurrentIdenticalRequests() throws Exception {
+        UUID photoId = UUID.randomUUID();
+        AIModelResponse response = new AIModelResponse(0.9, "TestModel", 10L);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<AIModelResponse> leader = executor.submit(() -> coalescer.execute(photoId, "TestModel", () -> {
+            calls.incrementAndGet();
+            leaderStarted.countDown();
+            awaitRelease(release);
+            return response;
+        }));
+        assertTrue(leaderStarted.await(1, TimeUnit.SECONDS));
+
+        List<Future<AIModelResponse>> followers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            followers.add(executor.submit(() -> coalescer.execute(photoId, "TestModel", () -> {
+                calls.incrementAndGet();
+                return response;
+            })));
+        }
+        waitForJoined(5);
+        release.countDown();
+
+        assertSame(response, leader.get(1, TimeUnit.SECONDS));
+        for (Future<AIModelResponse> follower : followers) {
+            assertSame(response, follower.get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void execute_ShouldPropagateLeaderFailureToFollowers() throws Exception {
+        UUID photoId = UUID.randomUUID();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<AIModelResponse> leader = executor.submit(() -> coalescer.execute(photoId, "TestModel", () -> {
+            leaderStarted.countDown();
+            awaitRelease(release);
+            throw new AIServiceException("AI down", 503);
+        }));
+        assertTrue(leaderStarted.await(1, TimeUnit.SECONDS));
+        Future<AIModelResponse> follower = executor.submit(() -> coalescer.execute(photoId, "TestModel", () -> null));
+        waitForJoined(1);
+        release.countDown();
+
+        ExecutionException leaderFailure = assertThrows(ExecutionException.class, () -> leader.get(1, TimeUnit.SECONDS));
+        ExecutionException followerFailure = assertThrows(ExecutionException.class, () -> follower.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(AIServiceException.class, leaderFailure.getCause());
+        AIServiceException propagated = assertInstanceOf(AIServiceException.class, followerFailure.getCause());
+        assertEquals(503, propagated.getStatusCode());
+    }
+
+    @Test
+    void execute_ShouldRetryInsteadOfInheritingLeadersSchedulingRejection() throws Exception {
+        UUID photoId = UUID.randomUUID();
+        AIModelResponse response = new AIModelResponse(0.4, "TestModel", 10L);
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<AIModelResponse> leader = executor.submit(() -> coalescer.execute(photoId, "TestModel", () -> {
+            leaderStarted.countDown();
+            awaitRelease(release);
+            throw new SchedulingRejectedException("Too many pending analyses for this user. Please retry shortly.", 429);
+        }));
+        assertTrue(leaderStarted.await(1, TimeUnit.SECONDS));
+        Future<AIModelResponse> follower = executor.submit(() -> coalescer.execute(photoId, "TestModel", () -> response));
+        waitForJoined(1);
+        release.countDown();
+
+        ExecutionException leaderFailure = assertThrows(ExecutionException.class, () -> leader.get(1, TimeUnit.SECONDS));
+        assertEquals(429, assertInstanceOf(AIServiceException.class, leaderFailure.getCause()).getStatusCode());
+        // The follower's own call runs once the rejected leader is gone
+        assertSame(response, follower.get(1, TimeUnit.SECONDS));
+        assertEquals(1.0, meterRegistry.get("ai.inference.coalesced").tag("outcome", "retried").counter().count());
+    }
+
+    @Test
+    void execute_ShouldStopWaitingForLeaderAfterMaxWait() throws Exception {
+        coalescer = new InferenceCoalescer(true, 50, 0, 0, 0, meterRegistry);
+        UUID photoId = UUID.randomUUID();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        executor.submit(() -> coalescer.execute(photoId, "TestModel", () -> {
+            leaderStarted.countDown();
+            awaitRelease(release);
+            return null;
+        }));
+        assertTrue(leaderStarted.await(1, TimeUnit.SECONDS));
+
+        AIServiceException exception = assertThrows(AIServiceException.class,
+                () -> coalescer.execute(photoId, "TestModel", () -> null));
+        release.countDown();
+
+        assertEquals(504, exception.getStatusCode());
+    }
+
+    @Test
+    void execute_ShouldPropagateLeaderErrorToFollowers() throws Exception {
+        UUID photoId = UUID.randomUUID();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<AIModelResponse> leader = executor.submit(() -> coalescer.execute(photoId, "TestModel", () -> {
+            leaderStarted.countDown();
+            awaitRelease(release);
+            throw new OutOfMemoryError("Java heap space");
+        }));
+        assertTrue(leaderStarted.await(1, TimeUnit.SECONDS));
+        Future<AIModelResponse> follower = executor.submit(() -> coalescer.execute(photoId, "TestModel", () -> null));
+        waitForJoined(1);
+        release.countDown();
+
+        assertInstanceOf(OutOfMemoryError.class,
+                assertThrows(ExecutionException.class, () -> leader.get(1, TimeUnit.SECONDS)).getCause());
+        // Well before the 2s max-wait, so the follower did not wait it out
+        ExecutionException followerFailure = assertThrows(ExecutionException.class, () -> follower.get(1, TimeUnit.SECONDS));
+        assertEquals(500, assertInstanceOf(AIServiceException.class, followerFailure.getCause()).getStatusCode());
+    }
+
+    @Test
+    void constructor_ShouldDefaultMaxWaitToLeadersWorstCase() {
+        InferenceCoalescer derived = new InferenceCoalescer(true, 0, 30_000, 2_000, 30_000, meterRegistry);
+
+        assertEquals(62_000, derived.getMaxWaitMs());
+        assertEquals(2_000, coalescer.getMaxWaitMs());
+    }
+
+    @Test
+    void execute_ShouldNotCoalesceDifferentImages() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        coalescer.execute(UUID.randomUUID(), "TestModel", () -> new AIModelResponse((double) calls.incrementAndGet(), "TestModel", 1L));
+        coalescer.execute(UUID.randomUUID(), "TestModel", () -> new AIModelResponse((double) calls.incrementAndGet(), "TestModel", 1L));
+
+        assertEquals(2, calls.get());
+    }
+
+    private static void awaitRelease(CountDownLatch release) {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void waitForJoined(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (meterRegistry.get("ai.inference.coalesced").tag("outcome", "joined").counter().count() < expected
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
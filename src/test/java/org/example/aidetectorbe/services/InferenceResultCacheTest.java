@@ -0,0 +1,67 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class InferenceResultCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private InferenceResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new InferenceResultCache(true, 2, Duration.ofMinutes(5), meterRegistry);
+    }
+
+    @Test
+    void get_ShouldReturnCachedResponseAndRecordHitsAndMisses() {
+        UUID photoId = UUID.randomUUID();
+        AIModelResponse response = new AIModelResponse(0.7, "TestModel", 50L);
+
+        assertNull(cache.get(photoId, "TestModel"));
+        cache.put(photoId, "TestModel", response);
+
+        assertEquals(response, cache.get(photoId, "TestModel"));
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "ai.inference.results").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "ai.inference.results").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void get_ShouldKeepResultsOfEachModelApart() {
+        UUID photoId = UUID.randomUUID();
+        AIModelResponse response = new AIModelResponse(0.7, "ModelA", 50L);
+        cache.put(photoId, "ModelA", response);
+
+        assertNull(cache.get(photoId, "ModelB"));
+        assertEquals(response, cache.get(photoId, "ModelA"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void put_ShouldStayWithinMaximumSize() {
+        for (int i = 0; i < 10; i++) {
+            cache.put(UUID.randomUUID(), "TestModel", new AIModelResponse(0.5, "TestModel", 1L));
+        }
+
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void put_ShouldIgnoreResponsesWhenDisabled() {
+        cache = new InferenceResultCache(false, 2, Duration.ofMinutes(5), meterRegistry);
+        UUID photoId = UUID.randomUUID();
+
+        cache.put(photoId, "TestModel", new AIModelResponse(0.5, "TestModel", 1L));
+
+        assertNull(cache.get(photoId, "TestModel"));
+    }
+}
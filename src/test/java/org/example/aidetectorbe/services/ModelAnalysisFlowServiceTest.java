@@ -5,20 +5,36 @@ import org.example.aidetectorbe.entities.ModelResult;
 import org.example.aidetectorbe.entities.User;
 import org.example.aidetectorbe.repository.ModelResultRepository;
 import org.example.aidetectorbe.repository.UserRepository;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.util.unit.DataSize;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.Base64;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -28,6 +44,7 @@ class ModelAnalysisFlowServiceTest {
     private UserRepository userRepository;
     private ModelResultRepository modelResultRepository;
     private PhotoStorageService photoStorageService;
+    private InferenceResultCache inferenceResultCache;
     private ModelAnalysisFlowService flowService;
 
     @BeforeEach
@@ -36,13 +53,99 @@ class ModelAnalysisFlowServiceTest {
         userRepository = mock(UserRepository.class);
         modelResultRepository = mock(ModelResultRepository.class);
         photoStorageService = mock(PhotoStorageService.class);
+        inferenceResultCache = new InferenceResultCache(true, 100, Duration.ofMinutes(5), new SimpleMeterRegistry());
 
-        flowService = new ModelAnalysisFlowService(
+        flowService = createFlowService(List.of());
+    }
+
+    private ModelAnalysisFlowService createFlowService(List<String> ensembleModels) {
+        return createFlowService(ensembleModels,
+                shadowTrafficService(false, 0));
+    }
+
+    private ShadowTrafficService shadowTrafficService(boolean enabled, double percentage) {
+        return new ShadowTrafficService(enabled, "http://candidate:8000", "candidate", percentage, 1, 4, aiModelService,
+                new FrameSamplingService(true, 8, 1, 1000, 4, TiledInferenceService.Aggregation.MAX,
+                        new ImageValidationService(40_000_000L, DataSize.ofMegabytes(256), new SimpleMeterRegistry()),
+                        Executors.newVirtualThreadPerTaskExecutor(), new SimpleMeterRegistry()),
+                new TiledInferenceService(true, 1024, 128, 2048, 4, TiledInferenceService.Aggregation.MAX,
+                        Executors.newVirtualThreadPerTaskExecutor(), new SimpleMeterRegistry()),
+                new SimpleMeterRegistry());
+    }
+
+    private ModelAnalysisFlowService createFlowService(List<String> ensembleModels, ShadowTrafficService shadowTrafficService) {
+        return new ModelAnalysisFlowService(
                 aiModelService,
                 userRepository,
                 modelResultRepository,
                 photoStorageService,
-                DataSize.ofMegabytes(5));
+                new ImageValidationService(40_000_000L, DataSize.ofMegabytes(256), new SimpleMeterRegistry()),
+                inferenceResultCache,
+                new InferenceCoalescer(true, 1000, 0, 0, 0, new SimpleMeterRegistry()),
+                new FairInferenceScheduler(false, 32, 20, 1000, 4, 1,
+                        new AdaptiveConcurrencyLimiter(false, 20, 1, 200, 0.9, 2.0, 500, new SimpleMeterRegistry()),
+                        new SimpleMeterRegistry()),
+                new TiledInferenceService(true, 1024, 128, 2048, 4, TiledInferenceService.Aggregation.MAX,
+                        Executors.newVirtualThreadPerTaskExecutor(), new SimpleMeterRegistry()),
+                new FrameSamplingService(true, 8, 1, 1000, 4, TiledInferenceService.Aggregation.MAX,
+                        new ImageValidationService(40_000_000L, DataSize.ofMegabytes(256), new SimpleMeterRegistry()),
+                        Executors.newVirtualThreadPerTaskExecutor(), new SimpleMeterRegistry()),
+                new EnsembleInferenceService(!ensembleModels.isEmpty(), ensembleModels, "TestModel", "ensemble",
+                        TiledInferenceService.Aggregation.MEAN, 0.9, 2,
+                        Executors.newVirtualThreadPerTaskExecutor(), new SimpleMeterRegistry()),
+                shadowTrafficService,
+                Executors.newVirtualThreadPerTaskExecutor(),
+                DataSize.ofMegabytes(5),
+                DataSize.ofMegabytes(1));
+    }
+
+    @Test
+    void analyzeAndStore_WithEnsemble_ShouldStoreOneResultPerModelAndReturnVerdict() throws Exception {
+        ModelAnalysisFlowService ensembleFlow = createFlowService(List.of("vit=http://vit:8000"));
+        MockMultipartFile image = new MockMultipartFile("image", "test.png", "image/png", validPngBytes());
+        UUID photoId = UUID.randomUUID();
+        User user = new User();
+        user.setId(UUID.randomUUID());
+
+        when(aiModelService.getModelName()).thenReturn("TestModel");
+        when(aiModelService.processImage(any(ImageBuffer.class))).thenReturn(new AIModelResponse(0.9, "TestModel", 10L));
+        when(aiModelService.processImage(any(ImageBuffer.class), org.mockito.ArgumentMatchers.eq("vit"),
+                org.mockito.ArgumentMatchers.eq("http://vit:8000"))).thenReturn(new AIModelResponse(0.7, "vit", 12L));
+        when(userRepository.findByLogin("testUser")).thenReturn(Optional.of(user));
+        when(photoStorageService.storeAndGetPhotoId(any(ImageBuffer.class))).thenReturn(photoId);
+
+        AIModelResponse response = ensembleFlow.analyzeAndStore(image, "testUser");
+
+        assertEquals("ensemble", response.getModelUsed());
+        assertEquals(0.8, response.getCertainty(), 1e-9);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ModelResult>> saved = ArgumentCaptor.forClass(List.class);
+        verify(modelResultRepository).saveAll(saved.capture());
+        assertEquals(List.of("TestModel", "vit"), saved.getValue().stream().map(ModelResult::getModel).sorted().toList());
+        assertTrue(saved.getValue().stream().allMatch(result -> photoId.equals(result.getPhotoId())));
+    }
+
+    @Test
+    void analyzeAndStore_WithShadowTraffic_ShouldReturnPrimaryResponseAndMirrorToCandidate() throws Exception {
+        ModelAnalysisFlowService shadowFlow = createFlowService(List.of(), shadowTrafficService(true, 100));
+        MockMultipartFile image = new MockMultipartFile("image", "test.png", "image/png", validPngBytes());
+        User user = new User();
+        user.setId(UUID.randomUUID());
+
+        when(aiModelService.getModelName()).thenReturn("TestModel");
+        when(aiModelService.processImage(any(ImageBuffer.class))).thenReturn(new AIModelResponse(0.9, "TestModel", 10L));
+        when(aiModelService.processBackgroundImage(any(ImageBuffer.class), org.mockito.ArgumentMatchers.eq("candidate"),
+                org.mockito.ArgumentMatchers.eq("http://candidate:8000"))).thenReturn(new AIModelResponse(0.2, "candidate", 12L));
+        when(userRepository.findByLogin("testUser")).thenReturn(Optional.of(user));
+        when(photoStorageService.storeAndGetPhotoId(any(ImageBuffer.class))).thenReturn(UUID.randomUUID());
+
+        AIModelResponse response = shadowFlow.analyzeAndStore(image, "testUser");
+
+        assertEquals("TestModel", response.getModelUsed());
+        assertEquals(0.9, response.getCertainty(), 1e-9);
+        verify(modelResultRepository).save(any(ModelResult.class));
+        verify(aiModelService, timeout(1000)).processBackgroundImage(any(ImageBuffer.class),
+                org.mockito.ArgumentMatchers.eq("candidate"), org.mockito.ArgumentMatchers.eq("http://candidate:8000"));
     }
 
     @Test
@@ -55,9 +158,9 @@ class ModelAnalysisFlowServiceTest {
         User user = new User();
         user.setId(userId);
 
-        when(aiModelService.processImage(image)).thenReturn(aiResponse);
+        when(aiModelService.processImage(any(ImageBuffer.class))).thenReturn(aiResponse);
         when(userRepository.findByLogin("testUser")).thenReturn(Optional.of(user));
-        when(photoStorageService.storeAndGetPhotoId(image)).thenReturn(photoId);
+        when(photoStorageService.storeAndGetPhotoId(any(ImageBuffer.class))).thenReturn(photoId);
 
         AIModelResponse result = flowService.analyzeAndStore(image, "testUser");
 
@@ -85,9 +188,9 @@ class ModelAnalysisFlowServiceTest {
         User user = new User();
         user.setId(userId);
 
-        when(aiModelService.processImage(image)).thenReturn(aiResponse);
+        when(aiModelService.processImage(any(ImageBuffer.class))).thenReturn(aiResponse);
         when(userRepository.findByLogin("testUser")).thenReturn(Optional.of(user));
-        when(photoStorageService.storeAndGetPhotoId(image)).thenReturn(photoId);
+        when(photoStorageService.storeAndGetPhotoId(any(ImageBuffer.class))).thenReturn(photoId);
 
         flowService.analyzeAndStore(image, "testUser");
 
@@ -95,6 +198,118 @@ class ModelAnalysisFlowServiceTest {
                 saved.getChance().compareTo(new BigDecimal("91.00")) == 0));
     }
 
+    @Test
+    void analyzeAndStore_ShouldReadUploadOnceAndShareBufferAcrossStages() throws Exception {
+        MockMultipartFile image = spy(new MockMultipartFile("image", "test.png", "image/png", validPngBytes()));
+        User user = new User();
+        user.setId(UUID.randomUUID());
+
+        when(aiModelService.processImage(any(ImageBuffer.class))).thenReturn(new AIModelResponse(0.5, "TestModel", 10L));
+        when(userRepository.findByLogin("testUser")).thenReturn(Optional.of(user));
+        when(photoStorageService.storeAndGetPhotoId(any(ImageBuffer.class))).thenReturn(UUID.randomUUID());
+
+        flowService.analyzeAndStore(image, "testUser");
+
+        ArgumentCaptor<ImageBuffer> inferred = ArgumentCaptor.forClass(ImageBuffer.class);
+        ArgumentCaptor<ImageBuffer> stored = ArgumentCaptor.forClass(ImageBuffer.class);
+        verify(aiModelService).processImage(inferred.capture());
+        verify(photoStorageService).storeAndGetPhotoId(stored.capture());
+        assertSame(inferred.getValue(), stored.getValue());
+        assertEquals(0, stored.getValue().refCount());
+        verify(image, times(1)).getInputStream();
+        verify(image, never()).getBytes();
+    }
+
+    @Test
+    void analyzeAndStore_ShouldServeRepeatedUploadFromCacheAndStillPersistResult() throws Exception {
+        MockMultipartFile image = new MockMultipartFile("image", "test.png", "image/png", validPngBytes());
+        UUID photoId = UUID.randomUUID();
+        User user = new User();
+        user.setId(UUID.randomUUID());
+
+        when(aiModelService.getModelName()).thenReturn("TestModel");
+        when(aiModelService.processImage(any(ImageBuffer.class))).thenReturn(new AIModelResponse(0.8, "TestModel", 100L));
+        when(userRepository.findByLogin("testUser")).thenReturn(Optional.of(user));
+        when(photoStorageService.storeAndGetPhotoId(any(ImageBuffer.class))).thenReturn(photoId);
+
+        flowService.analyzeAndStore(image, "testUser");
+        AIModelResponse second = flowService.analyzeAndStore(image, "testUser");
+
+        verify(aiModelService, times(1)).processImage(any(ImageBuffer.class));
+        verify(modelResultRepository, times(2)).save(any(ModelResult.class));
+        assertEquals(0.8, second.getCertainty());
+        assertEquals("TestModel", second.getModelUsed());
+    }
+
+    @Test
+    void analyzeAndStore_ShouldNotReuseCachedResultOfAnotherModel() throws Exception {
+        MockMultipartFile image = new MockMultipartFile("image", "test.png", "image/png", validPngBytes());
+        User user = new User();
+        user.setId(UUID.randomUUID());
+
+        when(aiModelService.getModelName()).thenReturn("ModelA", "ModelB");
+        when(aiModelService.processImage(any(ImageBuffer.class))).thenReturn(new AIModelResponse(0.8, "ModelA", 100L));
+        when(userRepository.findByLogin("testUser")).thenReturn(Optional.of(user));
+        when(photoStorageService.storeAndGetPhotoId(any(ImageBuffer.class))).thenReturn(UUID.randomUUID());
+
+        flowService.analyzeAndStore(image, "testUser");
+        flowService.analyzeAndStore(image, "testUser");
+
+        verify(aiModelService, times(2)).processImage(any(ImageBuffer.class));
+    }
+
+    @Test
+    void analyzeAndStoreAsync_ShouldCompleteWithResponseAndReleaseBuffer() throws Exception {
+        MockMultipartFile image = new MockMultipartFile("image", "test.png", "image/png", validPngBytes());
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        ArgumentCaptor<ImageBuffer> inferred = ArgumentCaptor.forClass(ImageBuffer.class);
+
+        when(aiModelService.processImage(inferred.capture())).thenReturn(new AIModelResponse(0.6, "TestModel", 10L));
+        when(userRepository.findByLogin("testUser")).thenReturn(Optional.of(user));
+        when(photoStorageService.storeAndGetPhotoId(any(ImageBuffer.class))).thenReturn(UUID.randomUUID());
+
+        AIModelResponse response = flowService.analyzeAndStoreAsync(image, "testUser").get(5, TimeUnit.SECONDS);
+
+        assertEquals(0.6, response.getCertainty());
+        assertEquals(0, inferred.getValue().refCount());
+        verify(modelResultRepository).save(any(ModelResult.class));
+    }
+
+    @Test
+    void analyzeAndStoreAsync_ShouldCompleteExceptionallyForNonImage() {
+        MockMultipartFile image = new MockMultipartFile("image", "test.txt", "text/plain", "hello".getBytes());
+
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> flowService.analyzeAndStoreAsync(image, "testUser").get(5, TimeUnit.SECONDS));
+
+        assertEquals("File must be an image", exception.getCause().getMessage());
+    }
+
+    @Test
+    void analyzeAndStoreAsync_ShouldServeManySlowAnalysesConcurrently() throws Exception {
+        // 200 analyses against a 200ms model; a bounded worker pool would serialize them into many seconds
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        when(aiModelService.processImage(any(ImageBuffer.class))).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            return new AIModelResponse(0.5, "TestModel", 200L);
+        });
+        when(userRepository.findByLogin("testUser")).thenReturn(Optional.of(user));
+        when(photoStorageService.storeAndGetPhotoId(any(ImageBuffer.class))).thenAnswer(invocation -> UUID.randomUUID());
+
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<AIModelResponse>> pending = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            pending.add(flowService.analyzeAndStoreAsync(
+                    new MockMultipartFile("image", "test.png", "image/png", validPngBytes()), "testUser"));
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        verify(modelResultRepository, times(200)).save(any(ModelResult.class));
+    }
+
     private byte[] validPngBytes() {
         return Base64.getDecoder().decode("iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAQAAAC1HAwCAAAAC0lEQVR42mP8/x8AAwMCAO+tmw0AAAAASUVORK5CYII=");
     }
@@ -0,0 +1,136 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelReplicaPoolTest {
+
+    private static final String REPLICA_A = "http://replica-a:8000";
+    private static final String REPLICA_B = "http://replica-b:8000";
+
+    private SimpleMeterRegistry meterRegistry;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void execute_LeastOutstanding_ShouldAvoidBusyReplica() throws Exception {
+        ModelReplicaPool pool = pool("least-outstanding");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String[] busy = new String[1];
+        executor.submit(() -> pool.execute(baseUrl -> {
+            busy[0] = baseUrl;
+            started.countDown();
+            awaitRelease(release);
+            return null;
+        }));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 5; i++) {
+            String chosen = pool.execute(baseUrl -> baseUrl);
+            assertFalse(chosen.equals(busy[0]));
+        }
+        release.countDown();
+    }
+
+    @Test
+    void execute_Ewma_ShouldPreferFasterReplica() throws Exception {
+        ModelReplicaPool pool = pool("ewma");
+        pool.execute(baseUrl -> sleepIf(baseUrl, REPLICA_A, 50), REPLICA_B);
+        pool.execute(baseUrl -> sleepIf(baseUrl, REPLICA_A, 50), REPLICA_A);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(REPLICA_B, pool.execute(baseUrl -> baseUrl));
+        }
+    }
+
+    @Test
+    void execute_ShouldEjectReplicaAfterConsecutiveFailuresAndReinstateAfterHealthyProbe() throws Exception {
+        ModelReplicaPool pool = pool("least-outstanding");
+        for (int i = 0; i < 3; i++) {
+            assertThrows(AIServiceException.class, () -> pool.execute(baseUrl -> {
+                throw new AIServiceException("AI down", 503);
+            }, REPLICA_B));
+        }
+        assertTrue(pool.isEjected(REPLICA_A));
+        assertEquals(1.0, meterRegistry.get("ai.service.replica.ejected").tag("replica", REPLICA_A).gauge().value());
+        assertEquals(3.0, meterRegistry.get("ai.service.replica.errors").tag("replica", REPLICA_A).counter().count());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(REPLICA_B, pool.execute(baseUrl -> baseUrl));
+        }
+
+        pool.onProbeResult(REPLICA_A, true);
+
+        assertFalse(pool.isEjected(REPLICA_A));
+    }
+
+    @Test
+    void onProbeResult_ShouldEjectUnhealthyReplica() throws Exception {
+        ModelReplicaPool pool = pool("least-outstanding");
+
+        pool.onProbeResult(REPLICA_B, false);
+
+        assertTrue(pool.isEjected(REPLICA_B));
+        assertEquals(REPLICA_A, pool.execute(baseUrl -> baseUrl));
+    }
+
+    @Test
+    void execute_ShouldNotEjectReplicaOnClientErrors() throws Exception {
+        ModelReplicaPool pool = pool("least-outstanding");
+        for (int i = 0; i < 5; i++) {
+            assertThrows(AIServiceException.class, () -> pool.execute(baseUrl -> {
+                throw new AIServiceException("Unprocessable", 422);
+            }, REPLICA_B));
+        }
+
+        assertFalse(pool.isEjected(REPLICA_A));
+    }
+
+    private ModelReplicaPool pool(String strategy) {
+        return new ModelReplicaPool(List.of(REPLICA_A, REPLICA_B), strategy, 0.5, 3, meterRegistry);
+    }
+
+    private static String sleepIf(String baseUrl, String slowReplica, long millis) {
+        if (baseUrl.equals(slowReplica)) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return baseUrl;
+    }
+
+    private static void awaitRelease(CountDownLatch release) {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.example.aidetectorbe.services;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestHedgerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void execute_WhenDisabled_ShouldCallOnceOnCallerThread() throws Exception {
+        RequestHedger hedger = new RequestHedger(false, 0.95, 1.0, Duration.ofMillis(1), 100, 5, meterRegistry);
+        Thread caller = Thread.currentThread();
+
+        Thread executedOn = hedger.execute(hedge -> Thread.currentThread());
+
+        assertSame(caller, executedOn);
+    }
+
+    @Test
+    void execute_WhenPrimaryIsSlow_ShouldHedgeAndCancelLoser() throws Exception {
+        RequestHedger hedger = new RequestHedger(true, 0.95, 1.0, Duration.ofMillis(1), 100, 5, meterRegistry);
+        warmUp(hedger);
+        double wonBefore = counter("won");
+        long hedgedBefore = meterRegistry.get("ai.inference.latency").tag("hedged", "true").timer().count();
+        CountDownLatch primaryCancelled = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+        String result = hedger.execute(hedge -> {
+            if (hedge) {
+                return "hedge";
+            }
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                primaryCancelled.countDown();
+            }
+            return "primary";
+        });
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("hedge", result);
+        assertTrue(elapsedMs < 1000, "hedged call took " + elapsedMs + "ms");
+        assertTrue(primaryCancelled.await(1, TimeUnit.SECONDS));
+        assertEquals(wonBefore + 1, counter("won"));
+        assertEquals(hedgedBefore + 1, meterRegistry.get("ai.inference.latency").tag("hedged", "true").timer().count());
+    }
+
+    @Test
+    void execute_WhenHedgeWins_ShouldNotCountCancelledPrimaryAsFailure() throws Exception {
+        HttpServer stubServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stubServer.createContext("/slow", exchange -> {
+            sleep(5000);
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        stubServer.createContext("/fast", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        stubServer.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        stubServer.start();
+        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            String baseUrl = "http://localhost:" + stubServer.getAddress().getPort();
+            RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+            AIServiceGuard guard = new AIServiceGuard(50, 100, Duration.ofSeconds(10), 4, 4, Duration.ofSeconds(30), 1,
+                    32, Duration.ZERO, meterRegistry);
+            ModelReplicaPool replicaPool = new ModelReplicaPool(List.of(baseUrl), "least-outstanding", 0.3, 3, meterRegistry);
+            RequestHedger hedger = new RequestHedger(true, 0.95, 1.0, Duration.ofMillis(1), 100, 5, meterRegistry);
+            warmUp(hedger);
+
+            String result = hedger.execute(hedge -> guard.execute(() -> replicaPool.execute(url -> {
+                try {
+                    restTemplate.getForEntity(url + (hedge ? "/fast" : "/slow"), Void.class);
+                    return hedge ? "hedge" : "primary";
+                } catch (ResourceAccessException e) {
+                    throw new AIServiceException("Unable to connect to AI service. Please try again later.", e, 503);
+                }
+            })));
+
+            assertEquals("hedge", result);
+            // The cancelled primary gives its bulkhead permit back once it has unwound through the guard
+            long deadline = System.currentTimeMillis() + 2000;
+            while (guard.getBulkhead().getMetrics().getAvailableConcurrentCalls() < 32) {
+                assertTrue(System.currentTimeMillis() < deadline, "cancelled attempt did not finish");
+                TimeUnit.MILLISECONDS.sleep(5);
+            }
+            assertEquals(0, guard.getCircuitBreaker().getMetrics().getNumberOfFailedCalls());
+            assertEquals(0.0, meterRegistry.get("ai.service.replica.errors").counter().count());
+            assertFalse(replicaPool.isEjected(baseUrl));
+        } finally {
+            stubServer.stop(0);
+        }
+    }
+
+    @Test
+    void execute_WhenBudgetExhausted_ShouldWaitForPrimary() throws Exception {
+        RequestHedger hedger = new RequestHedger(true, 0.95, 0.0, Duration.ofMillis(1), 100, 5, meterRegistry);
+        warmUp(hedger);
+        double exhaustedBefore = counter("budget_exhausted");
+        AtomicInteger hedges = new AtomicInteger();
+
+        String result = hedger.execute(hedge -> {
+            if (hedge) {
+                hedges.incrementAndGet();
+                return "hedge";
+            }
+            sleep(100);
+            return "primary";
+        });
+
+        assertEquals("primary", result);
+        assertEquals(0, hedges.get());
+        assertEquals(exhaustedBefore + 1, counter("budget_exhausted"));
+    }
+
+    @Test
+    void execute_WhenAllAttemptsFail_ShouldPropagateFailure() throws Exception {
+        RequestHedger hedger = new RequestHedger(true, 0.95, 1.0, Duration.ofMillis(1), 100, 5, meterRegistry);
+        warmUp(hedger);
+
+        AIServiceException exception = assertThrows(AIServiceException.class, () -> hedger.execute(hedge -> {
+            sleep(hedge ? 10 : 100);
+            throw new AIServiceException("AI down", 503);
+        }));
+
+        assertEquals(503, exception.getStatusCode());
+    }
+
+    @Test
+    void execute_ShouldNotHedgeBeforeEnoughLatencySamples() throws Exception {
+        RequestHedger hedger = new RequestHedger(true, 0.95, 1.0, Duration.ofMillis(1), 100, 5, meterRegistry);
+        AtomicInteger hedges = new AtomicInteger();
+
+        hedger.execute(hedge -> {
+            if (hedge) {
+                hedges.incrementAndGet();
+            }
+            sleep(50);
+            return null;
+        });
+
+        assertEquals(0, hedges.get());
+        assertFalse(hedger.getHedgeDelayNanos() < Long.MAX_VALUE);
+    }
+
+    private double counter(String outcome) {
+        return meterRegistry.get("ai.hedging.requests").tag("outcome", outcome).counter().count();
+    }
+
+    private static void warmUp(RequestHedger hedger) throws AIServiceException {
+        for (int i = 0; i < 10; i++) {
+            hedger.execute(hedge -> {
+                sleep(2);
+                return null;
+            });
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ShadowTrafficServiceTest {
+
+    private final AIModelService aiModelService = mock(AIModelService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private ShadowTrafficService service;
+
+    @BeforeEach
+    void setUp() {
+        when(aiModelService.getModelName()).thenReturn("TestModel");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+        executor.shutdownNow();
+    }
+
+    @Test
+    void mirror_ShouldRecordCandidateNextToPrimary() throws Exception {
+        service = service(100, 1, 4);
+        ImageBuffer image = image();
+        when(aiModelService.processBackgroundImage(any(ImageBuffer.class), eq("candidate"), eq("http://candidate:8000")))
+                .thenReturn(new AIModelResponse(0.3, "candidate", 40L));
+
+        service.mirror(image, new AIModelResponse(0.8, "TestModel", 20L));
+
+        awaitReleased(image);
+        assertEquals(1.0, meterRegistry.get("ai.shadow.requests").tag("outcome", "compared").counter().count());
+        assertEquals(0.8, meterRegistry.get("ai.shadow.certainty").tag("model", "TestModel").summary().totalAmount(), 1e-9);
+        assertEquals(0.3, meterRegistry.get("ai.shadow.certainty").tag("model", "candidate").summary().totalAmount(), 1e-9);
+        assertEquals(20.0, meterRegistry.get("ai.shadow.latency").tag("model", "TestModel").timer().totalTime(TimeUnit.MILLISECONDS), 1e-9);
+        assertEquals(40.0, meterRegistry.get("ai.shadow.latency").tag("model", "candidate").timer().totalTime(TimeUnit.MILLISECONDS), 1e-9);
+        assertEquals(0.5, meterRegistry.get("ai.shadow.certainty.difference").summary().totalAmount(), 1e-9);
+        assertEquals(1.0, meterRegistry.get("ai.shadow.disagreements").counter().count());
+    }
+
+    @Test
+    void mirror_ShouldNotSendWhenNotSampled() throws Exception {
+        service = service(0, 1, 4);
+        ImageBuffer image = image();
+
+        service.mirror(image, new AIModelResponse(0.8, "TestModel", 20L));
+
+        assertEquals(1, image.refCount());
+        verify(aiModelService, never()).processBackgroundImage(any(ImageBuffer.class), anyString(), anyString());
+    }
+
+    @Test
+    void mirror_ShouldDropWhenQueueIsFull() throws Exception {
+        service = service(100, 1, 1);
+        ImageBuffer image = image();
+        CountDownLatch candidateStarted = new CountDownLatch(1);
+        CountDownLatch unblockCandidate = new CountDownLatch(1);
+        when(aiModelService.processBackgroundImage(any(ImageBuffer.class), anyString(), anyString())).thenAnswer(invocation -> {
+            candidateStarted.countDown();
+            unblockCandidate.await();
+            return new AIModelResponse(0.8, "candidate", 5L);
+        });
+        AIModelResponse primary = new AIModelResponse(0.8, "TestModel", 20L);
+
+        service.mirror(image, primary);
+        assertTrue(candidateStarted.await(1, TimeUnit.SECONDS));
+        service.mirror(image, primary);
+        service.mirror(image, primary);
+
+        // One mirror in flight and one queued; the third is dropped without keeping a reference
+        assertEquals(3, image.refCount());
+        assertEquals(1.0, meterRegistry.get("ai.shadow.requests").tag("outcome", "dropped").counter().count());
+
+        unblockCandidate.countDown();
+        awaitReleased(image);
+        assertEquals(2.0, meterRegistry.get("ai.shadow.requests").tag("outcome", "compared").counter().count());
+    }
+
+    @Test
+    void mirror_ShouldCountCandidateFailuresWithoutThrowing() throws Exception {
+        service = service(100, 1, 4);
+        ImageBuffer image = image();
+        when(aiModelService.processBackgroundImage(any(ImageBuffer.class), anyString(), anyString()))
+                .thenThrow(new AIServiceException("Unable to connect to AI service. Please try again later.", 503));
+
+        service.mirror(image, new AIModelResponse(0.8, "TestModel", 20L));
+
+        verify(aiModelService, timeout(1000)).processBackgroundImage(any(ImageBuffer.class), anyString(), anyString());
+        awaitReleased(image);
+        assertEquals(1.0, meterRegistry.get("ai.shadow.requests").tag("outcome", "failed").counter().count());
+    }
+
+    @Test
+    void mirror_ShouldSampleAnimationFramesLikeThePrimary() throws Exception {
+        service = service(100, 1, 4);
+        ImageBuffer image = animatedGif(4);
+        List<String> parts = new CopyOnWriteArrayList<>();
+        when(aiModelService.processBackgroundImage(any(ImageBuffer.class), anyString(), anyString())).thenAnswer(invocation -> {
+            parts.add(invocation.getArgument(0, ImageBuffer.class).getFilename());
+            return new AIModelResponse(parts.size() == 1 ? 0.9 : 0.1, "candidate", 5L);
+        });
+
+        service.mirror(image, new AIModelResponse(0.8, "TestModel", 20L));
+
+        awaitReleased(image);
+        // Each frame is sent on its own and the answers combined with the primary's aggregation
+        assertEquals(4, parts.size());
+        assertTrue(parts.stream().allMatch(name -> name.startsWith("animated.gif#frame")));
+        assertEquals(0.9, meterRegistry.get("ai.shadow.certainty").tag("model", "candidate").summary().totalAmount(), 1e-9);
+        assertEquals(0.0, meterRegistry.get("ai.shadow.disagreements").counter().count());
+    }
+
+    private ShadowTrafficService service(double percentage, int threads, int queueCapacity) {
+        return new ShadowTrafficService(true, "http://candidate:8000", "candidate", percentage, threads, queueCapacity,
+                aiModelService,
+                new FrameSamplingService(true, 8, 1, 1000, 4, TiledInferenceService.Aggregation.MAX,
+                        new ImageValidationService(40_000_000L, DataSize.ofMegabytes(256), meterRegistry),
+                        executor, meterRegistry),
+                new TiledInferenceService(false, 1024, 128, 2048, 4, TiledInferenceService.Aggregation.MAX,
+                        executor, meterRegistry),
+                meterRegistry);
+    }
+
+    private static ImageBuffer animatedGif(int frames) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            writer.prepareWriteSequence(null);
+            for (int i = 0; i < frames; i++) {
+                writer.writeToSequence(new IIOImage(new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB), null, null), null);
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+        return ImageBuffer.wrap(out.toByteArray(), "animated.gif", "image/gif");
+    }
+
+    private static ImageBuffer image() {
+        return ImageBuffer.wrap("image".getBytes(), "test.jpg", "image/jpeg");
+    }
+
+    private static void awaitReleased(ImageBuffer image) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (image.refCount() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, image.refCount());
+    }
+}
@@ -0,0 +1,190 @@
+package org.example.aidetectorbe.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.aidetectorbe.dto.AIModelResponse;
+import org.example.aidetectorbe.exceptions.AIServiceException;
+import org.example.aidetectorbe.utils.ImageBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TiledInferenceServiceTest {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void infer_ShouldSendSmallImageWhole() throws Exception {
+        TiledInferenceService service = service(TiledInferenceService.Aggregation.MAX, 4);
+        ImageBuffer image = png(800, 600);
+        List<ImageBuffer> calls = new CopyOnWriteArrayList<>();
+
+        AIModelResponse response = service.infer(image, tile -> {
+            calls.add(tile);
+            return new AIModelResponse(0.3, "TestModel", 5L);
+        });
+
+        assertEquals(1, calls.size());
+        assertSame(image, calls.get(0));
+        assertEquals(0.3, response.getCertainty());
+    }
+
+    @Test
+    void infer_ShouldSplitLargeImageIntoOverlappingFullSizeTiles() throws Exception {
+        TiledInferenceService service = service(TiledInferenceService.Aggregation.MAX, 4);
+        List<String> tileSizes = new CopyOnWriteArrayList<>();
+
+        service.infer(png(2100, 1000), tile -> {
+            try {
+                BufferedImage decoded = ImageIO.read(tile.newInputStream());
+                tileSizes.add(decoded.getWidth() + "x" + decoded.getHeight());
+            } catch (IOException e) {
+                throw new AIServiceException("Unreadable tile", e);
+            }
+            return new AIModelResponse(0.1, "TestModel", 5L);
+        });
+
+        // Columns start at 0, 896 and 1076 (aligned to the right edge); the image is one tile high
+        assertEquals(3, tileSizes.size());
+        assertTrue(tileSizes.stream().allMatch("1024x1000"::equals));
+    }
+
+    @Test
+    void infer_ShouldCropEachTileFromItsOwnRegion() throws Exception {
+        TiledInferenceService service = service(TiledInferenceService.Aggregation.MAX, 4);
+        // Each pixel encodes its position, so a tile's corner shows where it was cut from
+        BufferedImage source = new BufferedImage(2100, 2100, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < source.getHeight(); y++) {
+            for (int x = 0; x < source.getWidth(); x++) {
+                source.setRGB(x, y, new Color(x / 16 % 256, y / 16 % 256, 0).getRGB());
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(source, "png", out);
+        List<String> mismatches = new CopyOnWriteArrayList<>();
+        AtomicInteger tiles = new AtomicInteger();
+
+        service.infer(ImageBuffer.wrap(out.toByteArray(), "large.png", "image/png"), tile -> {
+            tiles.incrementAndGet();
+            String[] origin = tile.getFilename().substring(tile.getFilename().indexOf('#') + 1).replace(".png", "").split(",");
+            int x = Integer.parseInt(origin[0]);
+            int y = Integer.parseInt(origin[1]);
+            try {
+                Color corner = new Color(ImageIO.read(tile.newInputStream()).getRGB(0, 0));
+                if (corner.getRed() != x / 16 % 256 || corner.getGreen() != y / 16 % 256) {
+                    mismatches.add(tile.getFilename());
+                }
+            } catch (IOException e) {
+                throw new AIServiceException("Unreadable tile", e);
+            }
+            return new AIModelResponse(0.1, "TestModel", 5L);
+        });
+
+        assertEquals(9, tiles.get());
+        assertEquals(List.of(), mismatches);
+    }
+
+    @Test
+    void infer_ShouldAggregateWithMaxOrMean() throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        TiledInferenceService.TileCall call = tile ->
+                new AIModelResponse(next.getAndIncrement() == 0 ? 0.9 : 0.3, "TestModel", 5L);
+
+        AIModelResponse max = service(TiledInferenceService.Aggregation.MAX, 1).infer(png(2100, 1000), call);
+        next.set(0);
+        AIModelResponse mean = service(TiledInferenceService.Aggregation.MEAN, 1).infer(png(2100, 1000), call);
+
+        assertEquals(0.9, max.getCertainty(), 1e-9);
+        assertEquals(0.5, mean.getCertainty(), 1e-9);
+        assertEquals("TestModel", mean.getModelUsed());
+    }
+
+    @Test
+    void infer_ShouldNotExceedConcurrencyCap() throws Exception {
+        TiledInferenceService service = service(TiledInferenceService.Aggregation.MEAN, 2);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+
+        service.infer(png(3000, 3000), tile -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            return new AIModelResponse(0.5, "TestModel", 5L);
+        });
+
+        assertTrue(peak.get() <= 2, "peak concurrency was " + peak.get());
+    }
+
+    @Test
+    void infer_ShouldPropagateTileFailure() throws Exception {
+        TiledInferenceService service = service(TiledInferenceService.Aggregation.MAX, 1);
+        AtomicInteger calls = new AtomicInteger();
+
+        AIServiceException exception = assertThrows(AIServiceException.class, () ->
+                service.infer(png(3000, 3000), tile -> {
+                    calls.incrementAndGet();
+                    throw new AIServiceException("AI service unavailable", 503);
+                }));
+
+        assertEquals(503, exception.getStatusCode());
+        assertTrue(calls.get() < 16, "remaining tiles should not be analyzed after a failure");
+    }
+
+    @Test
+    void infer_ShouldSendWholeImageWhenDisabled() throws Exception {
+        TiledInferenceService service = new TiledInferenceService(false, 1024, 128, 2048, 4,
+                TiledInferenceService.Aggregation.MAX, executor, new SimpleMeterRegistry());
+        AtomicInteger calls = new AtomicInteger();
+
+        service.infer(png(3000, 3000), tile -> {
+            calls.incrementAndGet();
+            return new AIModelResponse(0.5, "TestModel", 5L);
+        });
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void tileRegions_ShouldCoverImageAlignedToEdges() {
+        List<Rectangle> regions = service(TiledInferenceService.Aggregation.MAX, 4).tileRegions(3000, 1500);
+
+        // 4 columns (0, 896, 1792, 1976) by 2 rows (0, 476)
+        assertEquals(8, regions.size());
+        assertEquals(new Rectangle(1976, 476, 1024, 1024), regions.get(7));
+    }
+
+    private TiledInferenceService service(TiledInferenceService.Aggregation aggregation, int maxConcurrent) {
+        return new TiledInferenceService(true, 1024, 128, 2048, maxConcurrent, aggregation, executor,
+                new SimpleMeterRegistry());
+    }
+
+    private static ImageBuffer png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return ImageBuffer.wrap(out.toByteArray(), "large.png", "image/png");
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.aidetectorbe.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+class ImageBufferTest {
+
+    @Test
+    void read_ShouldKeepSmallImagesOnHeapAndLargeImagesOffHeap() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("image", "test.png", "image/png", new byte[64]);
+
+        try (ImageBuffer small = ImageBuffer.read(file, 1024); ImageBuffer large = ImageBuffer.read(file, 32)) {
+            assertFalse(small.isDirect());
+            assertTrue(large.isDirect());
+            assertEquals(64, large.size());
+            assertEquals("test.png", large.getFilename());
+            assertEquals("image/png", large.getContentType());
+        }
+    }
+
+    @Test
+    void read_ShouldStreamUploadWithoutCopyingItToByteArray() throws Exception {
+        MockMultipartFile file = spy(new MockMultipartFile("image", "test.png", "image/png", "hello".getBytes()));
+
+        try (ImageBuffer buffer = ImageBuffer.read(file, 0)) {
+            assertEquals(5, buffer.size());
+        }
+        verify(file, never()).getBytes();
+    }
+
+    @Test
+    void views_ShouldBeIndependentAndRepeatable() throws Exception {
+        byte[] content = "image-bytes".getBytes();
+        try (ImageBuffer buffer = ImageBuffer.read(new MockMultipartFile("image", content), 0)) {
+            try (InputStream first = buffer.newInputStream(); InputStream second = buffer.asResource().getInputStream()) {
+                assertArrayEquals(content, first.readAllBytes());
+                assertArrayEquals(content, second.readAllBytes());
+            }
+            assertEquals(content.length, buffer.asByteBuffer().remaining());
+            assertTrue(buffer.asByteBuffer().isReadOnly());
+        }
+    }
+
+    @Test
+    void release_ShouldInvalidateBufferOnceLastReferenceIsDropped() throws Exception {
+        ImageBuffer buffer = ImageBuffer.read(new MockMultipartFile("image", "abc".getBytes()), 0);
+
+        buffer.retain();
+        buffer.release();
+        assertEquals(1, buffer.refCount());
+        assertEquals(3, buffer.asByteBuffer().remaining());
+
+        buffer.close();
+        assertEquals(0, buffer.refCount());
+        assertThrows(IllegalStateException.class, buffer::asByteBuffer);
+        assertThrows(IllegalStateException.class, buffer::retain);
+    }
+}